@@ -1,14 +1,12 @@
 package agent;
 
 import common.AgentData;
+import common.AgentDataCodec;
 
-import java.io.ByteArrayOutputStream;
-import java.io.ObjectOutputStream;
-import java.io.PrintWriter;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.lang.management.ManagementFactory;
 import com.sun.management.OperatingSystemMXBean;
 import java.io.File;
@@ -19,9 +17,28 @@ public class MonitoringAgent {
     private String agentId;
     private String serverAddress;
     private static final int UDP_PORT = 9876;
-    private static final int TCP_PORT = 9877;
     private OperatingSystemMXBean osBean;
 
+    // Mesure locale fréquente, un envoi résumé par intervalle (-Dagent.sampleMs, -Dagent.reportMs)
+    private static final long REPORT_MS = Math.max(100, Long.getLong("agent.reportMs", 2000));
+    private static final long SAMPLE_MS = Math.max(10, Math.min(REPORT_MS, Long.getLong("agent.sampleMs", 100)));
+
+    // Envoi sauté si chaque métrique reste à moins de DEADBAND points du dernier envoi (0 = toujours envoyer) ;
+    // un battement de cœur signale l'agent toutes les HEARTBEAT_MS (sous le délai de déconnexion de 15 s),
+    // et un échantillon complet part au moins toutes les REFRESH_MS (serveur redémarré entre-temps)
+    private static final double DEADBAND = Math.max(0, Double.parseDouble(System.getProperty("agent.deadband", "1.0")));
+    private static final long HEARTBEAT_MS = Math.max(REPORT_MS, Long.getLong("agent.heartbeatMs", 10000));
+    private static final long REFRESH_MS = Math.max(HEARTBEAT_MS, Long.getLong("agent.refreshMs", 60000));
+
+    // Socket et tampon UDP réutilisés d'un envoi à l'autre
+    private DatagramSocket udpSocket;
+    private final ByteBuffer udpBuffer = ByteBuffer.allocate(AgentDataCodec.MAX_FRAME_SIZE);
+
+    // Dernier échantillon complet envoyé (moyennes puis maximums) et dates des derniers envois
+    private final double[] lastSent = new double[6];
+    private long lastFullSend;
+    private long lastSend;
+
     public MonitoringAgent(String agentId, String serverAddress) {
         this.agentId = agentId;
         this.serverAddress = serverAddress;
@@ -33,9 +50,14 @@ public class MonitoringAgent {
     }
 
     public void start() {
-        System.out.println("Agent " + agentId + " démarré. Connexion au serveur: " + serverAddress);
+        System.out.println("Agent " + agentId + " démarré. Connexion au serveur: " + serverAddress
+                + " (mesure toutes les " + SAMPLE_MS + " ms, envoi toutes les " + REPORT_MS + " ms, bande morte "
+                + DEADBAND + " point(s))");
         
         new Thread(() -> {
+            SampleWindow window = new SampleWindow();
+            File root = new File("/");
+            long nextReport = System.currentTimeMillis() + REPORT_MS;
             while (true) {
                 try {
                     // 1. Récupérer les vraies métriques
@@ -56,42 +78,25 @@ public class MonitoringAgent {
                     }
 
                     // Disk Usage (Partition racine)
-                    File root = new File("/");
                     long totalSpace = root.getTotalSpace();
                     long freeSpace = root.getFreeSpace();
                     if (totalSpace > 0) {
                         disk = ((double)(totalSpace - freeSpace) / totalSpace) * 100;
                     }
 
-                    AgentData data = new AgentData(agentId, cpu, ram, disk);
-
-                    // 2. Envoyer via UDP (Mise à jour régulière)
-                    sendUdpUpdate(data);
-
-                    // 3. Vérifier seuil critique et envoyer via TCP si nécessaire
-                    boolean critical = false;
-                    StringBuilder msg = new StringBuilder();
-
-                    if (cpu > 80.0) {
-                        critical = true;
-                        msg.append("CPU Surcharge: ").append(String.format("%.2f", cpu)).append("% ");
-                    }
-                    if (ram > 80.0) {
-                        critical = true;
-                        msg.append("Mémoire Surcharge: ").append(String.format("%.2f", ram)).append("% ");
-                    }
-                    if (disk > 80.0) {
-                        critical = true;
-                        msg.append("Disque Surcharge: ").append(String.format("%.2f", disk)).append("% ");
-                    }
+                    window.add(cpu, ram, disk);
 
-                    if (critical) {
-                        data.setCritical(true);
-                        sendTcpAlert(msg.toString());
+                    // 2. Un seul envoi UDP par intervalle : moyennes, min/max et dernières valeurs
+                    long now = System.currentTimeMillis();
+                    if (now >= nextReport) {
+                        report(window.summarize(agentId), now);
+                        // 3. Les alertes sont décidées par le serveur (règles d'alerte) à partir de ces échantillons
+                        nextReport += REPORT_MS;
+                        // Retard (machine en veille...) : on repart d'un intervalle complet
+                        if (nextReport <= now) nextReport = now + REPORT_MS;
                     }
 
-                    // Pause de 2 secondes
-                    Thread.sleep(2000);
+                    Thread.sleep(Math.max(1, Math.min(SAMPLE_MS, nextReport - System.currentTimeMillis())));
 
                 } catch (InterruptedException e) {
                     break;
@@ -99,21 +104,57 @@ public class MonitoringAgent {
                     System.err.println("Erreur Agent: " + e.getMessage());
                 }
             }
-        }).start();
+        }, "agent-sampler").start();
+    }
+
+    // Envoie l'échantillon, un battement de cœur, ou rien si les valeurs sont dans la bande morte
+    private void report(AgentData data, long now) {
+        if (data == null) return;
+        if (now - lastFullSend < REFRESH_MS && unchanged(data)) {
+            if (now - lastSend < HEARTBEAT_MS) return;
+            AgentData heartbeat = new AgentData(agentId, Double.NaN, Double.NaN, Double.NaN, data.getTimestamp().getTime(), false);
+            heartbeat.setHeartbeat(true);
+            sendUdpUpdate(heartbeat);
+            lastSend = now;
+            return;
+        }
+        for (int metric = 0; metric < 3; metric++) {
+            lastSent[metric] = average(data, metric);
+            lastSent[3 + metric] = data.getSummary(AgentData.SUMMARY_MAX, metric);
+        }
+        sendUdpUpdate(data);
+        lastFullSend = now;
+        lastSend = now;
+    }
+
+    // Vrai si moyennes et maximums restent à moins de DEADBAND du dernier envoi complet
+    private boolean unchanged(AgentData data) {
+        if (DEADBAND <= 0) return false;
+        for (int metric = 0; metric < 3; metric++) {
+            if (Math.abs(average(data, metric) - lastSent[metric]) > DEADBAND) return false;
+            if (Math.abs(data.getSummary(AgentData.SUMMARY_MAX, metric) - lastSent[3 + metric]) > DEADBAND) return false;
+        }
+        return true;
+    }
+
+    private static double average(AgentData data, int metric) {
+        return metric == 0 ? data.getCpuUsage() : metric == 1 ? data.getMemoryUsage() : data.getDiskUsage();
     }
 
     private void sendUdpUpdate(AgentData data) {
-        try (DatagramSocket socket = new DatagramSocket();
-             ByteArrayOutputStream bos = new ByteArrayOutputStream();
-             ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+        try {
+            if (udpSocket == null) {
+                udpSocket = new DatagramSocket();
+            }
 
-            oos.writeObject(data);
-            byte[] bytes = bos.toByteArray();
+            // Encodage binaire compact (voir AgentDataCodec)
+            udpBuffer.clear();
+            AgentDataCodec.encode(data, udpBuffer);
 
             InetAddress address = InetAddress.getByName(serverAddress);
-            DatagramPacket packet = new DatagramPacket(bytes, bytes.length, address, UDP_PORT);
+            DatagramPacket packet = new DatagramPacket(udpBuffer.array(), udpBuffer.position(), address, UDP_PORT);
             
-            socket.send(packet);
+            udpSocket.send(packet);
             // System.out.println("Données envoyées (UDP): " + data);
 
         } catch (Exception e) {
@@ -121,18 +162,6 @@ public class MonitoringAgent {
         }
     }
 
-    private void sendTcpAlert(String message) {
-        try (Socket socket = new Socket(serverAddress, TCP_PORT);
-             PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
-            
-            out.println("Agent [" + agentId + "]: " + message);
-            System.out.println("Alerte envoyée (TCP): " + message);
-
-        } catch (Exception e) {
-            System.err.println("Erreur envoi TCP: " + e.getMessage());
-        }
-    }
-
     public static void main(String[] args) {
         String serverIp = "localhost";
         String agentName = "Agent-" + System.getProperty("user.name");
@@ -0,0 +1,68 @@
+package agent;
+
+import common.AgentData;
+
+/**
+ * Mesures d'un intervalle d'envoi, accumulées dans des tableaux primitifs :
+ * minimum, maximum, somme et dernière valeur de chaque métrique (cpu,
+ * mémoire, disque). summarize() produit l'échantillon résumé à envoyer et
+ * remet la fenêtre à zéro. Utilisé par le seul thread de mesure.
+ */
+public class SampleWindow {
+
+    private static final int METRICS = 3;
+
+    private final double[] min = new double[METRICS];
+    private final double[] max = new double[METRICS];
+    private final double[] sum = new double[METRICS];
+    private final double[] last = new double[METRICS];
+    private final double[] summary = new double[AgentData.SUMMARY_SIZE];
+    private int count;
+
+    public SampleWindow() {
+        reset();
+    }
+
+    public void add(double cpu, double memory, double disk) {
+        add(0, cpu);
+        add(1, memory);
+        add(2, disk);
+        count++;
+    }
+
+    private void add(int metric, double value) {
+        if (value < min[metric]) min[metric] = value;
+        if (value > max[metric]) max[metric] = value;
+        sum[metric] += value;
+        last[metric] = value;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Moyennes de l'intervalle, avec le résumé s'il y a eu plusieurs mesures ; null si aucune
+    public AgentData summarize(String agentId) {
+        if (count == 0) return null;
+        AgentData data = new AgentData(agentId, sum[0] / count, sum[1] / count, sum[2] / count);
+        if (count > 1) {
+            for (int metric = 0; metric < METRICS; metric++) {
+                summary[AgentData.SUMMARY_MIN + metric] = min[metric];
+                summary[AgentData.SUMMARY_MAX + metric] = max[metric];
+                summary[AgentData.SUMMARY_LAST + metric] = last[metric];
+            }
+            data.setSummary(count, summary);
+        }
+        reset();
+        return data;
+    }
+
+    private void reset() {
+        for (int metric = 0; metric < METRICS; metric++) {
+            min[metric] = Double.POSITIVE_INFINITY;
+            max[metric] = Double.NEGATIVE_INFINITY;
+            sum[metric] = 0;
+        }
+        count = 0;
+    }
+}
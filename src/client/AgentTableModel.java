@@ -0,0 +1,212 @@
+package client;
+
+import common.AgentData;
+
+import javax.swing.table.AbstractTableModel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Modèle du tableau des agents, indexé par identifiant d'agent.
+ *
+ * Les valeurs affichées de chaque ligne sont calculées une fois et gardées ;
+ * une mise à jour ne notifie (fireTableRowsUpdated/Inserted/Deleted) que les
+ * lignes dont l'affichage a réellement changé, et le trieur ne replace que
+ * ces lignes. Au-delà de 10 % de lignes modifiées, un seul événement couvre
+ * tout le tableau (un tri complet coûte alors moins cher). La sélection et
+ * le défilement du tableau sont conservés.
+ * À utiliser uniquement depuis le thread Swing.
+ */
+public class AgentTableModel extends AbstractTableModel {
+
+    private static final String[] COLUMNS = {"Agent ID", "CPU (%)", "Mémoire (%)", "Disque (%)", "Dernière MAJ", "Statut"};
+    private static final Integer ZERO = 0;
+
+    // Valeurs affichées d'un agent
+    private static final class Row {
+        AgentData data;
+        Integer cpu;
+        Integer memory;
+        Integer disk;
+        String time;
+        String status;
+        long formattedSecond = Long.MIN_VALUE;
+    }
+
+    private final List<Row> rows = new ArrayList<>();
+    private final Map<String, Integer> index = new HashMap<>();
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss");
+    private final BitSet changed = new BitSet();
+    private int threshold = 80;
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        // Colonnes numériques : tri par valeur et non par texte
+        return column >= 1 && column <= 3 ? Integer.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int column) {
+        Row row = rows.get(rowIndex);
+        switch (column) {
+            case 0: return row.data.getAgentId();
+            case 1: return row.cpu;
+            case 2: return row.memory;
+            case 3: return row.disk;
+            case 4: return row.time;
+            default: return row.status;
+        }
+    }
+
+    public Set<String> agentIds() {
+        return index.keySet();
+    }
+
+    // Ajoute ou met à jour des agents
+    public void update(Collection<AgentData> agents) {
+        // Gros lot : tout appliquer puis un seul événement (tri complet)
+        boolean batch = agents.size() > rows.size() / 10;
+        int first = rows.size();
+        List<Row> added = new ArrayList<>();
+        for (AgentData agent : agents) {
+            Integer i = index.get(agent.getAgentId());
+            if (i == null) {
+                Row row = new Row();
+                row.data = agent;
+                refresh(row);
+                index.put(agent.getAgentId(), first + added.size());
+                added.add(row);
+            } else if (i >= first) {
+                // Agent présent deux fois dans le lot
+                added.get(i - first).data = agent;
+                refresh(added.get(i - first));
+            } else {
+                Row row = rows.get(i);
+                row.data = agent;
+                if (refresh(row)) {
+                    if (batch) {
+                        changed.set(i);
+                    } else {
+                        // Le trieur replace la ligne en relisant le modèle : il doit être à jour
+                        fireTableRowsUpdated(i, i);
+                    }
+                }
+            }
+        }
+        fireChanged();
+        if (!added.isEmpty()) {
+            rows.addAll(added);
+            fireTableRowsInserted(first, rows.size() - 1);
+        }
+    }
+
+    // Retire des agents (l'ordre des autres lignes est conservé)
+    public void remove(Collection<String> agentIds) {
+        BitSet removed = new BitSet();
+        for (String agentId : agentIds) {
+            Integer i = index.remove(agentId);
+            if (i != null) removed.set(i);
+        }
+        if (removed.isEmpty()) return;
+        // Du dernier au premier : chaque événement garde les indices d'avant
+        for (int i = removed.length() - 1; i >= 0; i = removed.previousSetBit(i - 1)) {
+            rows.remove(i);
+            fireTableRowsDeleted(i, i);
+        }
+        reindex(removed.nextSetBit(0));
+    }
+
+    // Recalcule l'affichage de toutes les lignes (changement de seuil)
+    public void refreshAll() {
+        for (int i = 0; i < rows.size(); i++) {
+            if (compute(rows.get(i), false)) changed.set(i);
+        }
+        boolean batch = changed.cardinality() > rows.size() / 10;
+        for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+            refresh(rows.get(i));
+            if (!batch) fireTableRowsUpdated(i, i);
+        }
+        if (batch) {
+            fireChanged();
+        } else {
+            changed.clear();
+        }
+    }
+
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+        refreshAll();
+    }
+
+    private boolean refresh(Row row) {
+        return compute(row, true);
+    }
+
+    // Calcule les valeurs affichées (gardées si "store") ; vrai si l'une d'elles change
+    private boolean compute(Row row, boolean store) {
+        AgentData agent = row.data;
+        long time = agent.getTimestamp().getTime();
+        // Déconnexion décidée par le serveur (délai sans contact)
+        boolean offline = agent.isOffline();
+
+        Integer cpu = offline ? ZERO : Integer.valueOf((int) Math.round(agent.getCpuUsage()));
+        Integer memory = offline ? ZERO : Integer.valueOf((int) Math.round(agent.getMemoryUsage()));
+        Integer disk = offline ? ZERO : Integer.valueOf((int) Math.round(agent.getDiskUsage()));
+        String status;
+        if (offline) {
+            status = "OFFLINE";
+        } else {
+            status = agent.getCpuUsage() >= threshold ? "CRITIQUE" : "OK";
+        }
+
+        boolean changedTime = time / 1000 != row.formattedSecond;
+        boolean changedRow = changedTime || !cpu.equals(row.cpu) || !memory.equals(row.memory)
+                || !disk.equals(row.disk) || !status.equals(row.status);
+        if (store) {
+            // Heure formatée seulement quand la seconde change
+            if (changedTime) {
+                row.time = timeFormat.format(agent.getTimestamp());
+                row.formattedSecond = time / 1000;
+            }
+            row.cpu = cpu;
+            row.memory = memory;
+            row.disk = disk;
+            row.status = status;
+        }
+        return changedRow;
+    }
+
+    // Un seul événement pour les lignes marquées : le trieur refait un tri complet
+    private void fireChanged() {
+        if (changed.isEmpty()) return;
+        changed.clear();
+        fireTableRowsUpdated(0, rows.size() - 1);
+    }
+
+    private void reindex(int from) {
+        for (int i = from; i < rows.size(); i++) {
+            index.put(rows.get(i).data.getAgentId(), i);
+        }
+    }
+}
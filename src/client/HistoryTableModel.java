@@ -0,0 +1,68 @@
+package client;
+
+import common.HistoryColumns;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Modèle du tableau d'historique, lu directement dans les colonnes reçues
+ * du serveur : les valeurs restent numériques (tri par valeur) et seules les
+ * lignes affichées sont mises en forme. Les pages d'une requête par curseur
+ * s'ajoutent à la suite (append).
+ */
+public class HistoryTableModel extends AbstractTableModel {
+
+    private static final String[] COLUMNS = {"Date/Heure", "Agent", "CPU (%)", "Mémoire (%)", "Disque (%)", "Statut"};
+
+    private final HistoryColumns history;
+
+    public HistoryTableModel(HistoryColumns history) {
+        this.history = history;
+    }
+
+    // Ajoute les lignes d'une page reçue (EDT)
+    public void append(HistoryColumns page) {
+        if (page.size() == 0) return;
+        int first = history.size();
+        history.addAll(page, 0, page.size());
+        fireTableRowsInserted(first, history.size() - 1);
+    }
+
+    @Override
+    public int getRowCount() {
+        return history.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column >= 2 && column <= 4 ? Double.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        switch (column) {
+            // Format "yyyy-MM-dd HH:mm:ss" : l'ordre du texte est celui des dates
+            case 0: return history.formatTime(row);
+            case 1: return history.getAgentId(row);
+            case 2: return round2(history.getCpu(row));
+            case 3: return round2(history.getMemory(row));
+            case 4: return round2(history.getDisk(row));
+            default: return history.isCritical(row) ? "CRITIQUE" : "OK";
+        }
+    }
+
+    // Deux décimales, comme les lignes d'historique
+    private static Double round2(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -1,34 +1,66 @@
 package client;
 
 import common.AgentData;
+import common.AlertEvent;
+import common.ChangeSet;
+import common.ExportStatus;
+import common.HistoryColumns;
+import common.MonitorListener;
 import common.MonitorService;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableRowSorter;
 import java.awt.*;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.PrintWriter;
 import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public class MonitorClient extends JFrame {
 
     private MonitorService monitorService;
     private JTable table;
-    private DefaultTableModel tableModel;
+    private AgentTableModel tableModel;
     private JTextArea alertsArea;
     private JSpinner thresholdSpinner;
     private JTextField searchField;
-    private TableRowSorter<DefaultTableModel> sorter;
+    private TableRowSorter<AgentTableModel> sorter;
     private int cpuThreshold = 80; // Seuil par défaut
     private String currentUser;
     private LoginDialog.Role currentRole;
     private String serverAddress;
     
+    // État local tenu à jour par les changements du serveur (agents : tableModel)
+    private final ArrayDeque<String> recentAlerts = new ArrayDeque<>();
+    // Écrit sur l'EDT, lu par le thread de rafraîchissement
+    private volatile long changesVersion;
+
+    // Appels au serveur hors de l'EDT
+    private final RemoteFetcher fetcher = new RemoteFetcher(this);
+
+    // Changements poussés par le serveur ; interrogation périodique si rien n'arrive
+    private static final long PUSH_TIMEOUT_MS = 30_000;
+    // Export par période : interrogation de l'avancement et taille des blocs téléchargés
+    private static final long EXPORT_POLL_MS = 500;
+    private static final int EXPORT_CHUNK_SIZE = 1 << 20;
+    // Historique par période : lignes demandées par page au curseur du serveur
+    private static final int HISTORY_PAGE_SIZE = 5000;
+    private PushListener pushListener;
+    private long lastPush;
+
     // Composants pour les boutons (pour gérer les droits)
     private JButton exportBtn;
     private JButton statsBtn;
@@ -58,7 +90,7 @@ public class MonitorClient extends JFrame {
         toolBar.setFloatable(false);
 
         JButton refreshBtn = new JButton("Rafraîchir");
-        refreshBtn.addActionListener(e -> updateData());
+        refreshBtn.addActionListener(e -> updateData(true));
         toolBar.add(refreshBtn);
 
         toolBar.addSeparator();
@@ -99,6 +131,7 @@ public class MonitorClient extends JFrame {
             renderer = (ProgressBarRenderer) table.getColumnModel().getColumn(3).getCellRenderer();
             if (renderer != null) renderer.setThreshold(cpuThreshold);
             
+            tableModel.setThreshold(cpuThreshold);
             table.repaint();
         });
         toolBar.add(thresholdSpinner);
@@ -135,17 +168,12 @@ public class MonitorClient extends JFrame {
         add(toolBar, BorderLayout.NORTH);
 
         // 2. Tableau des agents (Centre)
-        String[] columnNames = {"Agent ID", "CPU (%)", "Mémoire (%)", "Disque (%)", "Dernière MAJ", "Statut"};
-        tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        tableModel = new AgentTableModel();
         table = new JTable(tableModel);
         
-        // Configurer le tri et filtrage
+        // Configurer le tri et filtrage (lignes modifiées re-triées et re-filtrées une à une)
         sorter = new TableRowSorter<>(tableModel);
+        sorter.setSortsOnUpdates(true);
         table.setRowSorter(sorter);
         
         // Appliquer les barres de progression
@@ -224,7 +252,11 @@ public class MonitorClient extends JFrame {
                 if (selectedRow >= 0) {
                     agentId = (String) table.getValueAt(selectedRow, 0);
                 }
-                displayStats(monitorService.getStatistics(agentId), agentId.isEmpty() ? "Tous les agents" : "Agent: " + agentId);
+                String selectedAgent = agentId;
+                fetcher.query("Calcul des statistiques...",
+                    () -> monitorService.getStatistics(selectedAgent),
+                    stats -> displayStats(stats, selectedAgent.isEmpty() ? "Tous les agents" : "Agent: " + selectedAgent),
+                    this::showError);
                 
             } else if (choice == 1) {
                 // Mode nouveau : statistiques par période
@@ -253,71 +285,166 @@ public class MonitorClient extends JFrame {
                     Date end = sdf.parse(endField.getText());
                     String agentId = agentField.getText().trim();
                     
-                    Map<String, Double> stats = monitorService.getStatisticsByDate(agentId.isEmpty() ? null : agentId, start, end);
-                    displayStats(stats, agentId.isEmpty() ? "Tous les agents" : "Agent: " + agentId);
+                    fetcher.query("Calcul des statistiques de la période...",
+                        () -> monitorService.getStatisticsByDate(agentId.isEmpty() ? null : agentId, start, end),
+                        stats -> displayStats(stats, agentId.isEmpty() ? "Tous les agents" : "Agent: " + agentId),
+                        this::showError);
                 }
             }
             
         } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, "Erreur: " + e.getMessage(), "Erreur", JOptionPane.ERROR_MESSAGE);
+            showError(e);
         }
     }
 
+    private void showError(Exception e) {
+        JOptionPane.showMessageDialog(this, "Erreur: " + e.getMessage(), "Erreur", JOptionPane.ERROR_MESSAGE);
+    }
+
     private void displayStats(Map<String, Double> stats, String title) {
         String message = String.format(
             "=== Statistiques: %s ===\n\n" +
             "CPU:\n" +
             "  - Moyenne: %.1f%%\n" +
             "  - Min: %.1f%%\n" +
-            "  - Max: %.1f%%\n\n" +
+            "  - Max: %.1f%%\n" +
+            "  - P50 / P95 / P99: %.1f%% / %.1f%% / %.1f%%\n\n" +
             "Mémoire:\n" +
             "  - Moyenne: %.1f%%\n" +
             "  - Min: %.1f%%\n" +
-            "  - Max: %.1f%%\n\n" +
+            "  - Max: %.1f%%\n" +
+            "  - P50 / P95 / P99: %.1f%% / %.1f%% / %.1f%%\n\n" +
             "Total enregistrements: %.0f\n" +
             "Alertes critiques: %.0f",
             title,
             stats.get("avgCpu"), stats.get("minCpu"), stats.get("maxCpu"),
+            stats.get("p50Cpu"), stats.get("p95Cpu"), stats.get("p99Cpu"),
             stats.get("avgMemory"), stats.get("minMemory"), stats.get("maxMemory"),
+            stats.get("p50Memory"), stats.get("p95Memory"), stats.get("p99Memory"),
             stats.get("totalRecords"), stats.get("criticalCount")
         );
         
         JOptionPane.showMessageDialog(this, message, "Résultats Statistiques", JOptionPane.INFORMATION_MESSAGE);
     }
 
-    // Afficher l'historique
+    // Afficher l'historique : derniers enregistrements, ou une période lue page par page
     private void showHistory() {
         if (monitorService == null) return;
         
-        try {
-            String agentId = "";
-            int selectedRow = table.getSelectedRow();
-            if (selectedRow >= 0) {
-                agentId = (String) table.getValueAt(selectedRow, 0);
-            }
-            
-            List<String[]> history = monitorService.getHistory(agentId, 50);
-            
+        String agentId;
+        int selectedRow = table.getSelectedRow();
+        if (selectedRow >= 0) {
+            agentId = (String) table.getValueAt(selectedRow, 0);
+        } else {
+            agentId = "";
+        }
+
+        String[] options = {"Derniers enregistrements (50)", "Historique par Période"};
+        int choice = JOptionPane.showOptionDialog(this,
+            "Quel historique voulez-vous voir ?",
+            "Type d'Historique",
+            JOptionPane.DEFAULT_OPTION,
+            JOptionPane.QUESTION_MESSAGE,
+            null, options, options[0]);
+        if (choice == 1) {
+            showHistoryByDate(agentId);
+            return;
+        }
+        if (choice != 0) return;
+
+        fetcher.query("Chargement de l'historique...", () -> monitorService.getHistoryColumns(agentId, 50), history -> {
             // Créer une fenêtre pour l'historique
             JDialog historyDialog = new JDialog(this, "Historique" + (agentId.isEmpty() ? "" : " - " + agentId), true);
             historyDialog.setSize(700, 400);
             historyDialog.setLocationRelativeTo(this);
             
-            String[] columns = {"Date/Heure", "Agent", "CPU (%)", "Mémoire (%)", "Disque (%)", "Statut"};
-            DefaultTableModel historyModel = new DefaultTableModel(columns, 0);
-            
-            for (String[] record : history) {
-                historyModel.addRow(record);
-            }
-            
-            JTable historyTable = new JTable(historyModel);
+            JTable historyTable = new JTable(new HistoryTableModel(history));
             historyTable.setAutoCreateRowSorter(true);
             historyDialog.add(new JScrollPane(historyTable));
             historyDialog.setVisible(true);
-            
+        }, this::showError);
+    }
+
+    // Historique d'une période par curseur : une page à la fois, la suivante à la demande
+    private void showHistoryByDate(String selectedAgent) {
+        JPanel panel = new JPanel(new GridLayout(3, 2));
+        JTextField startField = new JTextField(new SimpleDateFormat("yyyy-MM-dd 00:00:00").format(new Date()));
+        JTextField endField = new JTextField(new SimpleDateFormat("yyyy-MM-dd 23:59:59").format(new Date()));
+        JTextField agentField = new JTextField(selectedAgent);
+        panel.add(new JLabel("Du (yyyy-MM-dd HH:mm:ss):"));
+        panel.add(startField);
+        panel.add(new JLabel("Au (yyyy-MM-dd HH:mm:ss):"));
+        panel.add(endField);
+        panel.add(new JLabel("Agent ID (Vide = Tous):"));
+        panel.add(agentField);
+
+        if (JOptionPane.showConfirmDialog(null, panel, "Sélectionner la Période", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) return;
+        Date start;
+        Date end;
+        try {
+            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+            start = sdf.parse(startField.getText());
+            end = sdf.parse(endField.getText());
         } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, "Erreur: " + e.getMessage(), "Erreur", JOptionPane.ERROR_MESSAGE);
+            JOptionPane.showMessageDialog(this, "Erreur (Format de date invalide ?): " + e.getMessage());
+            return;
         }
+        String agentId = agentField.getText().trim();
+
+        fetcher.query("Ouverture de l'historique de la période...",
+            () -> monitorService.openHistoryQuery(agentId.isEmpty() ? null : agentId, start, end),
+            cursor -> {
+                // Non modale : la fenêtre de progression des pages suivantes reste utilisable
+                JDialog historyDialog = new JDialog(this, "Historique de la période" + (agentId.isEmpty() ? "" : " - " + agentId), false);
+                historyDialog.setSize(700, 450);
+                historyDialog.setLocationRelativeTo(this);
+                historyDialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+
+                HistoryTableModel model = new HistoryTableModel(new HistoryColumns(HISTORY_PAGE_SIZE));
+                JTable historyTable = new JTable(model);
+                historyTable.setAutoCreateRowSorter(true);
+                historyDialog.add(new JScrollPane(historyTable), BorderLayout.CENTER);
+
+                JLabel countLabel = new JLabel(" ");
+                JButton nextBtn = new JButton("Charger la suite");
+                JPanel bottom = new JPanel(new BorderLayout());
+                bottom.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+                bottom.add(countLabel, BorderLayout.WEST);
+                bottom.add(nextBtn, BorderLayout.EAST);
+                historyDialog.add(bottom, BorderLayout.SOUTH);
+
+                // Curseur fermé par le serveur après la dernière page (ou expiré)
+                AtomicBoolean finished = new AtomicBoolean();
+                Runnable loadNext = () -> {
+                    nextBtn.setEnabled(false);
+                    fetcher.query("Chargement de l'historique...", () -> monitorService.nextPage(cursor, HISTORY_PAGE_SIZE), page -> {
+                        model.append(page.getRecords());
+                        finished.set(page.isLast());
+                        nextBtn.setEnabled(!page.isLast());
+                        countLabel.setText(model.getRowCount() + " lignes" + (page.isLast() ? " (fin de la période)" : ""));
+                    }, e -> {
+                        finished.set(true);
+                        showError(e);
+                    });
+                };
+                nextBtn.addActionListener(e -> loadNext.run());
+                historyDialog.addWindowListener(new java.awt.event.WindowAdapter() {
+                    @Override
+                    public void windowClosed(java.awt.event.WindowEvent e) {
+                        // Libère le curseur (et son thread de lecture) sans attendre son expiration
+                        if (!finished.get()) {
+                            fetcher.execute(() -> {
+                                monitorService.closeHistoryQuery(cursor);
+                                return null;
+                            }, ignored -> { });
+                        }
+                    }
+                });
+
+                historyDialog.setVisible(true);
+                loadNext.run();
+            },
+            this::showError);
     }
 
     private void connectToServer() {
@@ -338,52 +465,110 @@ public class MonitorClient extends JFrame {
         }
     }
 
+    // Objet distant appelé par le serveur à chaque lot de changements
+    private class PushListener extends UnicastRemoteObject implements MonitorListener {
+        // Lots reçus pas encore appliqués : un seul passage sur l'EDT les applique tous
+        private final ConcurrentLinkedQueue<ChangeSet> received = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        PushListener() throws RemoteException {
+            super();
+        }
+
+        @Override
+        public void onChanges(ChangeSet changes) {
+            received.add(changes);
+            if (scheduled.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(this::applyReceived);
+            }
+        }
+
+        private void applyReceived() {
+            scheduled.set(false);
+            boolean alertsChanged = false;
+            ChangeSet changes;
+            while ((changes = received.poll()) != null) {
+                alertsChanged |= applyChanges(changes);
+            }
+            lastPush = System.currentTimeMillis();
+            if (alertsChanged) showAlerts();
+        }
+    }
+
+    // Abonnement aux changements poussés (sinon, ou si le serveur ne peut pas rappeler le client : interrogation)
+    private void subscribe() {
+        fetcher.execute(() -> {
+            try {
+                PushListener listener = new PushListener();
+                if (monitorService.subscribe(listener)) return listener;
+                System.out.println("Serveur saturé : mises à jour par interrogation");
+            } catch (Exception e) {
+                System.err.println("Abonnement impossible, mises à jour par interrogation: " + e.getMessage());
+            }
+            return null;
+        }, listener -> {
+            if (listener == null) return;
+            pushListener = listener;
+            System.out.println("Abonné aux mises à jour du serveur");
+            addWindowListener(new java.awt.event.WindowAdapter() {
+                @Override
+                public void windowClosing(java.awt.event.WindowEvent e) {
+                    try {
+                        monitorService.unsubscribe(pushListener);
+                    } catch (Exception ex) {
+                        // Le serveur retirera l'abonné de lui-même
+                    }
+                }
+            });
+        });
+    }
+
     private void startRefreshTimer() {
-        Timer timer = new Timer(1000, e -> updateData());
+        subscribe();
+        Timer timer = new Timer(1000, e -> updateData(false));
         timer.start();
     }
 
-    private void updateData() {
+    // Interroge le serveur, sauf si des changements poussés arrivent (force = bouton Rafraîchir)
+    private void updateData(boolean force) {
         if (monitorService == null) return;
 
-        try {
-            List<AgentData> agents = monitorService.getAgents();
-            Date now = new Date();
-            
-            tableModel.setRowCount(0);
-            for (AgentData agent : agents) {
-                // Vérifier si l'agent est déconnecté (pas de mise à jour depuis 15 secondes)
-                long diff = now.getTime() - agent.getTimestamp().getTime();
-                boolean isOffline = diff > 15000;
-                
-                String status;
-                if (isOffline) {
-                    status = "OFFLINE";
-                } else {
-                    status = agent.getCpuUsage() >= cpuThreshold ? "CRITIQUE" : "OK";
-                }
-                
-                Object[] row = {
-                    agent.getAgentId(),
-                    isOffline ? "0" : String.format("%.0f", agent.getCpuUsage()),
-                    isOffline ? "0" : String.format("%.0f", agent.getMemoryUsage()),
-                    isOffline ? "0" : String.format("%.0f", agent.getDiskUsage()),
-                    new SimpleDateFormat("HH:mm:ss").format(agent.getTimestamp()),
-                    status
-                };
-                tableModel.addRow(row);
-            }
+        boolean pushing = System.currentTimeMillis() - lastPush < PUSH_TIMEOUT_MS;
+        if (!pushing || force) {
+            // Seuls les agents modifiés et les nouvelles alertes transitent (un seul appel à la fois)
+            fetcher.refresh(() -> monitorService.getChangesSince(changesVersion), changes -> {
+                if (applyChanges(changes)) showAlerts();
+            });
+        }
+    }
 
-            List<String> alerts = monitorService.getAlerts();
-            StringBuilder sb = new StringBuilder();
-            for (String alert : alerts) {
-                sb.append(alert).append("\n");
-            }
-            alertsArea.setText(sb.toString());
+    private void showAlerts() {
+        StringBuilder sb = new StringBuilder();
+        for (String alert : recentAlerts) {
+            sb.append(alert).append("\n");
+        }
+        alertsArea.setText(sb.toString());
+    }
 
-        } catch (Exception e) {
-            System.err.println("Erreur lors de la mise à jour: " + e.getMessage());
+    // Applique un lot de changements à l'état local (10 dernières alertes gardées) ; vrai si les alertes ont changé
+    private boolean applyChanges(ChangeSet changes) {
+        if (changes.isFull()) {
+            // État complet : retirer les agents absents, sans vider le tableau (sélection conservée)
+            Set<String> missing = new HashSet<>(tableModel.agentIds());
+            for (AgentData agent : changes.getUpdated()) {
+                missing.remove(agent.getAgentId());
+            }
+            tableModel.remove(missing);
+            recentAlerts.clear();
         }
+        tableModel.update(changes.getUpdated());
+        tableModel.remove(changes.getRemoved());
+        for (AlertEvent alert : changes.getAlerts()) {
+            recentAlerts.addLast(alert.toString());
+            if (recentAlerts.size() > 10) recentAlerts.removeFirst();
+        }
+        changesVersion = changes.getVersion();
+        return changes.isFull() || !changes.getAlerts().isEmpty();
     }
 
     private void exportToCSV() {
@@ -428,6 +613,7 @@ public class MonitorClient extends JFrame {
 
     private void exportHistoryByDate() {
         JPanel panel = new JPanel(new GridLayout(4, 2));
+        JComboBox<String> formatBox = new JComboBox<>(new String[] {"CSV compressé (.csv.gz)", "Colonnes binaires (.cols.gz)"});
         JTextField startField = new JTextField(new SimpleDateFormat("yyyy-MM-dd 00:00:00").format(new Date()));
         JTextField endField = new JTextField(new SimpleDateFormat("yyyy-MM-dd 23:59:59").format(new Date()));
         
@@ -438,6 +624,8 @@ public class MonitorClient extends JFrame {
         panel.add(new JLabel("Agent ID (Vide = Tous):"));
         JTextField agentField = new JTextField();
         panel.add(agentField);
+        panel.add(new JLabel("Format:"));
+        panel.add(formatBox);
 
         int result = JOptionPane.showConfirmDialog(null, panel, "Sélectionner la Période", JOptionPane.OK_CANCEL_OPTION);
         if (result == JOptionPane.OK_OPTION) {
@@ -446,34 +634,74 @@ public class MonitorClient extends JFrame {
                 Date start = sdf.parse(startField.getText());
                 Date end = sdf.parse(endField.getText());
                 String agentId = agentField.getText().trim();
-                
-                List<String[]> data = monitorService.getHistoryByDate(agentId.isEmpty() ? null : agentId, start, end);
-                
-                if (data.isEmpty()) {
-                    JOptionPane.showMessageDialog(this, "Aucune donnée trouvée pour cette période.");
-                    return;
-                }
+                boolean columnar = formatBox.getSelectedIndex() == 1;
 
                 JFileChooser fileChooser = new JFileChooser();
-                fileChooser.setSelectedFile(new java.io.File("historique_" + 
-                    new SimpleDateFormat("yyyyMMdd").format(start) + ".csv"));
-                
-                if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-                    try (PrintWriter writer = new PrintWriter(new FileWriter(fileChooser.getSelectedFile()))) {
-                        writer.println("Date,Agent ID,CPU (%),Mémoire (%),Disque (%),Statut");
-                        for (String[] row : data) {
-                            writer.println(String.join(",", row));
+                fileChooser.setSelectedFile(new File("historique_" +
+                    new SimpleDateFormat("yyyyMMdd").format(start) + (columnar ? ".cols.gz" : ".csv.gz")));
+                if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+                File file = fileChooser.getSelectedFile();
+
+                // Le serveur écrit le fichier compressé ; le thread de requête suit l'avancement puis le télécharge
+                fetcher.query("Export de l'historique de la période...",
+                    status -> downloadExport(agentId.isEmpty() ? null : agentId, start, end, columnar, file, status),
+                    lines -> {
+                        if (lines == 0) {
+                            file.delete();
+                            JOptionPane.showMessageDialog(this, "Aucune donnée trouvée pour cette période.");
+                        } else {
+                            JOptionPane.showMessageDialog(this, "Historique exporté (" + lines + " lignes) !");
                         }
-                        JOptionPane.showMessageDialog(this, "Historique exporté (" + data.size() + " lignes) !");
-                    }
-                }
-
+                    },
+                    this::showError);
             } catch (Exception e) {
                 JOptionPane.showMessageDialog(this, "Erreur (Format de date invalide ?): " + e.getMessage());
             }
         }
     }
 
+    // Lance l'export sur le serveur, attend sa fin puis copie le fichier par blocs (thread de requête) ; retourne le nombre de lignes
+    private long downloadExport(String agentId, Date start, Date end, boolean columnar, File file,
+                                Consumer<String> status) throws Exception {
+        long job = monitorService.startExport(agentId, start, end, columnar);
+        boolean done = false;
+        try {
+            ExportStatus export = monitorService.getExportStatus(job);
+            while (export.getState() == ExportStatus.State.RUNNING) {
+                status.accept(export.getRows() + " lignes" + (export.getPercent() >= 0 ? " (" + export.getPercent() + " %)" : "")
+                        + ", " + export.getBytes() / 1024 + " Ko compressés");
+                // Export annulé depuis la fenêtre de progression : l'attente est interrompue
+                Thread.sleep(EXPORT_POLL_MS);
+                export = monitorService.getExportStatus(job);
+            }
+            if (export.getState() == ExportStatus.State.FAILED) {
+                throw new RemoteException("Export échoué: " + export.getMessage());
+            }
+            if (export.getRows() == 0) return 0;
+
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                long offset = 0;
+                while (true) {
+                    if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+                    byte[] chunk = monitorService.readExport(job, offset, EXPORT_CHUNK_SIZE);
+                    if (chunk.length == 0) break;
+                    out.write(chunk);
+                    offset += chunk.length;
+                    status.accept("Téléchargement: " + offset / 1024 + " / " + export.getBytes() / 1024 + " Ko");
+                }
+            }
+            done = true;
+            return export.getRows();
+        } finally {
+            try {
+                monitorService.deleteExport(job);
+            } catch (RemoteException e) {
+                // Le fichier expirera côté serveur
+            }
+            if (!done) file.delete();
+        }
+    }
+
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
             LoginDialog loginDialog = new LoginDialog(null);
@@ -0,0 +1,232 @@
+package client;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Appels au serveur hors du thread Swing (EDT).
+ *
+ * Les rafraîchissements passent par un thread unique et ne se chevauchent
+ * pas : une demande arrivant pendant un appel est mémorisée et relancée une
+ * seule fois quand le résultat du premier a été appliqué. Les requêtes longues
+ * (historique, statistiques, export) ont leurs propres threads ; au-delà d'un
+ * court délai, une fenêtre de progression permet de les annuler (le résultat
+ * est alors ignoré : l'appel RMI lui-même ne peut pas être interrompu).
+ * Les résultats et les erreurs sont toujours traités sur l'EDT.
+ * Les méthodes publiques s'appellent depuis l'EDT.
+ */
+public class RemoteFetcher {
+
+    // Appel distant exécuté hors de l'EDT
+    public interface Call<T> {
+        T call() throws Exception;
+    }
+
+    // Requête longue qui signale son avancement (texte affiché dans la fenêtre de progression)
+    public interface ProgressCall<T> {
+        T call(Consumer<String> progress) throws Exception;
+    }
+
+    // Délai avant d'afficher la fenêtre de progression (requêtes rapides : rien)
+    private static final int PROGRESS_DELAY_MS = 300;
+
+    private final Component owner;
+    private final ExecutorService refreshExecutor;
+    private final ExecutorService queryExecutor;
+
+    // Rafraîchissement en cours (de l'appel jusqu'à l'application du résultat)
+    private boolean refreshing;
+    private Runnable pendingRefresh;
+
+    public RemoteFetcher(Component owner) {
+        this.owner = owner;
+        this.refreshExecutor = Executors.newSingleThreadExecutor(daemonThreads("rmi-refresh"));
+        this.queryExecutor = Executors.newCachedThreadPool(daemonThreads("rmi-query"));
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /*
+     * Rafraîchissement : "call" sur le thread de rafraîchissement, puis "apply" sur l'EDT.
+     * Si un rafraîchissement est déjà en cours, seul le dernier demandé sera relancé après lui.
+     */
+    public <T> void refresh(Call<T> call, Consumer<T> apply) {
+        if (refreshing) {
+            pendingRefresh = () -> refresh(call, apply);
+            return;
+        }
+        refreshing = true;
+        refreshExecutor.execute(() -> {
+            T result = null;
+            Exception error = null;
+            try {
+                result = call.call();
+            } catch (Exception e) {
+                error = e;
+            }
+            T value = result;
+            Exception failure = error;
+            SwingUtilities.invokeLater(() -> {
+                try {
+                    if (failure != null) {
+                        System.err.println("Erreur lors de la mise à jour: " + failure.getMessage());
+                    } else {
+                        apply.accept(value);
+                    }
+                } finally {
+                    refreshing = false;
+                    Runnable next = pendingRefresh;
+                    pendingRefresh = null;
+                    if (next != null) next.run();
+                }
+            });
+        });
+    }
+
+    // Appel ponctuel sur le thread de rafraîchissement (dans l'ordre, jamais regroupé)
+    public <T> void execute(Call<T> call, Consumer<T> apply) {
+        refreshExecutor.execute(() -> {
+            try {
+                T value = call.call();
+                SwingUtilities.invokeLater(() -> apply.accept(value));
+            } catch (Exception e) {
+                System.err.println("Erreur d'appel au serveur: " + e.getMessage());
+            }
+        });
+    }
+
+    /*
+     * Requête longue : "call" sur un thread de requête, "onResult" ou "onError" sur l'EDT.
+     * "message" est affiché dans la fenêtre de progression.
+     */
+    public <T> void query(String message, Call<T> call, Consumer<T> onResult, Consumer<Exception> onError) {
+        query(message, (ProgressCall<T>) status -> call.call(), onResult, onError);
+    }
+
+    // Même chose, "call" pouvant mettre à jour le texte d'avancement depuis son thread
+    public <T> void query(String message, ProgressCall<T> call, Consumer<T> onResult, Consumer<Exception> onError) {
+        ProgressDialog progress = new ProgressDialog(message);
+        Consumer<String> status = text -> SwingUtilities.invokeLater(() -> progress.status(text));
+        Future<?> task = queryExecutor.submit(() -> {
+            T result = null;
+            Exception error = null;
+            try {
+                result = call.call(status);
+            } catch (Exception e) {
+                error = e;
+            }
+            T value = result;
+            Exception failure = error;
+            SwingUtilities.invokeLater(() -> {
+                if (!progress.finish()) return; // annulée
+                if (failure != null) {
+                    onError.accept(failure);
+                } else {
+                    onResult.accept(value);
+                }
+            });
+        });
+        progress.start(task);
+    }
+
+    // Fenêtre de progression (non modale) d'une requête, avec bouton Annuler
+    private final class ProgressDialog {
+        private final String message;
+        private Timer timer;
+        private JDialog dialog;
+        private JLabel elapsedLabel;
+        private JLabel statusLabel;
+        private String statusText = " ";
+        private Future<?> task;
+        private long started;
+        private boolean done;
+
+        ProgressDialog(String message) {
+            this.message = message;
+        }
+
+        void start(Future<?> task) {
+            this.task = task;
+            this.started = System.currentTimeMillis();
+            timer = new Timer(PROGRESS_DELAY_MS, e -> tick());
+            timer.start();
+        }
+
+        private void tick() {
+            if (done) return;
+            if (dialog == null) {
+                show();
+                timer.setDelay(1000);
+            }
+            elapsedLabel.setText(((System.currentTimeMillis() - started) / 1000) + " s écoulée(s)");
+        }
+
+        private void show() {
+            Window window = owner instanceof Window ? (Window) owner : SwingUtilities.getWindowAncestor(owner);
+            dialog = new JDialog(window, "Requête en cours", Dialog.ModalityType.MODELESS);
+            JPanel panel = new JPanel(new BorderLayout(5, 5));
+            panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+            JPanel top = new JPanel(new GridLayout(2, 1));
+            top.add(new JLabel(message));
+            statusLabel = new JLabel(statusText);
+            top.add(statusLabel);
+            panel.add(top, BorderLayout.NORTH);
+            JProgressBar bar = new JProgressBar();
+            bar.setIndeterminate(true);
+            panel.add(bar, BorderLayout.CENTER);
+            elapsedLabel = new JLabel();
+            JButton cancelBtn = new JButton("Annuler");
+            cancelBtn.addActionListener(e -> cancel());
+            JPanel bottom = new JPanel(new BorderLayout());
+            bottom.add(elapsedLabel, BorderLayout.WEST);
+            bottom.add(cancelBtn, BorderLayout.EAST);
+            panel.add(bottom, BorderLayout.SOUTH);
+            dialog.add(panel);
+            dialog.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+            dialog.addWindowListener(new java.awt.event.WindowAdapter() {
+                @Override
+                public void windowClosing(java.awt.event.WindowEvent e) {
+                    cancel();
+                }
+            });
+            dialog.pack();
+            dialog.setLocationRelativeTo(owner);
+            dialog.setVisible(true);
+        }
+
+        void status(String text) {
+            if (done) return;
+            statusText = text;
+            if (statusLabel != null) statusLabel.setText(text);
+        }
+
+        private void cancel() {
+            if (done) return;
+            task.cancel(true);
+            System.out.println("Requête annulée : " + message);
+            finish();
+        }
+
+        // Ferme la fenêtre ; faux si la requête était déjà terminée ou annulée
+        boolean finish() {
+            if (done) return false;
+            done = true;
+            if (timer != null) timer.stop();
+            if (dialog != null) dialog.dispose();
+            return true;
+        }
+    }
+}
@@ -12,6 +12,20 @@ public class AgentData implements Serializable {
     private double diskUsage;
     private Date timestamp;
     private boolean isCritical;
+    // Résumé de l'intervalle d'envoi quand l'agent échantillonne plus vite qu'il n'envoie :
+    // les valeurs principales sont alors des moyennes (null = une seule mesure)
+    private int sampleCount;
+    private double[] summary;
+    // Battement de cœur : "valeurs inchangées, toujours en vie" (valeurs NaN, complétées par le serveur)
+    private boolean heartbeat;
+    // Agent sans contact depuis le délai de déconnexion (décidé par le serveur)
+    private boolean offline;
+
+    // Disposition du résumé : minimums, maximums puis dernières valeurs (cpu, mémoire, disque)
+    public static final int SUMMARY_MIN = 0;
+    public static final int SUMMARY_MAX = 3;
+    public static final int SUMMARY_LAST = 6;
+    public static final int SUMMARY_SIZE = 9;
 
     public AgentData(String agentId, double cpuUsage, double memoryUsage, double diskUsage) {
         this.agentId = agentId;
@@ -22,6 +36,16 @@ public class AgentData implements Serializable {
         this.isCritical = false;
     }
 
+    // Constructeur complet (utilisé par le décodage binaire)
+    public AgentData(String agentId, double cpuUsage, double memoryUsage, double diskUsage, long timestampMillis, boolean critical) {
+        this.agentId = agentId;
+        this.cpuUsage = cpuUsage;
+        this.memoryUsage = memoryUsage;
+        this.diskUsage = diskUsage;
+        this.timestamp = new Date(timestampMillis);
+        this.isCritical = critical;
+    }
+
     public String getAgentId() { return agentId; }
     public double getCpuUsage() { return cpuUsage; }
     public double getMemoryUsage() { return memoryUsage; }
@@ -30,6 +54,28 @@ public class AgentData implements Serializable {
     public boolean isCritical() { return isCritical; }
     public void setCritical(boolean critical) { isCritical = critical; }
 
+    // "values" : minimums, maximums et dernières valeurs (voir SUMMARY_*), copiés
+    public void setSummary(int sampleCount, double[] values) {
+        this.sampleCount = sampleCount;
+        this.summary = values.clone();
+    }
+
+    public boolean isOffline() { return offline; }
+    public void setOffline(boolean offline) { this.offline = offline; }
+
+    public boolean isHeartbeat() { return heartbeat; }
+    public void setHeartbeat(boolean heartbeat) { this.heartbeat = heartbeat; }
+
+    public boolean hasSummary() { return summary != null; }
+    // Nombre de mesures résumées (1 sans résumé)
+    public int getSampleCount() { return summary != null ? sampleCount : 1; }
+
+    // Valeur du résumé (la valeur principale sans résumé) ; metric : 0 = cpu, 1 = mémoire, 2 = disque
+    public double getSummary(int field, int metric) {
+        if (summary != null) return summary[field + metric];
+        return metric == 0 ? cpuUsage : metric == 1 ? memoryUsage : diskUsage;
+    }
+
     @Override
     public String toString() {
         return String.format("Agent[%s] CPU: %.1f%%, MEM: %.1f%%", agentId, cpuUsage, memoryUsage);
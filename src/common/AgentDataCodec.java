@@ -0,0 +1,226 @@
+package common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Format binaire compact et versionné pour les mises à jour UDP des agents.
+ *
+ * Disposition d'une trame (big-endian) :
+ *   magic     2 octets  (0x4D53, "MS")
+ *   version   1 octet
+ *   flags     1 octet   (bit 0 = critique)
+ *   timestamp 8 octets  (epoch millis)
+ *   cpu       8 octets  (double)
+ *   memory    8 octets  (double)
+ *   disk      8 octets  (double)
+ *   idLength  2 octets  (longueur UTF-8 de l'agentId)
+ *   agentId   idLength octets (UTF-8)
+ *
+ * Version 2 : si le bit 1 des flags est levé, la trame se termine par le
+ * résumé de l'intervalle (agents échantillonnant plus vite qu'ils n'envoient) :
+ *   samples   2 octets  (nombre de mesures résumées)
+ *   résumé    9 float   (minimums, maximums, dernières valeurs : cpu, mémoire, disque)
+ * Une trame sans résumé est toujours écrite en version 1.
+ *
+ * Version 3 : battement de cœur (bit 2 des flags), envoyé par un agent dont
+ * les valeurs n'ont pas changé ; ni valeurs ni résumé :
+ *   magic, version, flags, timestamp, idLength, agentId
+ *
+ * L'encodage et le décodage travaillent directement sur le ByteBuffer,
+ * sans flux ni tableau intermédiaire.
+ */
+public final class AgentDataCodec {
+
+    public static final short MAGIC = 0x4D53;
+    public static final byte VERSION = 3;
+
+    public static final byte FLAG_CRITICAL = 0x01;
+    public static final byte FLAG_SUMMARY = 0x02;
+    public static final byte FLAG_HEARTBEAT = 0x04;
+
+    // Taille fixe avant l'agentId
+    public static final int HEADER_SIZE = 2 + 1 + 1 + 8 + 8 + 8 + 8 + 2;
+    public static final int HEARTBEAT_HEADER_SIZE = 2 + 1 + 1 + 8 + 2;
+    public static final int MAX_ID_LENGTH = 1024;
+    public static final int SUMMARY_BLOCK_SIZE = 2 + 4 * AgentData.SUMMARY_SIZE;
+    public static final int MAX_FRAME_SIZE = HEADER_SIZE + MAX_ID_LENGTH + SUMMARY_BLOCK_SIZE;
+
+    // En-tête d'un flux de sérialisation Java (ancien format des agents)
+    private static final short LEGACY_STREAM_MAGIC = (short) 0xACED;
+
+    // Tampon de décodage pour les ByteBuffer directs (un par thread)
+    private static final ThreadLocal<byte[]> ID_SCRATCH = ThreadLocal.withInitial(() -> new byte[MAX_ID_LENGTH]);
+    private static final ThreadLocal<double[]> SUMMARY_SCRATCH = ThreadLocal.withInitial(() -> new double[AgentData.SUMMARY_SIZE]);
+
+    private AgentDataCodec() {
+    }
+
+    // Vrai si le buffer commence par une trame binaire (sans déplacer la position)
+    public static boolean isBinaryFrame(ByteBuffer buf) {
+        return buf.remaining() >= 3 && buf.getShort(buf.position()) == MAGIC;
+    }
+
+    // Vrai si le buffer contient un AgentData sérialisé par ObjectOutputStream
+    public static boolean isLegacyFrame(ByteBuffer buf) {
+        return buf.remaining() >= 2 && buf.getShort(buf.position()) == LEGACY_STREAM_MAGIC;
+    }
+
+    // Taille exacte de la trame encodée pour cet agent
+    public static int encodedSize(AgentData data) {
+        if (data.isHeartbeat()) return HEARTBEAT_HEADER_SIZE + utf8Length(data.getAgentId());
+        return HEADER_SIZE + utf8Length(data.getAgentId()) + (data.hasSummary() ? SUMMARY_BLOCK_SIZE : 0);
+    }
+
+    // Encode la trame à la position courante du buffer
+    public static void encode(AgentData data, ByteBuffer buf) {
+        String agentId = data.getAgentId();
+        int idLength = utf8Length(agentId);
+        if (idLength > MAX_ID_LENGTH) {
+            throw new IllegalArgumentException("agentId trop long: " + idLength + " octets");
+        }
+
+        if (data.isHeartbeat()) {
+            buf.putShort(MAGIC);
+            buf.put(VERSION);
+            buf.put(FLAG_HEARTBEAT);
+            buf.putLong(data.getTimestamp().getTime());
+            buf.putShort((short) idLength);
+            putUtf8(agentId, buf);
+            return;
+        }
+
+        byte flags = 0;
+        if (data.isCritical()) flags |= FLAG_CRITICAL;
+        if (data.hasSummary()) flags |= FLAG_SUMMARY;
+
+        buf.putShort(MAGIC);
+        buf.put(data.hasSummary() ? (byte) 2 : 1);
+        buf.put(flags);
+        buf.putLong(data.getTimestamp().getTime());
+        buf.putDouble(data.getCpuUsage());
+        buf.putDouble(data.getMemoryUsage());
+        buf.putDouble(data.getDiskUsage());
+        buf.putShort((short) idLength);
+        putUtf8(agentId, buf);
+        if (data.hasSummary()) {
+            buf.putShort((short) Math.min(data.getSampleCount(), 0xFFFF));
+            for (int field = 0; field < AgentData.SUMMARY_SIZE; field += 3) {
+                for (int metric = 0; metric < 3; metric++) {
+                    buf.putFloat((float) data.getSummary(field, metric));
+                }
+            }
+        }
+    }
+
+    // Décode une trame à la position courante du buffer (la position avance après la trame)
+    public static AgentData decode(ByteBuffer buf) {
+        if (buf.remaining() < HEARTBEAT_HEADER_SIZE) {
+            throw new IllegalArgumentException("Trame tronquée: " + buf.remaining() + " octets");
+        }
+        short magic = buf.getShort();
+        if (magic != MAGIC) {
+            throw new IllegalArgumentException("Magic invalide: " + Integer.toHexString(magic & 0xFFFF));
+        }
+        byte version = buf.get();
+        if (version < 1 || version > VERSION) {
+            throw new IllegalArgumentException("Version de trame non supportée: " + version);
+        }
+        byte flags = buf.get();
+        if (version >= 3 && (flags & FLAG_HEARTBEAT) != 0) {
+            return decodeHeartbeat(buf);
+        }
+        if (buf.remaining() < HEADER_SIZE - 4) {
+            throw new IllegalArgumentException("Trame tronquée: " + (buf.remaining() + 4) + " octets");
+        }
+        long timestamp = buf.getLong();
+        double cpu = buf.getDouble();
+        double memory = buf.getDouble();
+        double disk = buf.getDouble();
+        int idLength = buf.getShort() & 0xFFFF;
+        if (idLength > MAX_ID_LENGTH || idLength > buf.remaining()) {
+            throw new IllegalArgumentException("Longueur d'agentId invalide: " + idLength);
+        }
+        String agentId = getUtf8(buf, idLength);
+
+        AgentData data = new AgentData(agentId, cpu, memory, disk, timestamp, (flags & FLAG_CRITICAL) != 0);
+        if (version >= 2 && (flags & FLAG_SUMMARY) != 0) {
+            if (buf.remaining() < SUMMARY_BLOCK_SIZE) {
+                throw new IllegalArgumentException("Résumé tronqué: " + buf.remaining() + " octets");
+            }
+            int samples = buf.getShort() & 0xFFFF;
+            double[] summary = SUMMARY_SCRATCH.get();
+            for (int i = 0; i < summary.length; i++) {
+                summary[i] = buf.getFloat();
+            }
+            data.setSummary(samples, summary);
+        }
+        return data;
+    }
+
+    // Suite d'une trame de battement de cœur (après magic, version et flags)
+    private static AgentData decodeHeartbeat(ByteBuffer buf) {
+        long timestamp = buf.getLong();
+        int idLength = buf.getShort() & 0xFFFF;
+        if (idLength > MAX_ID_LENGTH || idLength > buf.remaining()) {
+            throw new IllegalArgumentException("Longueur d'agentId invalide: " + idLength);
+        }
+        AgentData data = new AgentData(getUtf8(buf, idLength), Double.NaN, Double.NaN, Double.NaN, timestamp, false);
+        data.setHeartbeat(true);
+        return data;
+    }
+
+    // Longueur UTF-8 d'une chaîne, calculée sans allouer de tableau
+    static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static void putUtf8(String s, ByteBuffer buf) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buf.put((byte) c);
+            } else if (c < 0x800) {
+                buf.put((byte) (0xC0 | (c >> 6)));
+                buf.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf.put((byte) (0xF0 | (cp >> 18)));
+                buf.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                buf.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                buf.put((byte) (0x80 | (cp & 0x3F)));
+            } else {
+                buf.put((byte) (0xE0 | (c >> 12)));
+                buf.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buf.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private static String getUtf8(ByteBuffer buf, int length) {
+        String s;
+        if (buf.hasArray()) {
+            s = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+            buf.position(buf.position() + length);
+        } else {
+            byte[] scratch = ID_SCRATCH.get();
+            buf.get(scratch, 0, length);
+            s = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+        return s;
+    }
+}
@@ -0,0 +1,49 @@
+package common;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Alerte reçue d'un agent : une métrique en dépassement, sa valeur et sa
+ * gravité, datée à la réception par le serveur. LIVENESS : perte ou retour
+ * du contact avec l'agent (valeur = durée en secondes).
+ */
+public class AlertEvent implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Metric { CPU, MEMORY, DISK, OTHER, LIVENESS }
+
+    public enum Severity { WARNING, CRITICAL }
+
+    private final String agentId;
+    private final Metric metric;
+    private final double value;
+    private final Severity severity;
+    private final long time;
+    // Texte de l'alerte (ex: "CPU Surcharge: 85.00%")
+    private final String message;
+
+    public AlertEvent(String agentId, Metric metric, double value, Severity severity, long time, String message) {
+        this.agentId = agentId;
+        this.metric = metric;
+        this.value = value;
+        this.severity = severity;
+        this.time = time;
+        this.message = message;
+    }
+
+    public String getAgentId() { return agentId; }
+    public Metric getMetric() { return metric; }
+    public double getValue() { return value; }
+    public Severity getSeverity() { return severity; }
+    public long getTime() { return time; }
+    public Date getTimestamp() { return new Date(time); }
+    public String getMessage() { return message; }
+
+    // Même présentation que l'ancien journal texte des alertes
+    @Override
+    public String toString() {
+        String label = severity == Severity.CRITICAL ? "[ALERTE CRITIQUE]" : "[ALERTE]";
+        return label + " Agent [" + agentId + "]: " + message + " à " + new Date(time);
+    }
+}
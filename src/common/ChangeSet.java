@@ -0,0 +1,40 @@
+package common;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Changements survenus depuis une version donnée (voir MonitorService.getChangesSince).
+ *
+ * "full" indique un état complet à substituer à celui du client (première
+ * demande, redémarrage du serveur) ; sinon seuls les agents modifiés ou
+ * retirés et les nouvelles alertes sont transmis.
+ */
+public class ChangeSet implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long version;
+    private final boolean full;
+    private final List<AgentData> updated;
+    private final List<String> removed;
+    private final List<AlertEvent> alerts;
+
+    public ChangeSet(long version, boolean full, List<AgentData> updated, List<String> removed, List<AlertEvent> alerts) {
+        this.version = version;
+        this.full = full;
+        this.updated = updated;
+        this.removed = removed;
+        this.alerts = alerts;
+    }
+
+    // Version à passer à la demande suivante
+    public long getVersion() { return version; }
+    public boolean isFull() { return full; }
+    public List<AgentData> getUpdated() { return updated; }
+    public List<String> getRemoved() { return removed; }
+    public List<AlertEvent> getAlerts() { return alerts; }
+
+    public boolean isEmpty() {
+        return !full && updated.isEmpty() && removed.isEmpty() && alerts.isEmpty();
+    }
+}
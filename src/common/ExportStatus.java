@@ -0,0 +1,36 @@
+package common;
+
+import java.io.Serializable;
+
+/**
+ * Avancement d'un export d'historique lancé sur le serveur (voir MonitorService.startExport).
+ *
+ * "percent" est la part de la période déjà parcourue (-1 si la période est
+ * ouverte) ; "bytes" la taille du fichier compressé écrit jusqu'ici.
+ */
+public class ExportStatus implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum State { RUNNING, DONE, FAILED }
+
+    private final State state;
+    private final long rows;
+    private final long bytes;
+    private final int percent;
+    private final String message;
+
+    public ExportStatus(State state, long rows, long bytes, int percent, String message) {
+        this.state = state;
+        this.rows = rows;
+        this.bytes = bytes;
+        this.percent = percent;
+        this.message = message;
+    }
+
+    public State getState() { return state; }
+    public long getRows() { return rows; }
+    public long getBytes() { return bytes; }
+    public int getPercent() { return percent; }
+    // Cause de l'échec (état FAILED), sinon null
+    public String getMessage() { return message; }
+}
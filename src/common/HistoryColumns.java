@@ -0,0 +1,255 @@
+package common;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Enregistrements d'historique en colonnes de valeurs primitives : dates,
+ * code d'agent (dictionnaire des identifiants), cpu, mémoire, disque et statut.
+ *
+ * Transmis par RMI sans texte : la sérialisation écrit les dates en écarts
+ * successifs et les codes d'agents en entiers de taille variable, puis les
+ * valeurs telles quelles (environ 30 octets par ligne au lieu de six chaînes).
+ * Non thread-safe.
+ */
+public class HistoryColumns implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final byte OK = 0;
+    public static final byte CRITICAL = 1;
+
+    // Même présentation que les lignes d'historique du serveur
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private transient int size;
+    private transient long[] times;
+    private transient int[] agentCodes;
+    private transient double[] cpu;
+    private transient double[] memory;
+    private transient double[] disk;
+    private transient byte[] status;
+    private transient String[] agents;
+    private transient int agentCount;
+    // Codes des identifiants, pour l'ajout de lignes (reconstruit après désérialisation)
+    private transient Map<String, Integer> codes;
+
+    public HistoryColumns() {
+        this(16);
+    }
+
+    public HistoryColumns(int capacity) {
+        allocate(Math.max(1, capacity), 4);
+    }
+
+    private void allocate(int capacity, int agentCapacity) {
+        times = new long[capacity];
+        agentCodes = new int[capacity];
+        cpu = new double[capacity];
+        memory = new double[capacity];
+        disk = new double[capacity];
+        status = new byte[capacity];
+        agents = new String[Math.max(1, agentCapacity)];
+        codes = new HashMap<>();
+    }
+
+    public void add(long time, String agentId, double cpuUsage, double memoryUsage, double diskUsage, boolean critical) {
+        if (size == times.length) grow(size * 2);
+        times[size] = time;
+        agentCodes[size] = codeOf(agentId);
+        cpu[size] = cpuUsage;
+        memory[size] = memoryUsage;
+        disk[size] = diskUsage;
+        status[size] = critical ? CRITICAL : OK;
+        size++;
+    }
+
+    // Ajoute les lignes [from, to[ d'un autre résultat
+    public void addAll(HistoryColumns other, int from, int to) {
+        if (size + (to - from) > times.length) grow(Math.max(size * 2, size + (to - from)));
+        for (int i = from; i < to; i++) {
+            times[size] = other.times[i];
+            agentCodes[size] = codeOf(other.agents[other.agentCodes[i]]);
+            cpu[size] = other.cpu[i];
+            memory[size] = other.memory[i];
+            disk[size] = other.disk[i];
+            status[size] = other.status[i];
+            size++;
+        }
+    }
+
+    private int codeOf(String agentId) {
+        Integer code = codes.get(agentId);
+        if (code != null) return code;
+        if (agentCount == agents.length) agents = Arrays.copyOf(agents, agentCount * 2);
+        agents[agentCount] = agentId;
+        codes.put(agentId, agentCount);
+        return agentCount++;
+    }
+
+    private void grow(int capacity) {
+        times = Arrays.copyOf(times, capacity);
+        agentCodes = Arrays.copyOf(agentCodes, capacity);
+        cpu = Arrays.copyOf(cpu, capacity);
+        memory = Arrays.copyOf(memory, capacity);
+        disk = Arrays.copyOf(disk, capacity);
+        status = Arrays.copyOf(status, capacity);
+    }
+
+    public int size() { return size; }
+    public long getTime(int i) { return times[i]; }
+    public String getAgentId(int i) { return agents[agentCodes[i]]; }
+    public double getCpu(int i) { return cpu[i]; }
+    public double getMemory(int i) { return memory[i]; }
+    public double getDisk(int i) { return disk[i]; }
+    public boolean isCritical(int i) { return status[i] == CRITICAL; }
+
+    // Range les lignes par date (stable : l'ordre d'arrivée est gardé à date égale)
+    public void sortByTime() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(times[a], times[b]));
+        long[] t = new long[times.length];
+        int[] c = new int[times.length];
+        double[] u = new double[times.length];
+        double[] m = new double[times.length];
+        double[] d = new double[times.length];
+        byte[] s = new byte[times.length];
+        for (int i = 0; i < size; i++) {
+            int j = order[i];
+            t[i] = times[j];
+            c[i] = agentCodes[j];
+            u[i] = cpu[j];
+            m[i] = memory[j];
+            d[i] = disk[j];
+            s[i] = status[j];
+        }
+        times = t;
+        agentCodes = c;
+        cpu = u;
+        memory = m;
+        disk = d;
+        status = s;
+    }
+
+    public String formatTime(int i) {
+        return DATE_FORMAT.format(Instant.ofEpochMilli(times[i]));
+    }
+
+    // Ligne i au format CSV de l'historique (sans fin de ligne)
+    public void appendCsv(int i, StringBuilder out) {
+        out.append(formatTime(i)).append(',').append(getAgentId(i)).append(',');
+        appendFixed2(out, cpu[i]);
+        out.append(',');
+        appendFixed2(out, memory[i]);
+        out.append(',');
+        appendFixed2(out, disk[i]);
+        out.append(',').append(isCritical(i) ? "CRITIQUE" : "OK");
+    }
+
+    // Deux décimales, séparateur point, sans passer par String.format
+    private static void appendFixed2(StringBuilder out, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.append(value);
+            return;
+        }
+        long hundredths = Math.round(Math.abs(value) * 100);
+        if (value < 0 && hundredths != 0) out.append('-');
+        out.append(hundredths / 100).append('.');
+        long cents = hundredths % 100;
+        if (cents < 10) out.append('0');
+        out.append(cents);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.writeInt(size);
+        out.writeInt(agentCount);
+        for (int a = 0; a < agentCount; a++) {
+            out.writeUTF(agents[a]);
+        }
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            // Écart à la date précédente (peut être négatif entre deux agents)
+            writeVarLong(out, zigZag(times[i] - previous));
+            previous = times[i];
+        }
+        for (int i = 0; i < size; i++) {
+            writeVarLong(out, agentCodes[i]);
+        }
+        out.write(status, 0, size);
+        for (int i = 0; i < size; i++) {
+            out.writeDouble(cpu[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeDouble(memory[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeDouble(disk[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException {
+        int rows = in.readInt();
+        int agentTotal = in.readInt();
+        if (rows < 0 || agentTotal < 0) throw new IOException("Taille invalide: " + rows + "/" + agentTotal);
+        allocate(Math.max(1, rows), agentTotal);
+        for (int a = 0; a < agentTotal; a++) {
+            codeOf(in.readUTF());
+        }
+        long previous = 0;
+        for (int i = 0; i < rows; i++) {
+            previous += unZigZag(readVarLong(in));
+            times[i] = previous;
+        }
+        for (int i = 0; i < rows; i++) {
+            long code = readVarLong(in);
+            if (code < 0 || code >= agentTotal) throw new IOException("Code d'agent invalide: " + code);
+            agentCodes[i] = (int) code;
+        }
+        in.readFully(status, 0, rows);
+        for (int i = 0; i < rows; i++) {
+            cpu[i] = in.readDouble();
+        }
+        for (int i = 0; i < rows; i++) {
+            memory[i] = in.readDouble();
+        }
+        for (int i = 0; i < rows; i++) {
+            disk[i] = in.readDouble();
+        }
+        size = rows;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(ObjectOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ObjectInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Entier variable trop long");
+    }
+}
@@ -0,0 +1,24 @@
+package common;
+
+import java.io.Serializable;
+
+/**
+ * Page d'une requête d'historique par curseur (voir MonitorService.openHistoryQuery).
+ *
+ * Les enregistrements sont transmis en colonnes (HistoryColumns) ; "last"
+ * indique que la requête est terminée (le curseur est alors fermé par le serveur).
+ */
+public class HistoryPage implements Serializable {
+    private static final long serialVersionUID = 2L;
+
+    private final HistoryColumns records;
+    private final boolean last;
+
+    public HistoryPage(HistoryColumns records, boolean last) {
+        this.records = records;
+        this.last = last;
+    }
+
+    public HistoryColumns getRecords() { return records; }
+    public boolean isLast() { return last; }
+}
@@ -0,0 +1,13 @@
+package common;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Objet distant exporté par un client pour recevoir les changements poussés
+ * par le serveur (voir MonitorService.subscribe).
+ */
+public interface MonitorListener extends Remote {
+    // Changements depuis le lot précédent (le premier lot est un état complet)
+    void onChanges(ChangeSet changes) throws RemoteException;
+}
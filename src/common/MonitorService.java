@@ -11,12 +11,54 @@ public interface MonitorService extends Remote {
     
     // Récupérer les alertes récentes (messages)
     List<String> getAlerts() throws RemoteException;
+
+    // Agents modifiés ou retirés et nouvelles alertes depuis "version" (0 = état complet)
+    ChangeSet getChangesSince(long version) throws RemoteException;
+
+    // Agents sans contact depuis le délai de déconnexion du serveur
+    List<String> getOfflineAgents() throws RemoteException;
+
+    // Abonnement aux changements poussés par le serveur (débit limité, regroupés si le client est lent)
+    // Retourne false si le serveur a atteint son nombre maximal d'abonnés
+    boolean subscribe(MonitorListener listener) throws RemoteException;
+
+    void unsubscribe(MonitorListener listener) throws RemoteException;
+
+    // Historique des alertes par période et par agent (vide = tous), par pages chronologiques
+    List<AlertEvent> getAlertHistory(String agentId, java.util.Date startDate, java.util.Date endDate, int offset, int limit) throws RemoteException;
     
     // Récupérer l'historique d'un agent (ou tous si agentId est vide)
     List<String[]> getHistory(String agentId, int maxRecords) throws RemoteException;
 
-    // Récupérer l'historique par période
+    // Mêmes enregistrements en colonnes de valeurs (dates, agents, cpu, mémoire, disque, statut) : transfert compact
+    HistoryColumns getHistoryColumns(String agentId, int maxRecords) throws RemoteException;
+
+    // Récupérer l'historique par période (résultat complet en une réponse : préférer les curseurs pour les longues périodes)
     List<String[]> getHistoryByDate(String agentId, java.util.Date startDate, java.util.Date endDate) throws RemoteException;
+
+    // Historique par période en colonnes (résultat complet en une réponse)
+    HistoryColumns getHistoryColumnsByDate(String agentId, java.util.Date startDate, java.util.Date endDate) throws RemoteException;
+
+    // Historique par période lu page par page : ouvre un curseur (durée de vie et nombre limités par le serveur)
+    long openHistoryQuery(String agentId, java.util.Date startDate, java.util.Date endDate) throws RemoteException;
+
+    // Page suivante du curseur (au plus pageSize lignes, éventuellement moins) ; la dernière page ferme le curseur
+    HistoryPage nextPage(long cursor, int pageSize) throws RemoteException;
+
+    // Ferme un curseur avant sa dernière page
+    void closeHistoryQuery(long cursor) throws RemoteException;
+    
+    // Export de la période écrit par le serveur dans un fichier compressé (CSV ou colonnes binaires) ; retourne son identifiant
+    long startExport(String agentId, java.util.Date startDate, java.util.Date endDate, boolean columnar) throws RemoteException;
+
+    // Avancement de l'export (lignes écrites, octets, part de la période parcourue)
+    ExportStatus getExportStatus(long job) throws RemoteException;
+
+    // Bloc du fichier d'un export terminé (au plus "length" octets, limité par le serveur) ; tableau vide à la fin
+    byte[] readExport(long job, long offset, int length) throws RemoteException;
+
+    // Arrête l'export s'il est en cours et supprime son fichier
+    void deleteExport(long job) throws RemoteException;
     
     // Récupérer les statistiques d'un agent
     Map<String, Double> getStatistics(String agentId) throws RemoteException;
@@ -0,0 +1,177 @@
+package server;
+
+import common.AgentData;
+import common.HistoryColumns;
+
+import java.util.List;
+
+/**
+ * Historique récent d'un agent en mémoire : anneau de taille fixe sur des
+ * tableaux primitifs parallèles (aucun objet par échantillon). Les minimums
+ * et maximums de l'intervalle d'envoi de l'agent sont gardés avec chaque
+ * échantillon, pour que les statistiques voient les pics entre deux envois.
+ * Les plus anciens échantillons sont écrasés une fois l'anneau plein.
+ */
+public class AgentRingBuffer {
+
+    private static final int PEAKS = 6;
+
+    private final String agentId;
+    private final long[] times;
+    private final double[] cpu;
+    private final double[] memory;
+    private final double[] disk;
+    private final boolean[] critical;
+    // Par échantillon : minimums puis maximums de cpu, mémoire, disque
+    private final float[] peaks;
+
+    private int next;   // prochaine case à écrire
+    private int size;   // nombre d'échantillons valides
+    private boolean wrapped; // au moins un échantillon a été écrasé
+
+    public AgentRingBuffer(String agentId, int capacity) {
+        this.agentId = agentId;
+        this.times = new long[capacity];
+        this.cpu = new double[capacity];
+        this.memory = new double[capacity];
+        this.disk = new double[capacity];
+        this.critical = new boolean[capacity];
+        this.peaks = new float[capacity * PEAKS];
+    }
+
+    // Taille mémoire approximative d'un anneau de cette capacité
+    public static long bytesFor(int capacity) {
+        return (long) capacity * (8 + 8 + 8 + 8 + 1 + 4 * PEAKS) + 128;
+    }
+
+    public synchronized void add(AgentData data) {
+        times[next] = data.getTimestamp().getTime();
+        cpu[next] = data.getCpuUsage();
+        memory[next] = data.getMemoryUsage();
+        disk[next] = data.getDiskUsage();
+        critical[next] = data.isCritical();
+        for (int metric = 0; metric < 3; metric++) {
+            peaks[next * PEAKS + metric] = (float) data.getSummary(AgentData.SUMMARY_MIN, metric);
+            peaks[next * PEAKS + 3 + metric] = (float) data.getSummary(AgentData.SUMMARY_MAX, metric);
+        }
+        next = (next + 1) % times.length;
+        if (size < times.length) {
+            size++;
+        } else {
+            wrapped = true;
+        }
+    }
+
+    public String getAgentId() {
+        return agentId;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Ajoute les n derniers échantillons aux statistiques
+    public synchronized void accumulate(int n, StatsAccumulator stats) {
+        int count = Math.min(n, size);
+        double[] values = new double[RollupSeries.FIELDS];
+        for (int i = count - 1; i >= 0; i--) {
+            int idx = indexFromEnd(i);
+            addSample(stats, values, cpu[idx], memory[idx], disk[idx], critical[idx], peaks, idx * PEAKS);
+        }
+    }
+
+    // Un échantillon vu comme un bucket d'un échantillon (moyennes, minimums, maximums)
+    private static void addSample(StatsAccumulator stats, double[] values, double cpu, double memory, double disk,
+                                  boolean critical, float[] peaks, int offset) {
+        values[0] = cpu;
+        values[1] = memory;
+        values[2] = disk;
+        for (int f = 0; f < PEAKS; f++) {
+            values[3 + f] = peaks[offset + f];
+        }
+        stats.mergeBucket(1, critical ? 1 : 0, values, 0, null);
+    }
+
+    // Ajoute les n derniers échantillons (ordre chronologique) au format des lignes d'historique
+    public synchronized void appendRecords(int n, List<String[]> out) {
+        int count = Math.min(n, size);
+        for (int i = count - 1; i >= 0; i--) {
+            out.add(toRecord(indexFromEnd(i)));
+        }
+    }
+
+    // Même chose en colonnes, sans mise en forme texte
+    public synchronized void appendColumns(int n, HistoryColumns out) {
+        int count = Math.min(n, size);
+        for (int i = count - 1; i >= 0; i--) {
+            int idx = indexFromEnd(i);
+            out.add(times[idx], agentId, cpu[idx], memory[idx], disk[idx], critical[idx]);
+        }
+    }
+
+    // Copie cohérente des n derniers échantillons (pour fusionner plusieurs agents)
+    public synchronized Snapshot snapshot(int n) {
+        int count = Math.min(n, size);
+        Snapshot snap = new Snapshot(agentId, count, wrapped ? times[next] : Long.MIN_VALUE);
+        for (int i = 0; i < count; i++) {
+            int idx = indexFromEnd(count - 1 - i);
+            snap.times[i] = times[idx];
+            snap.cpu[i] = cpu[idx];
+            snap.memory[i] = memory[idx];
+            snap.disk[i] = disk[idx];
+            snap.critical[i] = critical[idx];
+            System.arraycopy(peaks, idx * PEAKS, snap.peaks, i * PEAKS, PEAKS);
+        }
+        return snap;
+    }
+
+    // Échantillons copiés, du plus ancien au plus récent
+    public static final class Snapshot {
+        final String agentId;
+        final long coverageStart;
+        final long[] times;
+        final double[] cpu;
+        final double[] memory;
+        final double[] disk;
+        final boolean[] critical;
+        final float[] peaks;
+
+        Snapshot(String agentId, int count, long coverageStart) {
+            this.agentId = agentId;
+            this.coverageStart = coverageStart;
+            this.times = new long[count];
+            this.cpu = new double[count];
+            this.memory = new double[count];
+            this.disk = new double[count];
+            this.critical = new boolean[count];
+            this.peaks = new float[count * PEAKS];
+        }
+
+        // Ajoute aux statistiques les échantillons à partir de "from"
+        void accumulate(int from, StatsAccumulator stats) {
+            double[] values = new double[RollupSeries.FIELDS];
+            for (int i = from; i < times.length; i++) {
+                addSample(stats, values, cpu[i], memory[i], disk[i], critical[i], peaks, i * PEAKS);
+            }
+        }
+
+        String[] toRecord(int i) {
+            return CsvSegmentFormat.toRecord(times[i], agentId, cpu[i], memory[i], disk[i], critical[i]);
+        }
+
+        void appendColumns(int from, HistoryColumns out) {
+            for (int i = from; i < times.length; i++) {
+                out.add(times[i], agentId, cpu[i], memory[i], disk[i], critical[i]);
+            }
+        }
+    }
+
+    private String[] toRecord(int idx) {
+        return CsvSegmentFormat.toRecord(times[idx], agentId, cpu[idx], memory[idx], disk[idx], critical[idx]);
+    }
+
+    private int indexFromEnd(int i) {
+        int idx = next - 1 - i;
+        return idx < 0 ? idx + times.length : idx;
+    }
+}
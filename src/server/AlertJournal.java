@@ -0,0 +1,284 @@
+package server;
+
+import common.AlertEvent;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Journal des alertes sur disque : un fichier texte par jour (yyyy-MM-dd.log),
+ * une alerte par ligne, champs séparés par des tabulations :
+ *   date (yyyy-MM-dd HH:mm:ss.SSS), gravité, métrique, valeur, agent, message
+ *
+ * Chaque fichier a un index temporel clairsemé (HistoryIndex, suffixe .idx)
+ * pour les recherches par période ; les fichiers plus anciens que la
+ * rétention sont supprimés au changement de jour. L'index d'un jour terminé
+ * est chargé en lecture seule, hors du verrou d'écriture, puis gardé en mémoire.
+ */
+public class AlertJournal {
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZONE);
+    private static final String EXTENSION = ".log";
+    // Longueur de "yyyy-MM-dd HH:mm:ss.SSS"
+    private static final int DATE_LENGTH = 23;
+
+    private final Path directory;
+    private final int indexInterval;
+    private final int retentionDays;
+
+    // Fichier du jour en cours d'écriture
+    private LocalDate day;
+    private FileChannel channel;
+    private HistoryIndex index;
+    private final StringBuilder line = new StringBuilder(128);
+
+    // Index des jours terminés (fichiers qui ne changent plus), chargés à la première lecture
+    private final Map<LocalDate, HistoryIndex> pastIndexes = new ConcurrentHashMap<>();
+
+    public AlertJournal(Path directory, int indexInterval, int retentionDays) {
+        this.directory = directory;
+        this.indexInterval = indexInterval;
+        this.retentionDays = retentionDays;
+    }
+
+    public synchronized void append(AlertEvent event) {
+        try {
+            LocalDate eventDay = Instant.ofEpochMilli(event.getTime()).atZone(ZONE).toLocalDate();
+            if (channel == null || eventDay.isAfter(day)) {
+                rotate(eventDay);
+            }
+            line.setLength(0);
+            line.append(DATE_FORMAT.format(Instant.ofEpochMilli(event.getTime()))).append('\t')
+                .append(event.getSeverity()).append('\t')
+                .append(event.getMetric()).append('\t');
+            CsvSegmentFormat.appendFixed2(line, event.getValue());
+            line.append('\t').append(clean(event.getAgentId()))
+                .append('\t').append(clean(event.getMessage())).append('\n');
+
+            long offset = channel.size();
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(line.toString());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            index.onAppend(event.getTime(), offset);
+        } catch (IOException e) {
+            System.err.println("Erreur écriture journal des alertes: " + e.getMessage());
+        }
+    }
+
+    public synchronized void close() {
+        closeCurrent();
+    }
+
+    /*
+     * Alertes de [start, end] (dates incluses) pour un agent (null ou vide = tous),
+     * dans l'ordre chronologique : les "limit" suivantes après en avoir sauté "offset".
+     */
+    public List<AlertEvent> query(String agentId, long start, long end, int offset, int limit) {
+        List<AlertEvent> page = new ArrayList<>(Math.max(0, Math.min(limit, 1024)));
+        if (limit <= 0) return page;
+        LocalDate first = start == Long.MIN_VALUE ? LocalDate.MIN : Instant.ofEpochMilli(start).atZone(ZONE).toLocalDate();
+        LocalDate last = end == Long.MAX_VALUE ? LocalDate.MAX : Instant.ofEpochMilli(end).atZone(ZONE).toLocalDate();
+        int skipped = 0;
+        for (LocalDate fileDay : days()) {
+            if (fileDay.isBefore(first) || fileDay.isAfter(last)) continue;
+            try (BufferedReader reader = open(fileDay, start)) {
+                if (reader == null) continue;
+                String text;
+                while ((text = reader.readLine()) != null) {
+                    AlertEvent event = parse(text);
+                    if (event == null || event.getTime() < start) continue;
+                    if (event.getTime() > end) break;
+                    if (agentId != null && !agentId.isEmpty() && !agentId.equals(event.getAgentId())) continue;
+                    if (skipped < offset) {
+                        skipped++;
+                        continue;
+                    }
+                    page.add(event);
+                    if (page.size() >= limit) return page;
+                }
+            } catch (IOException e) {
+                System.err.println("Erreur lecture journal des alertes: " + e.getMessage());
+            }
+        }
+        return page;
+    }
+
+    // Les "max" dernières alertes du journal (rechargement de la mémoire au démarrage)
+    public List<AlertEvent> readLast(int max) {
+        ArrayDeque<AlertEvent> last = new ArrayDeque<>(max);
+        List<LocalDate> files = new ArrayList<>(days());
+        List<List<AlertEvent>> parts = new ArrayList<>();
+        int found = 0;
+        for (int i = files.size() - 1; i >= 0 && found < max; i--) {
+            List<AlertEvent> part = new ArrayList<>();
+            try (BufferedReader reader = openTail(files.get(i), max - found)) {
+                if (reader == null) continue;
+                String text;
+                while ((text = reader.readLine()) != null) {
+                    AlertEvent event = parse(text);
+                    if (event != null) part.add(event);
+                }
+            } catch (IOException e) {
+                System.err.println("Erreur lecture journal des alertes: " + e.getMessage());
+            }
+            parts.add(part);
+            found += part.size();
+        }
+        for (int p = parts.size() - 1; p >= 0; p--) {
+            for (AlertEvent event : parts.get(p)) {
+                if (last.size() == max) last.removeFirst();
+                last.addLast(event);
+            }
+        }
+        return new ArrayList<>(last);
+    }
+
+    private void rotate(LocalDate newDay) throws IOException {
+        closeCurrent();
+        Files.createDirectories(directory);
+        Path file = pathFor(newDay);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        index = new HistoryIndex(file, indexInterval);
+        index.open();
+        day = newDay;
+        expire(newDay);
+    }
+
+    private void closeCurrent() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Erreur fermeture journal des alertes: " + e.getMessage());
+            }
+            index.close();
+        }
+        channel = null;
+        index = null;
+    }
+
+    // Supprime les fichiers (et leurs index) plus anciens que la rétention
+    private void expire(LocalDate today) {
+        if (retentionDays <= 0) return;
+        LocalDate limit = today.minusDays(retentionDays);
+        for (LocalDate fileDay : days()) {
+            if (!fileDay.isBefore(limit)) break;
+            try {
+                Path file = pathFor(fileDay);
+                Files.deleteIfExists(file);
+                Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".idx"));
+                pastIndexes.remove(fileDay);
+            } catch (IOException e) {
+                System.err.println("Erreur suppression journal des alertes: " + e.getMessage());
+            }
+        }
+    }
+
+    // Jours présents dans le répertoire, par ordre croissant
+    private TreeSet<LocalDate> days() {
+        TreeSet<LocalDate> days = new TreeSet<>();
+        if (!Files.isDirectory(directory)) return days;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    days.add(LocalDate.parse(name.substring(0, name.length() - EXTENSION.length())));
+                } catch (RuntimeException e) {
+                    // Fichier étranger au journal
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Erreur lecture répertoire des alertes: " + e.getMessage());
+        }
+        return days;
+    }
+
+    private Path pathFor(LocalDate fileDay) {
+        return directory.resolve(fileDay + EXTENSION);
+    }
+
+    // Lecteur positionné avant "time" par l'index, limité à la partie déjà écrite
+    private BufferedReader open(LocalDate fileDay, long time) throws IOException {
+        return openAt(fileDay, index -> index.seek(time));
+    }
+
+    // Lecteur positionné pour lire au moins les "records" dernières lignes
+    private BufferedReader openTail(LocalDate fileDay, int records) throws IOException {
+        return openAt(fileDay, index -> index.seekFromEnd(records));
+    }
+
+    private interface Seek {
+        long position(HistoryIndex index);
+    }
+
+    private BufferedReader openAt(LocalDate fileDay, Seek seek) throws IOException {
+        Path file = pathFor(fileDay);
+        long size;
+        long from;
+        LocalDate current;
+        synchronized (this) {
+            if (!Files.exists(file)) return null;
+            // Les lignes sont écrites d'un bloc sous ce verrou : la taille tombe sur une fin de ligne
+            size = Files.size(file);
+            current = day;
+            from = fileDay.equals(current) && index != null ? seek.position(index) : -1;
+        }
+        if (from < 0) {
+            // Autre jour : aucune écriture sur disque, et les ajouts ne sont pas bloqués pendant la relecture
+            HistoryIndex readIndex = pastIndexes.get(fileDay);
+            if (readIndex == null) {
+                readIndex = new HistoryIndex(file, indexInterval);
+                readIndex.load();
+                // On n'écrit plus dans un jour antérieur au jour courant : son index est définitif
+                if (current != null && fileDay.isBefore(current)) pastIndexes.put(fileDay, readIndex);
+            }
+            from = seek.position(readIndex);
+        }
+        FileChannel reader = FileChannel.open(file, StandardOpenOption.READ);
+        reader.position(Math.min(from, size));
+        InputStream in = new CsvSegmentFormat.BoundedInputStream(Channels.newInputStream(reader), size - Math.min(from, size));
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    private static AlertEvent parse(String text) {
+        if (text.length() <= DATE_LENGTH || text.charAt(DATE_LENGTH) != '\t') return null;
+        String[] fields = text.split("\t", 6);
+        if (fields.length < 6) return null;
+        try {
+            long time = Instant.from(DATE_FORMAT.parse(fields[0])).toEpochMilli();
+            return new AlertEvent(fields[4], AlertEvent.Metric.valueOf(fields[2]), Double.parseDouble(fields[3]),
+                    AlertEvent.Severity.valueOf(fields[1]), time, fields[5]);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Les tabulations et sauts de ligne sépareraient les champs
+    private static String clean(String text) {
+        if (text == null) return "";
+        return text.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,54 @@
+package server;
+
+import common.AlertEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Dernières alertes en mémoire, dans un anneau de taille fixe sans verrou.
+ *
+ * Chaque ajout réserve un numéro de séquence et écrase la case correspondante ;
+ * un lecteur ne retient une case que si elle porte encore le numéro attendu
+ * (les cases en cours d'écriture ou déjà réécrites sont ignorées).
+ */
+public class AlertRing {
+
+    private static final class Slot {
+        final long sequence;
+        final AlertEvent event;
+
+        Slot(long sequence, AlertEvent event) {
+            this.sequence = sequence;
+            this.event = event;
+        }
+    }
+
+    private final AtomicReferenceArray<Slot> slots;
+    private final AtomicLong next = new AtomicLong();
+
+    public AlertRing(int capacity) {
+        this.slots = new AtomicReferenceArray<>(Math.max(1, capacity));
+    }
+
+    public void add(AlertEvent event) {
+        long sequence = next.getAndIncrement();
+        slots.set((int) (sequence % slots.length()), new Slot(sequence, event));
+    }
+
+    // Les n dernières alertes, de la plus ancienne à la plus récente
+    public List<AlertEvent> latest(int n) {
+        long end = next.get();
+        long start = Math.max(0, end - Math.min(n, slots.length()));
+        List<AlertEvent> events = new ArrayList<>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            Slot slot = slots.get((int) (sequence % slots.length()));
+            if (slot != null && slot.sequence == sequence) {
+                events.add(slot.event);
+            }
+        }
+        return events;
+    }
+}
@@ -0,0 +1,105 @@
+package server;
+
+import common.AgentData;
+import common.AlertEvent;
+
+import java.util.regex.Pattern;
+
+/**
+ * Règle d'alerte : une métrique au-dessus d'un seuil pendant une durée,
+ * pour un groupe d'agents (motifs d'identifiant, ex: "web-*,api-?").
+ *
+ * L'alerte se déclenche une fois quand la valeur reste au-dessus de "above"
+ * pendant "durationMs" ; elle reste active (sans nouvelle notification, sauf
+ * rappel toutes les "repeatMs") jusqu'à ce que la valeur repasse sous "clear"
+ * (hystérésis).
+ *
+ * La valeur comparée est, au choix, la moyenne de l'intervalle d'envoi de
+ * l'agent, son minimum, son maximum (pics courts) ou sa dernière mesure.
+ */
+public class AlertRule {
+
+    // Valeur de l'échantillon résumé comparée aux seuils
+    public enum Stat { AVG, MIN, MAX, LAST }
+
+    final String name;
+    final AlertEvent.Metric metric;
+    final Stat stat;
+    final String agents;
+    final double above;
+    final double clear;
+    final long durationMs;
+    final AlertEvent.Severity severity;
+    final long repeatMs;
+    private final Pattern agentPattern;
+
+    public AlertRule(String name, AlertEvent.Metric metric, Stat stat, String agents, double above, double clear,
+                     long durationMs, AlertEvent.Severity severity, long repeatMs) {
+        if (metric != AlertEvent.Metric.CPU && metric != AlertEvent.Metric.MEMORY && metric != AlertEvent.Metric.DISK) {
+            throw new IllegalArgumentException("métrique " + metric + " non évaluable");
+        }
+        if (clear > above) {
+            throw new IllegalArgumentException("seuil de fin (" + clear + ") supérieur au seuil (" + above + ")");
+        }
+        this.name = name;
+        this.metric = metric;
+        this.stat = stat;
+        this.agents = agents;
+        this.above = above;
+        this.clear = clear;
+        this.durationMs = Math.max(0, durationMs);
+        this.severity = severity;
+        this.repeatMs = Math.max(0, repeatMs);
+        this.agentPattern = globs(agents);
+    }
+
+    public boolean appliesTo(String agentId) {
+        return agentPattern.matcher(agentId).matches();
+    }
+
+    double value(AgentData data) {
+        int m = metric.ordinal(); // CPU, MEMORY, DISK : même ordre que le résumé
+        switch (stat) {
+            case MIN: return data.getSummary(AgentData.SUMMARY_MIN, m);
+            case MAX: return data.getSummary(AgentData.SUMMARY_MAX, m);
+            case LAST: return data.getSummary(AgentData.SUMMARY_LAST, m);
+            default:
+                return m == 0 ? data.getCpuUsage() : m == 1 ? data.getMemoryUsage() : data.getDiskUsage();
+        }
+    }
+
+    // Même libellé que les alertes envoyées par les agents ("CPU Surcharge: 85.00%")
+    String label() {
+        switch (metric) {
+            case CPU: return "CPU";
+            case MEMORY: return "Mémoire";
+            default: return "Disque";
+        }
+    }
+
+    // "web-*,api-?" : motifs séparés par des virgules, * et ? comme jokers
+    private static Pattern globs(String agents) {
+        StringBuilder regex = new StringBuilder();
+        for (String glob : agents.split(",")) {
+            if (regex.length() > 0) regex.append('|');
+            StringBuilder literal = new StringBuilder();
+            for (char c : glob.trim().toCharArray()) {
+                if (c == '*' || c == '?') {
+                    if (literal.length() > 0) regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                    regex.append(c == '*' ? ".*" : ".");
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (literal.length() > 0) regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + metric + (stat != Stat.AVG ? " " + stat : "") + " > " + above + "%" + (durationMs > 0 ? " pendant " + durationMs / 1000 + " s" : "")
+                + ", fin < " + clear + "%, agents " + agents + ", " + severity + ")";
+    }
+}
@@ -0,0 +1,199 @@
+package server;
+
+import common.AgentData;
+import common.AlertEvent;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Évaluation des règles d'alerte sur le chemin de réception des échantillons.
+ *
+ * Chaque agent a un état fixe par règle applicable (début du dépassement,
+ * alerte active, dernière notification), dans des tableaux créés au premier
+ * échantillon de l'agent : l'évaluation d'un échantillon est ensuite en O(règles)
+ * et sans allocation, sauf quand une alerte se déclenche.
+ *
+ * Les règles viennent d'un fichier de propriétés (alerts.rulesFile) :
+ *   cpu-web.metric=CPU           (CPU, MEMORY ou DISK)
+ *   cpu-web.stat=MAX             (AVG, MIN, MAX ou LAST de l'intervalle d'envoi, défaut AVG)
+ *   cpu-web.agents=web-*         (motifs d'identifiant, défaut *)
+ *   cpu-web.above=90             (seuil de déclenchement, en %)
+ *   cpu-web.clear=80             (fin de l'alerte sous ce seuil, défaut = above)
+ *   cpu-web.durationSec=30       (dépassement continu requis, défaut 0)
+ *   cpu-web.severity=CRITICAL    (WARNING ou CRITICAL, défaut CRITICAL)
+ *   cpu-web.repeatSec=300        (rappel tant que l'alerte dure, défaut 0 = jamais)
+ * Sans fichier, les seuils historiques des agents s'appliquent (80 % partout).
+ */
+public class AlertRuleEngine {
+
+    private static final long NOT_ABOVE = Long.MIN_VALUE;
+
+    // État des règles applicables à un agent (modifié sous son verrou)
+    private static final class AgentState {
+        final AlertRule[] rules;
+        final long[] aboveSince;
+        final boolean[] active;
+        final long[] lastNotified;
+
+        AgentState(AlertRule[] rules) {
+            this.rules = rules;
+            this.aboveSince = new long[rules.length];
+            this.active = new boolean[rules.length];
+            this.lastNotified = new long[rules.length];
+            Arrays.fill(aboveSince, NOT_ABOVE);
+        }
+    }
+
+    private final AlertRule[] rules;
+    private final Consumer<AlertEvent> onAlert;
+    private final Map<String, AgentState> states = new ConcurrentHashMap<>();
+
+    public AlertRuleEngine(List<AlertRule> rules, Consumer<AlertEvent> onAlert) {
+        this.rules = rules.toArray(new AlertRule[0]);
+        this.onAlert = onAlert;
+    }
+
+    /*
+     * Évalue un échantillon (appelé par les workers de réception, un agent à la fois).
+     * Retourne vrai si une règle CRITICAL est active pour cet agent.
+     */
+    public boolean evaluate(AgentData data) {
+        AgentState state = states.get(data.getAgentId());
+        if (state == null) {
+            state = states.computeIfAbsent(data.getAgentId(), id -> new AgentState(applicableRules(id)));
+        }
+        long time = data.getTimestamp().getTime();
+        boolean critical = false;
+        // Déclenchements notifiés hors du verrou (rares : pas d'allocation sinon)
+        List<AlertEvent> fired = null;
+
+        synchronized (state) {
+            AlertRule[] agentRules = state.rules;
+            for (int i = 0; i < agentRules.length; i++) {
+                AlertRule rule = agentRules[i];
+                double value = rule.value(data);
+                boolean notify = false;
+
+                if (state.active[i]) {
+                    if (value < rule.clear) {
+                        // Hystérésis : fin de l'alerte seulement sous le seuil de fin
+                        state.active[i] = false;
+                        state.aboveSince[i] = NOT_ABOVE;
+                    } else if (rule.repeatMs > 0 && time - state.lastNotified[i] >= rule.repeatMs) {
+                        notify = true;
+                    }
+                } else if (value > rule.above) {
+                    if (state.aboveSince[i] == NOT_ABOVE) state.aboveSince[i] = time;
+                    if (time - state.aboveSince[i] >= rule.durationMs) {
+                        state.active[i] = true;
+                        notify = true;
+                    }
+                } else {
+                    state.aboveSince[i] = NOT_ABOVE;
+                }
+
+                if (notify) {
+                    state.lastNotified[i] = time;
+                    if (fired == null) fired = new ArrayList<>(2);
+                    fired.add(alert(data, rule, value, time - state.aboveSince[i]));
+                }
+                if (state.active[i] && rule.severity == AlertEvent.Severity.CRITICAL) critical = true;
+            }
+        }
+
+        if (fired != null) {
+            for (AlertEvent event : fired) {
+                onAlert.accept(event);
+            }
+        }
+        return critical;
+    }
+
+    private AlertRule[] applicableRules(String agentId) {
+        List<AlertRule> applicable = new ArrayList<>(rules.length);
+        for (AlertRule rule : rules) {
+            if (rule.appliesTo(agentId)) applicable.add(rule);
+        }
+        return applicable.toArray(new AlertRule[0]);
+    }
+
+    private static AlertEvent alert(AgentData data, AlertRule rule, double value, long aboveMs) {
+        StringBuilder message = new StringBuilder(64);
+        message.append(rule.label()).append(" Surcharge: ");
+        CsvSegmentFormat.appendFixed2(message, value);
+        message.append("% (règle ").append(rule.name);
+        if (aboveMs >= 1000) message.append(", depuis ").append(aboveMs / 1000).append(" s");
+        message.append(')');
+        // Datée à la réception, comme les alertes TCP (journal en ordre chronologique)
+        return new AlertEvent(data.getAgentId(), rule.metric, value, rule.severity,
+                System.currentTimeMillis(), message.toString());
+    }
+
+    // Règles du fichier, ou seuils historiques des agents si le fichier n'existe pas
+    public static List<AlertRule> load(Path file) {
+        if (!Files.exists(file)) {
+            List<AlertRule> defaults = new ArrayList<>(3);
+            for (AlertEvent.Metric metric : new AlertEvent.Metric[] {
+                    AlertEvent.Metric.CPU, AlertEvent.Metric.MEMORY, AlertEvent.Metric.DISK}) {
+                defaults.add(new AlertRule(metric.name().toLowerCase(), metric, AlertRule.Stat.AVG, "*", 80, 75, 0,
+                        AlertEvent.Severity.CRITICAL, 0));
+            }
+            System.out.println("Règles d'alerte par défaut (" + file + " absent): seuil 80 %");
+            return defaults;
+        }
+
+        Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            System.err.println("Erreur lecture des règles d'alerte: " + e.getMessage());
+            return new ArrayList<>();
+        }
+
+        TreeSet<String> names = new TreeSet<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.endsWith(".metric")) names.add(key.substring(0, key.length() - ".metric".length()));
+        }
+        List<AlertRule> rules = new ArrayList<>(names.size());
+        for (String name : names) {
+            try {
+                double above = Double.parseDouble(required(properties, name, "above"));
+                rules.add(new AlertRule(name,
+                        AlertEvent.Metric.valueOf(required(properties, name, "metric").trim().toUpperCase()),
+                        AlertRule.Stat.valueOf(properties.getProperty(name + ".stat", "AVG").trim().toUpperCase()),
+                        properties.getProperty(name + ".agents", "*").trim(),
+                        above,
+                        Double.parseDouble(properties.getProperty(name + ".clear", String.valueOf(above)).trim()),
+                        Long.parseLong(properties.getProperty(name + ".durationSec", "0").trim()) * 1000,
+                        AlertEvent.Severity.valueOf(properties.getProperty(name + ".severity", "CRITICAL").trim().toUpperCase()),
+                        Long.parseLong(properties.getProperty(name + ".repeatSec", "0").trim()) * 1000));
+            } catch (RuntimeException e) {
+                System.err.println("Règle d'alerte ignorée (" + name + "): " + e.getMessage());
+            }
+        }
+        System.out.println("Règles d'alerte: " + rules.size() + " chargée(s) depuis " + file);
+        for (AlertRule rule : rules) {
+            System.out.println("  " + rule);
+        }
+        return rules;
+    }
+
+    private static String required(Properties properties, String name, String field) {
+        String value = properties.getProperty(name + "." + field);
+        if (value == null) throw new IllegalArgumentException(name + "." + field + " manquant");
+        return value.trim();
+    }
+}
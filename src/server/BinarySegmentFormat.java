@@ -0,0 +1,479 @@
+package server;
+
+import common.AgentData;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Segments binaires : un en-tête de 16 octets puis des enregistrements de
+ * taille fixe, lus par projection mémoire (MappedByteBuffer) sans aucun
+ * décodage de texte.
+ *
+ *   brut (64 octets)     : date (long, ms), code agent (int), indicateurs (octet :
+ *                          1 = critique, 2 = résumé), 3 octets libres, cpu,
+ *                          mémoire, disque (double), puis minimums et maximums
+ *                          de l'intervalle d'envoi de l'agent (6 float)
+ *   brut ancien (40 o.)  : les 40 premiers octets seulement (segments existants,
+ *                          complétés dans ce format)
+ *   agrégat (104 octets) : date, code agent, 4 octets libres, nombre et
+ *                          critiques (long), sommes, minimums, maximums (9 double)
+ *
+ * Les identifiants d'agents sont codés par un dictionnaire propre au segment
+ * (fichier .agents à côté, un identifiant par ligne, code = numéro de ligne),
+ * gardé en mémoire sur le Segment et relu seulement quand le fichier grandit.
+ *
+ * Les enregistrements sont dans l'ordre d'arrivée mais datés par l'horloge de
+ * l'agent. Une recherche par période se positionne par dichotomie sur ces dates
+ * et s'arrête au premier enregistrement postérieur à la fin plus la marge
+ * (monitor.history.indexSkewMs) : les enregistrements d'un agent dont l'horloge
+ * est décalée de plus que cette marge peuvent manquer aux requêtes par période.
+ * Les lectures des derniers enregistrements (visitLast) ne dépendent pas des dates.
+ */
+public class BinarySegmentFormat implements SegmentFormat {
+
+    static final int MAGIC = 0x4D534547; // "MSEG"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final short KIND_RAW = 0;
+    static final short KIND_AGGREGATE = 1;
+    static final int RAW_SIZE = 40;
+    static final int RAW_SUMMARY_SIZE = 64;
+    static final byte FLAG_CRITICAL = 0x01;
+    static final byte FLAG_SUMMARY = 0x02;
+    static final int AGGREGATE_SIZE = 104;
+
+    // Taille maximale d'une projection : les gros segments sont lus par fenêtres
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    @Override
+    public String extension() {
+        return ".bin";
+    }
+
+    static Path dictionaryPath(Path segmentFile) {
+        return segmentFile.resolveSibling(segmentFile.getFileName() + ".agents");
+    }
+
+    @Override
+    public Appender openAppender(HistorySegments.Segment segment) throws IOException {
+        return new BinaryAppender(segment.path);
+    }
+
+    @Override
+    public boolean scan(HistorySegments.Segment segment, long toPosition, long start, long end, long skewMs,
+                        String agentId, HistoryVisitor visitor) {
+        try (Records records = Records.open(segment, toPosition)) {
+            if (records == null) return true;
+            int filter = records.codeOf(agentId);
+            if (filter == Records.UNKNOWN_AGENT) return true;
+
+            long first = start == Long.MIN_VALUE ? 0 : records.lowerBound(start - skewMs - segment.tier.bucketMs);
+            long stopAfter = end > Long.MAX_VALUE - skewMs ? Long.MAX_VALUE : end + skewMs;
+            double[] values = new double[RollupSeries.FIELDS];
+
+            for (long i = first; i < records.count; i++) {
+                int offset = records.offset(i);
+                ByteBuffer buffer = records.window;
+                long time = buffer.getLong(offset);
+                if (time > stopAfter) break;
+                if (time < start || time > end) continue;
+                if (!matches(records, offset, filter)) continue;
+                if (!visitRecord(records, offset, segment.tier.bucketMs, values, visitor)) return false;
+            }
+        } catch (IOException e) {
+            System.err.println("Erreur lecture historique " + segment + ": " + e.getMessage());
+        }
+        return true;
+    }
+
+    private static boolean matches(Records records, int offset, int filter) {
+        int code = records.window.getInt(offset + 8);
+        return (filter < 0 || code == filter) && code >= 0 && code < records.agents.length;
+    }
+
+    // Transmet l'enregistrement situé à "offset" de la fenêtre courante (code d'agent déjà vérifié)
+    private static boolean visitRecord(Records records, int offset, long bucketMs, double[] values, HistoryVisitor visitor) {
+        ByteBuffer buffer = records.window;
+        long time = buffer.getLong(offset);
+        String agentId = records.agents[buffer.getInt(offset + 8)];
+        if (records.kind == KIND_RAW) {
+            byte flags = buffer.get(offset + 12);
+            boolean critical = (flags & FLAG_CRITICAL) != 0;
+            if ((flags & FLAG_SUMMARY) != 0 && records.recordSize >= RAW_SUMMARY_SIZE) {
+                for (int f = 0; f < 3; f++) {
+                    values[f] = buffer.getDouble(offset + 16 + 8 * f);
+                }
+                for (int f = 0; f < 6; f++) {
+                    values[3 + f] = buffer.getFloat(offset + 40 + 4 * f);
+                }
+                return visitor.visitSummary(time, agentId, critical, values);
+            }
+            return visitor.visit(time, agentId, buffer.getDouble(offset + 16),
+                    buffer.getDouble(offset + 24), buffer.getDouble(offset + 32), critical);
+        }
+        for (int f = 0; f < values.length; f++) {
+            values[f] = buffer.getDouble(offset + 32 + 8 * f);
+        }
+        return visitor.visitAggregate(time, bucketMs, agentId, buffer.getLong(offset + 16), buffer.getLong(offset + 24), values);
+    }
+
+    @Override
+    public int visitLast(HistorySegments.Segment segment, String agentId, int maxRecords, HistoryVisitor visitor) throws IOException {
+        try (Records records = Records.open(segment, Long.MAX_VALUE)) {
+            if (records == null || maxRecords <= 0) return 0;
+            int filter = records.codeOf(agentId);
+            if (filter == Records.UNKNOWN_AGENT) return 0;
+
+            // En remontant depuis la fin : premier des maxRecords derniers enregistrements
+            long first = records.count;
+            int found = 0;
+            for (long i = records.count - 1; i >= 0 && found < maxRecords; i--) {
+                if (matches(records, records.offset(i), filter)) {
+                    first = i;
+                    found++;
+                }
+            }
+            double[] values = new double[RollupSeries.FIELDS];
+            for (long i = first; i < records.count; i++) {
+                int offset = records.offset(i);
+                if (!matches(records, offset, filter)) continue;
+                if (!visitRecord(records, offset, segment.tier.bucketMs, values, visitor)) break;
+            }
+            return found;
+        }
+    }
+
+    @Override
+    public void writeAggregates(Path path, Map<String, RollupSeries> series) throws IOException {
+        // Dictionnaire d'abord : le segment ne devient visible qu'une fois complet
+        Map<String, Integer> codes = new HashMap<>();
+        StringBuilder dictionary = new StringBuilder();
+        for (String agentId : series.keySet()) {
+            codes.put(agentId, codes.size());
+            dictionary.append(agentId).append('\n');
+        }
+        Path dictionaryTemp = dictionaryPath(path).resolveSibling(dictionaryPath(path).getFileName() + ".tmp");
+        Files.write(dictionaryTemp, dictionary.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(dictionaryTemp, dictionaryPath(path), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(AGGREGATE_SIZE * 4096);
+            writeHeader(buffer, KIND_AGGREGATE, AGGREGATE_SIZE);
+            IOException[] failure = new IOException[1];
+            RollupSeries.visitMerged(series, new HistoryVisitor() {
+                @Override
+                public boolean visit(long time, String agentId, double cpu, double memory, double disk, boolean critical) {
+                    return true;
+                }
+
+                @Override
+                public boolean visitAggregate(long time, long bucketMs, String agentId, long count, long criticalCount, double[] values) {
+                    if (buffer.remaining() < AGGREGATE_SIZE) {
+                        try {
+                            drain(channel, buffer);
+                        } catch (IOException e) {
+                            failure[0] = e;
+                            return false;
+                        }
+                    }
+                    buffer.putLong(time).putInt(codes.get(agentId)).putInt(0).putLong(count).putLong(criticalCount);
+                    for (double value : values) {
+                        buffer.putDouble(value);
+                    }
+                    return true;
+                }
+            });
+            if (failure[0] != null) throw failure[0];
+            drain(channel, buffer);
+            channel.force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeHeader(ByteBuffer buffer, short kind, int recordSize) {
+        buffer.putInt(MAGIC).putShort(VERSION).putShort(kind).putInt(recordSize).putInt(0);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Ajout d'enregistrements bruts au segment courant
+    private static final class BinaryAppender implements Appender {
+        private final FileChannel channel;
+        private final FileChannel dictionaryChannel;
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(RAW_SUMMARY_SIZE * 4096);
+        private long position;
+        private int recordSize = RAW_SUMMARY_SIZE;
+
+        BinaryAppender(Path file) throws IOException {
+            Path dictionary = dictionaryPath(file);
+            if (Files.exists(dictionary)) {
+                for (String agentId : Files.readAllLines(dictionary, StandardCharsets.UTF_8)) {
+                    codes.put(agentId, codes.size());
+                }
+            }
+            dictionaryChannel = FileChannel.open(dictionary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                channel.truncate(0);
+                position = 0;
+                writeHeader(buffer, KIND_RAW, RAW_SUMMARY_SIZE);
+                flushBuffer();
+            } else {
+                // Segment existant : on garde sa taille d'enregistrement (40 octets avant les résumés)
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                while (header.hasRemaining()) {
+                    if (channel.read(header, header.position()) < 0) break;
+                }
+                if (header.getInt(8) == RAW_SIZE) recordSize = RAW_SIZE;
+                // Enregistrement partiel (arrêt brutal pendant une écriture) : on l'écarte
+                position = HEADER_SIZE + (size - HEADER_SIZE) / recordSize * recordSize;
+                if (position < size) channel.truncate(position);
+            }
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public void append(List<AgentData> batch, int from, int to) throws IOException {
+            for (int i = from; i < to; i++) {
+                AgentData data = batch.get(i);
+                if (buffer.remaining() < recordSize) flushBuffer();
+                boolean summary = recordSize == RAW_SUMMARY_SIZE && data.hasSummary();
+                buffer.putLong(data.getTimestamp().getTime())
+                      .putInt(codeOf(data.getAgentId()))
+                      .put((byte) ((data.isCritical() ? FLAG_CRITICAL : 0) | (summary ? FLAG_SUMMARY : 0)))
+                      .put((byte) 0).putShort((short) 0)
+                      .putDouble(data.getCpuUsage())
+                      .putDouble(data.getMemoryUsage())
+                      .putDouble(data.getDiskUsage());
+                if (recordSize == RAW_SUMMARY_SIZE) {
+                    // Sans résumé, minimum = maximum = la mesure
+                    for (int metric = 0; metric < 3; metric++) {
+                        buffer.putFloat((float) data.getSummary(AgentData.SUMMARY_MIN, metric));
+                    }
+                    for (int metric = 0; metric < 3; metric++) {
+                        buffer.putFloat((float) data.getSummary(AgentData.SUMMARY_MAX, metric));
+                    }
+                }
+            }
+            flushBuffer();
+        }
+
+        // Code de l'agent ; un nouvel agent est ajouté au dictionnaire avant ses enregistrements
+        private int codeOf(String agentId) throws IOException {
+            Integer code = codes.get(agentId);
+            if (code != null) return code;
+            ByteBuffer line = ByteBuffer.wrap((agentId + "\n").getBytes(StandardCharsets.UTF_8));
+            while (line.hasRemaining()) {
+                dictionaryChannel.write(line);
+            }
+            code = codes.size();
+            codes.put(agentId, code);
+            return code;
+        }
+
+        private void flushBuffer() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void force() throws IOException {
+            dictionaryChannel.force(false);
+            channel.force(false);
+        }
+
+        @Override
+        public void close() {
+            try {
+                dictionaryChannel.close();
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Erreur fermeture historique: " + e.getMessage());
+            }
+        }
+    }
+
+    // Dictionnaire d'agents d'un segment (instantané non modifiable)
+    static final class AgentDictionary {
+        static final AgentDictionary EMPTY = new AgentDictionary(new String[0], new HashMap<>(), 0);
+
+        final String[] agents;
+        private final Map<String, Integer> codes;
+        // Octets du fichier .agents lus (jusqu'à la dernière fin de ligne)
+        private final long size;
+
+        private AgentDictionary(String[] agents, Map<String, Integer> codes, long size) {
+            this.agents = agents;
+            this.codes = codes;
+            this.size = size;
+        }
+
+        // Dictionnaire à jour du segment : seules les lignes ajoutées depuis la dernière lecture sont lues
+        static AgentDictionary of(HistorySegments.Segment segment) throws IOException {
+            Path file = dictionaryPath(segment.path);
+            synchronized (segment) {
+                AgentDictionary cached = segment.dictionary != null ? segment.dictionary : EMPTY;
+                long fileSize = Files.exists(file) ? Files.size(file) : 0;
+                if (fileSize == cached.size) return cached;
+                // Fichier remplacé par plus court : on repart de zéro
+                if (fileSize < cached.size) cached = EMPTY;
+                segment.dictionary = cached.extend(file, fileSize);
+                return segment.dictionary;
+            }
+        }
+
+        private AgentDictionary extend(Path file, long fileSize) throws IOException {
+            ByteBuffer bytes = ByteBuffer.allocate((int) (fileSize - size));
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                while (bytes.hasRemaining()) {
+                    if (channel.read(bytes, size + bytes.position()) < 0) break;
+                }
+            }
+            // Une ligne en cours d'écriture sera lue la fois suivante
+            int end = bytes.position();
+            while (end > 0 && bytes.get(end - 1) != '\n') end--;
+            if (end == 0) return this;
+            String[] lines = new String(bytes.array(), 0, end - 1, StandardCharsets.UTF_8).split("\n", -1);
+            String[] extended = Arrays.copyOf(agents, agents.length + lines.length);
+            Map<String, Integer> extendedCodes = new HashMap<>(codes);
+            for (int i = 0; i < lines.length; i++) {
+                extended[agents.length + i] = lines[i];
+                extendedCodes.putIfAbsent(lines[i], agents.length + i);
+            }
+            return new AgentDictionary(extended, extendedCodes, size + end);
+        }
+
+        int codeOf(String agentId) {
+            Integer code = codes.get(agentId);
+            return code != null ? code : Records.UNKNOWN_AGENT;
+        }
+    }
+
+    // Enregistrements d'un segment projetés en mémoire, fenêtre par fenêtre
+    private static final class Records implements AutoCloseable {
+        static final int ALL_AGENTS = -1;
+        static final int UNKNOWN_AGENT = -2;
+
+        final FileChannel channel;
+        final short kind;
+        final int recordSize;
+        final long count;
+        final String[] agents;
+        private final AgentDictionary dictionary;
+        private final long recordsPerWindow;
+        private long windowFirst = -1;
+        MappedByteBuffer window;
+
+        private Records(FileChannel channel, short kind, int recordSize, long count, AgentDictionary dictionary) {
+            this.channel = channel;
+            this.kind = kind;
+            this.recordSize = recordSize;
+            this.count = count;
+            this.dictionary = dictionary;
+            this.agents = dictionary.agents;
+            this.recordsPerWindow = Math.max(1, WINDOW_SIZE / recordSize);
+        }
+
+        // Segment lu jusqu'à toPosition (null s'il n'existe pas ou n'est pas reconnu)
+        static Records open(HistorySegments.Segment segment, long toPosition) throws IOException {
+            Path file = segment.path;
+            if (!Files.exists(file)) return null;
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                long size = Math.min(channel.size(), toPosition);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                while (header.hasRemaining()) {
+                    if (channel.read(header, header.position()) < 0) break;
+                }
+                if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getShort(4) != VERSION) {
+                    channel.close();
+                    return null;
+                }
+                short kind = header.getShort(6);
+                int recordSize = header.getInt(8);
+                boolean known = kind == KIND_RAW ? recordSize == RAW_SIZE || recordSize == RAW_SUMMARY_SIZE
+                        : recordSize == AGGREGATE_SIZE;
+                if (!known) {
+                    channel.close();
+                    return null;
+                }
+                // Le dictionnaire est écrit avant les enregistrements qui l'utilisent
+                AgentDictionary dictionary = AgentDictionary.of(segment);
+                return new Records(channel, kind, recordSize, Math.max(0, (size - HEADER_SIZE) / recordSize), dictionary);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        int codeOf(String agentId) {
+            if (agentId == null || agentId.isEmpty()) return ALL_AGENTS;
+            return dictionary.codeOf(agentId);
+        }
+
+        // Position de l'enregistrement i dans "window" (projette la bonne fenêtre au besoin)
+        int offset(long i) throws IOException {
+            if (windowFirst < 0 || i < windowFirst || i >= windowFirst + recordsPerWindow) {
+                windowFirst = i / recordsPerWindow * recordsPerWindow;
+                long records = Math.min(recordsPerWindow, count - windowFirst);
+                window = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + windowFirst * recordSize, records * recordSize);
+            }
+            return (int) ((i - windowFirst) * recordSize);
+        }
+
+        /*
+         * Premier enregistrement daté d'au moins "time" (recherche dichotomique).
+         * Les dates ne reculent que de la marge d'horloge : tout enregistrement
+         * avant le résultat est antérieur à time + marge.
+         */
+        long lowerBound(long time) throws IOException {
+            long lo = -1;
+            long hi = count;
+            while (hi - lo > 1) {
+                long mid = (lo + hi) >>> 1;
+                if (timeAt(mid) < time) lo = mid; else hi = mid;
+            }
+            return hi;
+        }
+
+        private long timeAt(long i) throws IOException {
+            int offset = offset(i);
+            return window.getLong(offset);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
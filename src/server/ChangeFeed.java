@@ -0,0 +1,113 @@
+package server;
+
+import common.AgentData;
+import common.AlertEvent;
+import common.ChangeSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Flux de changements versionné pour la supervision des clients.
+ *
+ * Chaque mise à jour d'agent reçoit un numéro de version croissant ; seule
+ * la dernière version d'un agent est gardée, rangée par version dans une
+ * ConcurrentSkipListMap. Les changements depuis une version se lisent donc
+ * en O(changements), quel que soit le nombre d'agents. Les dernières alertes
+ * sont numérotées de la même façon (nombre borné).
+ *
+ * Les versions partent de l'heure de démarrage : une version venant d'une
+ * exécution précédente du serveur est reconnue et donne un état complet.
+ */
+public class ChangeFeed {
+
+    // Dernier changement d'un agent : mise à jour ou retrait
+    private static final class Change {
+        final String agentId;
+        final boolean removed;
+
+        Change(String agentId, boolean removed) {
+            this.agentId = agentId;
+            this.removed = removed;
+        }
+    }
+
+    private final long baseVersion = System.currentTimeMillis() << 20;
+    private final int alertCapacity;
+
+    // Modifiés sous le verrou de l'objet ; lus sans verrou
+    private volatile long version = baseVersion;
+    private final ConcurrentSkipListMap<Long, Change> changes = new ConcurrentSkipListMap<>();
+    private final Map<String, Long> agentVersions = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, AlertEvent> alerts = new ConcurrentSkipListMap<>();
+    private int alertCount;
+
+    public ChangeFeed(int alertCapacity) {
+        this.alertCapacity = Math.max(1, alertCapacity);
+    }
+
+    public void agentUpdated(String agentId) {
+        record(agentId, false);
+    }
+
+    public void agentRemoved(String agentId) {
+        record(agentId, true);
+    }
+
+    private synchronized void record(String agentId, boolean removed) {
+        long v = ++version;
+        Long previous = agentVersions.put(agentId, v);
+        if (previous != null) changes.remove(previous);
+        changes.put(v, new Change(agentId, removed));
+    }
+
+    public synchronized void alertAdded(AlertEvent event) {
+        alerts.put(++version, event);
+        if (++alertCount > alertCapacity) {
+            alerts.pollFirstEntry();
+            alertCount--;
+        }
+    }
+
+    // Dernière version attribuée (sans verrou, pour savoir s'il y a du nouveau)
+    public long currentVersion() {
+        return version;
+    }
+
+    /*
+     * Changements postérieurs à "since". "agents" donne l'état courant d'un agent
+     * (null s'il n'existe plus) ; "allAgents" sert aux états complets.
+     */
+    public ChangeSet since(long since, Function<String, AgentData> agents, Supplier<List<AgentData>> allAgents) {
+        long current;
+        synchronized (this) {
+            // Tout changement de version <= current est déjà rangé dans les maps
+            current = version;
+        }
+
+        if (since < baseVersion || since > current) {
+            List<AlertEvent> recent = new ArrayList<>(alerts.headMap(current, true).values());
+            // Liste relue après "current" : elle contient au moins l'état de cette version
+            return new ChangeSet(current, true, allAgents.get(), Collections.emptyList(), recent);
+        }
+
+        List<AgentData> updated = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (Change change : changes.subMap(since, false, current, true).values()) {
+            AgentData data = change.removed ? null : agents.apply(change.agentId);
+            if (data != null) {
+                updated.add(data);
+            } else {
+                removed.add(change.agentId);
+            }
+        }
+        List<AlertEvent> newAlerts = new ArrayList<>(alerts.subMap(since, false, current, true).values());
+        return new ChangeSet(current, false, updated, removed, newAlerts);
+    }
+}
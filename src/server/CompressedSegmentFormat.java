@@ -0,0 +1,691 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Segments compressés des jours terminés (réécrits par le compacteur,
+ * jamais complétés) : un en-tête de 16 octets puis des blocs d'au plus
+ * BLOCK_RECORDS enregistrements, dans l'ordre du segment d'origine.
+ *
+ *   en-tête de bloc (32 octets) : taille du bloc après l'en-tête (int), nombre
+ *       d'enregistrements (int), dates minimale et maximale (long), nombre
+ *       d'agents (int), taille du dictionnaire (int)
+ *   dictionnaire : identifiants des agents du bloc (longueur u16 + UTF-8),
+ *       dans l'ordre de leur première apparition
+ *   enregistrements, en flux de bits :
+ *     - code de l'agent sur juste assez de bits (code = nombre d'agents déjà
+ *       vus dans le bloc : nouvel agent, entrée suivante du dictionnaire)
+ *     - brut : indicateurs critique et résumé (2 bits)
+ *     - date : 64 bits au premier enregistrement de l'agent dans le bloc, puis
+ *       écart entre deux écarts successifs de l'agent ('0' si inchangé,
+ *       sinon 7, 9, 12, 32 ou 64 bits)
+ *     - valeurs (cpu, mémoire, disque, puis minimums et maximums si résumé ;
+ *       agrégats : nombre, critiques, sommes, minimums, maximums) : XOR avec la
+ *       valeur précédente de l'agent ('0' si identique, sinon les bits
+ *       significatifs, en reprenant la fenêtre précédente si elle suffit)
+ *
+ * Les valeurs sont gardées au centième, la précision des segments CSV (elles
+ * sont XORées en centièmes entiers : les bits qui changent restent peu
+ * nombreux). Un bloc qui ne contient pas l'agent demandé, ou dont les dates
+ * sont hors de la période, est sauté sans être lu ; les autres sont décodés
+ * au fil de la lecture, sans tableau intermédiaire. La lecture s'arrête au
+ * premier bloc commençant après la fin de la période plus la marge d'horloge
+ * (même limite que les segments binaires pour les agents très décalés).
+ */
+public class CompressedSegmentFormat implements SegmentFormat {
+
+    static final int MAGIC = 0x4D54535A; // "MTSZ"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final short KIND_RAW = 0;
+    static final short KIND_AGGREGATE = 1;
+    static final int BLOCK_HEADER_SIZE = 32;
+    // Assez d'enregistrements par bloc pour que chaque agent y ait une série (état remis à zéro par bloc)
+    static final int BLOCK_RECORDS = 65536;
+
+    private static final double SCALE = 100;
+    private static final int RAW_FIELDS = 9;
+    private static final int AGGREGATE_FIELDS = 11;
+    private static final int FLAG_CRITICAL = 1;
+    private static final int FLAG_SUMMARY = 2;
+
+    @Override
+    public String extension() {
+        return ".tsz";
+    }
+
+    @Override
+    public Appender openAppender(HistorySegments.Segment segment) throws IOException {
+        throw new IOException("Segment compressé en lecture seule: " + segment);
+    }
+
+    /*
+     * Écrit un segment complet à partir des enregistrements passés au visiteur
+     * par "source" ; le fichier n'apparaît qu'une fois écrit. Retourne le
+     * nombre d'enregistrements.
+     */
+    public long write(Path path, boolean aggregate, Consumer<HistoryVisitor> source) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        long records;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Encoder encoder = new Encoder(channel, aggregate ? KIND_AGGREGATE : KIND_RAW);
+            source.accept(encoder);
+            encoder.finish();
+            records = encoder.records;
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return records;
+    }
+
+    @Override
+    public void writeAggregates(Path path, Map<String, RollupSeries> series) throws IOException {
+        write(path, true, visitor -> RollupSeries.visitMerged(series, visitor));
+    }
+
+    // Les segments compressés sont complets : toPosition ne concerne que le segment de l'écrivain
+    @Override
+    public boolean scan(HistorySegments.Segment segment, long toPosition, long start, long end, long skewMs,
+                        String agentId, HistoryVisitor visitor) {
+        try (Blocks blocks = Blocks.open(segment.path)) {
+            if (blocks == null) return true;
+            long stopAfter = end > Long.MAX_VALUE - skewMs ? Long.MAX_VALUE : end + skewMs;
+            while (blocks.next()) {
+                if (blocks.maxTime < start) continue;
+                if (blocks.minTime > stopAfter) break;
+                int filter = blocks.codeOf(agentId);
+                if (filter == Blocks.UNKNOWN_AGENT) continue;
+                Decoder decoder = blocks.decode();
+                while (decoder.next()) {
+                    long time = decoder.time;
+                    if (time > stopAfter) return true;
+                    if (time < start || time > end || (filter >= 0 && decoder.code != filter)) continue;
+                    if (!decoder.visit(segment.tier.bucketMs, visitor)) return false;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Erreur lecture historique " + segment + ": " + e.getMessage());
+        }
+        return true;
+    }
+
+    @Override
+    public int visitLast(HistorySegments.Segment segment, String agentId, int maxRecords, HistoryVisitor visitor) throws IOException {
+        try (Blocks blocks = Blocks.open(segment.path)) {
+            if (blocks == null || maxRecords <= 0) return 0;
+            // Blocs contenant l'agent
+            List<Long> positions = new ArrayList<>();
+            while (blocks.next()) {
+                if (blocks.codeOf(agentId) != Blocks.UNKNOWN_AGENT) positions.add(blocks.position);
+            }
+            // Du dernier bloc au premier : blocs à lire, et enregistrements à sauter dans le plus ancien
+            int firstBlock = positions.size();
+            int found = 0;
+            int skip = 0;
+            for (int b = positions.size() - 1; b >= 0 && found < maxRecords; b--) {
+                blocks.seek(positions.get(b));
+                int matching = countMatching(blocks, blocks.codeOf(agentId));
+                firstBlock = b;
+                skip = Math.max(0, found + matching - maxRecords);
+                found = Math.min(maxRecords, found + matching);
+            }
+            // Puis dans l'ordre : un bloc se décode du début
+            for (int b = firstBlock; b < positions.size(); b++) {
+                blocks.seek(positions.get(b));
+                int filter = blocks.codeOf(agentId);
+                Decoder decoder = blocks.decode();
+                while (decoder.next()) {
+                    if (filter >= 0 && decoder.code != filter) continue;
+                    if (skip > 0) {
+                        skip--;
+                        continue;
+                    }
+                    if (!decoder.visit(segment.tier.bucketMs, visitor)) return found;
+                }
+            }
+            return found;
+        }
+    }
+
+    // Enregistrements de l'agent dans le bloc courant (tous : le nombre de l'en-tête)
+    private static int countMatching(Blocks blocks, int filter) throws IOException {
+        if (filter < 0) return blocks.count;
+        int matching = 0;
+        Decoder decoder = blocks.decode();
+        while (decoder.next()) {
+            if (decoder.code == filter) matching++;
+        }
+        return matching;
+    }
+
+    static int bitsFor(int values) {
+        return values <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(values - 1);
+    }
+
+    private static long quantize(double value) {
+        return Math.round(value * SCALE);
+    }
+
+    // Écriture des blocs (thread du compacteur) ; les erreurs d'écriture interrompent la source
+    private static final class Encoder implements HistoryVisitor {
+        private final FileChannel channel;
+        private final short kind;
+        private final int fields;
+        private final BitWriter bits = new BitWriter();
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> agents = new ArrayList<>();
+        private final double[] sample = new double[RAW_FIELDS];
+        private long[] prevTime = new long[16];
+        private long[] prevDelta = new long[16];
+        private long[] prev;
+        private int[] lead;
+        private int[] trail;
+        private int count;
+        private long minTime;
+        private long maxTime;
+        private long position;
+        long records;
+        private IOException failure;
+
+        Encoder(FileChannel channel, short kind) throws IOException {
+            this.channel = channel;
+            this.kind = kind;
+            this.fields = kind == KIND_RAW ? RAW_FIELDS : AGGREGATE_FIELDS;
+            this.prev = new long[16 * fields];
+            this.lead = new int[16 * fields];
+            this.trail = new int[16 * fields];
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort(VERSION).putShort(kind).putInt(fields).putInt(0);
+            header.flip();
+            writeFully(header);
+            resetBlock();
+        }
+
+        @Override
+        public boolean visit(long time, String agentId, double cpu, double memory, double disk, boolean critical) {
+            if (kind == KIND_AGGREGATE) {
+                sample[0] = cpu; sample[1] = memory; sample[2] = disk;
+                sample[3] = cpu; sample[4] = memory; sample[5] = disk;
+                sample[6] = cpu; sample[7] = memory; sample[8] = disk;
+                return visitAggregate(time, 0, agentId, 1, critical ? 1 : 0, sample);
+            }
+            int code = begin(time, agentId, critical ? FLAG_CRITICAL : 0);
+            putValue(code, 0, quantize(cpu));
+            putValue(code, 1, quantize(memory));
+            putValue(code, 2, quantize(disk));
+            return end();
+        }
+
+        @Override
+        public boolean visitSummary(long time, String agentId, boolean critical, double[] values) {
+            if (kind == KIND_AGGREGATE) return visitAggregate(time, 0, agentId, 1, critical ? 1 : 0, values);
+            int code = begin(time, agentId, (critical ? FLAG_CRITICAL : 0) | FLAG_SUMMARY);
+            for (int f = 0; f < RAW_FIELDS; f++) {
+                putValue(code, f, quantize(values[f]));
+            }
+            return end();
+        }
+
+        @Override
+        public boolean visitAggregate(long time, long bucketMs, String agentId, long samples, long criticalCount, double[] values) {
+            if (kind == KIND_RAW) {
+                return visit(time, agentId, values[0] / samples, values[1] / samples, values[2] / samples, criticalCount > 0);
+            }
+            int code = begin(time, agentId, 0);
+            putValue(code, 0, samples);
+            putValue(code, 1, criticalCount);
+            for (int f = 0; f < values.length; f++) {
+                putValue(code, 2 + f, quantize(values[f]));
+            }
+            return end();
+        }
+
+        // Code de l'agent, indicateurs et date ; retourne le code
+        private int begin(long time, String agentId, int flags) {
+            Integer known = codes.get(agentId);
+            int code = known != null ? known : agents.size();
+            bits.write(code, bitsFor(agents.size() + 1));
+            if (kind == KIND_RAW) bits.write(flags, 2);
+            if (known == null) {
+                addAgent(agentId);
+                bits.write(time, 64);
+                prevDelta[code] = 0;
+            } else {
+                long delta = time - prevTime[code];
+                putDeltaOfDelta(delta - prevDelta[code]);
+                prevDelta[code] = delta;
+            }
+            prevTime[code] = time;
+            if (time < minTime) minTime = time;
+            if (time > maxTime) maxTime = time;
+            return code;
+        }
+
+        private boolean end() {
+            count++;
+            records++;
+            if (count == BLOCK_RECORDS) {
+                try {
+                    writeBlock();
+                } catch (IOException e) {
+                    failure = e;
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void addAgent(String agentId) {
+            int code = agents.size();
+            codes.put(agentId, code);
+            agents.add(agentId);
+            if (code == prevTime.length) {
+                prevTime = Arrays.copyOf(prevTime, code * 2);
+                prevDelta = Arrays.copyOf(prevDelta, code * 2);
+                prev = Arrays.copyOf(prev, code * 2 * fields);
+                lead = Arrays.copyOf(lead, code * 2 * fields);
+                trail = Arrays.copyOf(trail, code * 2 * fields);
+            }
+            for (int f = 0; f < fields; f++) {
+                prev[code * fields + f] = 0;
+                trail[code * fields + f] = -1;
+            }
+        }
+
+        // Écart de l'écart : '0', '10'+7, '110'+9, '1110'+12, '11110'+32 ou '11111'+64 bits
+        private void putDeltaOfDelta(long dod) {
+            if (dod == 0) {
+                bits.write(0, 1);
+            } else if (dod >= -64 && dod < 64) {
+                bits.write(0b10, 2);
+                bits.write(dod, 7);
+            } else if (dod >= -256 && dod < 256) {
+                bits.write(0b110, 3);
+                bits.write(dod, 9);
+            } else if (dod >= -2048 && dod < 2048) {
+                bits.write(0b1110, 4);
+                bits.write(dod, 12);
+            } else if (dod >= Integer.MIN_VALUE && dod <= Integer.MAX_VALUE) {
+                bits.write(0b11110, 5);
+                bits.write(dod, 32);
+            } else {
+                bits.write(0b11111, 5);
+                bits.write(dod, 64);
+            }
+        }
+
+        // XOR avec la valeur précédente du champ : '0' identique, '10' même fenêtre, '11' nouvelle fenêtre
+        private void putValue(int code, int field, long value) {
+            int s = code * fields + field;
+            long xor = value ^ prev[s];
+            prev[s] = value;
+            if (xor == 0) {
+                bits.write(0, 1);
+                return;
+            }
+            int leading = Long.numberOfLeadingZeros(xor);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (trail[s] >= 0 && leading >= lead[s] && trailing >= trail[s]) {
+                bits.write(0b10, 2);
+                bits.write(xor >>> trail[s], 64 - lead[s] - trail[s]);
+            } else {
+                int significant = 64 - leading - trailing;
+                bits.write(0b11, 2);
+                bits.write(leading, 6);
+                bits.write(significant - 1, 6);
+                bits.write(xor >>> trailing, significant);
+                lead[s] = leading;
+                trail[s] = trailing;
+            }
+        }
+
+        void finish() throws IOException {
+            if (failure != null) throw failure;
+            if (count > 0) writeBlock();
+        }
+
+        private void writeBlock() throws IOException {
+            bits.flush();
+            int dictionaryLength = 0;
+            byte[][] ids = new byte[agents.size()][];
+            for (int a = 0; a < ids.length; a++) {
+                ids[a] = agents.get(a).getBytes(StandardCharsets.UTF_8);
+                dictionaryLength += 2 + ids[a].length;
+            }
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE + dictionaryLength);
+            header.putInt(dictionaryLength + bits.size()).putInt(count).putLong(minTime).putLong(maxTime)
+                  .putInt(ids.length).putInt(dictionaryLength);
+            for (byte[] id : ids) {
+                header.putShort((short) id.length).put(id);
+            }
+            header.flip();
+            writeFully(header);
+            writeFully(ByteBuffer.wrap(bits.bytes(), 0, bits.size()));
+            resetBlock();
+        }
+
+        private void resetBlock() {
+            bits.reset();
+            codes.clear();
+            agents.clear();
+            count = 0;
+            minTime = Long.MAX_VALUE;
+            maxTime = Long.MIN_VALUE;
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    // Blocs d'un segment, parcourus en lisant les seuls en-têtes (et dictionnaires)
+    private static final class Blocks implements AutoCloseable {
+        static final int ALL_AGENTS = -1;
+        static final int UNKNOWN_AGENT = -2;
+
+        final FileChannel channel;
+        final short kind;
+        final long size;
+        private final ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+        private byte[] payload = new byte[0];
+        private long nextPosition = HEADER_SIZE;
+        // Bloc courant
+        long position;
+        int payloadLength;
+        int count;
+        long minTime;
+        long maxTime;
+        String[] agents;
+
+        private Blocks(FileChannel channel, short kind, long size) {
+            this.channel = channel;
+            this.kind = kind;
+            this.size = size;
+        }
+
+        // Segment ouvert (null s'il n'existe pas ou n'est pas reconnu)
+        static Blocks open(Path file) throws IOException {
+            if (!Files.exists(file)) return null;
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                readFully(channel, header, 0);
+                short kind = header.getShort(6);
+                if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getShort(4) != VERSION
+                        || (kind != KIND_RAW && kind != KIND_AGGREGATE)) {
+                    channel.close();
+                    return null;
+                }
+                return new Blocks(channel, kind, channel.size());
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        // Passe au bloc suivant (en-tête et dictionnaire) ; faux à la fin
+        boolean next() throws IOException {
+            return seek(nextPosition);
+        }
+
+        boolean seek(long blockPosition) throws IOException {
+            if (blockPosition + BLOCK_HEADER_SIZE > size) return false;
+            header.clear();
+            readFully(channel, header, blockPosition);
+            payloadLength = header.getInt(0);
+            count = header.getInt(4);
+            minTime = header.getLong(8);
+            maxTime = header.getLong(16);
+            int agentCount = header.getInt(24);
+            int dictionaryLength = header.getInt(28);
+            if (payloadLength < dictionaryLength || dictionaryLength < 0 || agentCount < 0
+                    || blockPosition + BLOCK_HEADER_SIZE + payloadLength > size) {
+                throw new IOException("bloc invalide à la position " + blockPosition);
+            }
+            position = blockPosition;
+            nextPosition = blockPosition + BLOCK_HEADER_SIZE + payloadLength;
+
+            ByteBuffer dictionary = ByteBuffer.allocate(dictionaryLength);
+            readFully(channel, dictionary, blockPosition + BLOCK_HEADER_SIZE);
+            dictionary.flip();
+            agents = new String[agentCount];
+            for (int a = 0; a < agentCount; a++) {
+                int length = dictionary.getShort() & 0xFFFF;
+                agents[a] = new String(dictionary.array(), dictionary.position(), length, StandardCharsets.UTF_8);
+                dictionary.position(dictionary.position() + length);
+            }
+            return true;
+        }
+
+        int codeOf(String agentId) {
+            if (agentId == null || agentId.isEmpty()) return ALL_AGENTS;
+            for (int i = 0; i < agents.length; i++) {
+                if (agents[i].equals(agentId)) return i;
+            }
+            return UNKNOWN_AGENT;
+        }
+
+        // Lit les enregistrements du bloc courant
+        Decoder decode() throws IOException {
+            int dictionaryLength = header.getInt(28);
+            int length = payloadLength - dictionaryLength;
+            if (payload.length < length) payload = new byte[length];
+            readFully(channel, ByteBuffer.wrap(payload, 0, length), position + BLOCK_HEADER_SIZE + dictionaryLength);
+            return new Decoder(kind, agents, count, new BitReader(payload, length));
+        }
+
+        private static void readFully(FileChannel channel, ByteBuffer buffer, long at) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, at + buffer.position()) < 0) break;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // Décodage d'un bloc, enregistrement par enregistrement
+    private static final class Decoder {
+        private final short kind;
+        private final String[] agents;
+        private final int count;
+        private final BitReader bits;
+        private final int fields;
+        private final long[] prevTime;
+        private final long[] prevDelta;
+        private final long[] prev;
+        private final int[] lead;
+        private final int[] trail;
+        private final double[] values = new double[RollupSeries.FIELDS];
+        private int known;
+        private int decoded;
+
+        // Enregistrement courant
+        int code;
+        long time;
+        int flags;
+        long bucketCount;
+        long criticalCount;
+
+        Decoder(short kind, String[] agents, int count, BitReader bits) {
+            this.kind = kind;
+            this.agents = agents;
+            this.count = count;
+            this.bits = bits;
+            this.fields = kind == KIND_RAW ? RAW_FIELDS : AGGREGATE_FIELDS;
+            this.prevTime = new long[agents.length];
+            this.prevDelta = new long[agents.length];
+            this.prev = new long[agents.length * fields];
+            this.lead = new int[agents.length * fields];
+            this.trail = new int[agents.length * fields];
+        }
+
+        boolean next() throws IOException {
+            if (decoded == count) return false;
+            try {
+                code = (int) bits.read(bitsFor(known + 1));
+                if (code > known || code >= agents.length) throw new IOException("code d'agent invalide: " + code);
+                flags = kind == KIND_RAW ? (int) bits.read(2) : 0;
+                if (code == known) {
+                    known++;
+                    time = bits.read(64);
+                    prevDelta[code] = 0;
+                } else {
+                    long delta = prevDelta[code] + readDeltaOfDelta();
+                    time = prevTime[code] + delta;
+                    prevDelta[code] = delta;
+                }
+                prevTime[code] = time;
+
+                if (kind == KIND_RAW) {
+                    int n = (flags & FLAG_SUMMARY) != 0 ? RAW_FIELDS : 3;
+                    for (int f = 0; f < n; f++) {
+                        values[f] = readValue(f) / SCALE;
+                    }
+                } else {
+                    bucketCount = readValue(0);
+                    criticalCount = readValue(1);
+                    for (int f = 0; f < values.length; f++) {
+                        values[f] = readValue(2 + f) / SCALE;
+                    }
+                }
+            } catch (ArrayIndexOutOfBoundsException e) {
+                throw new IOException("bloc tronqué");
+            }
+            decoded++;
+            return true;
+        }
+
+        boolean visit(long bucketMs, HistoryVisitor visitor) {
+            String agentId = agents[code];
+            if (kind == KIND_AGGREGATE) {
+                return visitor.visitAggregate(time, bucketMs, agentId, bucketCount, criticalCount, values);
+            }
+            boolean critical = (flags & FLAG_CRITICAL) != 0;
+            if ((flags & FLAG_SUMMARY) != 0) return visitor.visitSummary(time, agentId, critical, values);
+            return visitor.visit(time, agentId, values[0], values[1], values[2], critical);
+        }
+
+        private long readDeltaOfDelta() {
+            if (bits.read(1) == 0) return 0;
+            if (bits.read(1) == 0) return signed(bits.read(7), 7);
+            if (bits.read(1) == 0) return signed(bits.read(9), 9);
+            if (bits.read(1) == 0) return signed(bits.read(12), 12);
+            if (bits.read(1) == 0) return signed(bits.read(32), 32);
+            return bits.read(64);
+        }
+
+        private long readValue(int field) {
+            int s = code * fields + field;
+            if (bits.read(1) != 0) {
+                if (bits.read(1) != 0) {
+                    lead[s] = (int) bits.read(6);
+                    int significant = (int) bits.read(6) + 1;
+                    trail[s] = 64 - lead[s] - significant;
+                }
+                prev[s] ^= bits.read(64 - lead[s] - trail[s]) << trail[s];
+            }
+            return prev[s];
+        }
+
+        private static long signed(long value, int width) {
+            return (value << (64 - width)) >> (64 - width);
+        }
+    }
+
+    // Flux de bits en écriture (bits de poids fort d'abord)
+    private static final class BitWriter {
+        private byte[] bytes = new byte[1 << 16];
+        private int size;
+        private long pending;
+        private int pendingBits;
+
+        // Écrit les "width" bits de poids faible de value (0 à 64)
+        void write(long value, int width) {
+            if (width > 32) {
+                write(value >>> 32, width - 32);
+                write(value, 32);
+                return;
+            }
+            if (width == 0) return;
+            pending = (pending << width) | (value & ((1L << width) - 1));
+            pendingBits += width;
+            while (pendingBits >= 8) {
+                pendingBits -= 8;
+                put((byte) (pending >>> pendingBits));
+            }
+        }
+
+        // Complète le dernier octet
+        void flush() {
+            if (pendingBits > 0) {
+                put((byte) (pending << (8 - pendingBits)));
+                pendingBits = 0;
+            }
+        }
+
+        private void put(byte b) {
+            if (size == bytes.length) bytes = Arrays.copyOf(bytes, size * 2);
+            bytes[size++] = b;
+        }
+
+        byte[] bytes() { return bytes; }
+        int size() { return size; }
+
+        void reset() {
+            size = 0;
+            pending = 0;
+            pendingBits = 0;
+        }
+    }
+
+    // Flux de bits en lecture ; lire au-delà de la fin lève ArrayIndexOutOfBoundsException
+    private static final class BitReader {
+        private final byte[] bytes;
+        private final int length;
+        private int position;
+        private long pending;
+        private int pendingBits;
+
+        BitReader(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        long read(int width) {
+            if (width > 32) {
+                long high = read(width - 32);
+                return (high << 32) | read(32);
+            }
+            if (width == 0) return 0;
+            while (pendingBits < width) {
+                if (position == length) throw new ArrayIndexOutOfBoundsException(position);
+                pending = (pending << 8) | (bytes[position++] & 0xFF);
+                pendingBits += 8;
+            }
+            pendingBits -= width;
+            return (pending >>> pendingBits) & ((1L << width) - 1);
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package server;
+
+import common.AgentData;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Segments texte, une ligne par enregistrement :
+ * "yyyy-MM-dd HH:mm:ss,agent,cpu,mem,disk,statut" (plus les colonnes
+ * d'agrégat pour les niveaux minute/heure).
+ *
+ * C'est le format historique du serveur et le format d'export ; chaque
+ * segment a un index temporel clairsemé (suffixe .idx) pour se positionner.
+ * Comme pour les segments binaires, la recherche suppose des dates d'agents
+ * décalées d'au plus monitor.history.indexSkewMs.
+ */
+public class CsvSegmentFormat implements SegmentFormat {
+
+    static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final int indexInterval;
+
+    public CsvSegmentFormat(int indexInterval) {
+        this.indexInterval = indexInterval;
+    }
+
+    @Override
+    public String extension() {
+        return ".csv";
+    }
+
+    @Override
+    public Appender openAppender(HistorySegments.Segment segment) throws IOException {
+        HistoryIndex index = null;
+        try {
+            synchronized (segment) {
+                index = new HistoryIndex(segment.path, indexInterval);
+                index.open();
+                segment.index = index;
+            }
+        } catch (IOException e) {
+            index = null;
+            System.err.println("Erreur index historique (recherche sans index): " + e.getMessage());
+        }
+        return new CsvAppender(segment.path, index);
+    }
+
+    // Index temporel du segment, chargé à la première utilisation ; le segment de
+    // l'écrivain a déjà le sien (openAppender), les autres ne changent plus :
+    // lecture seule, le fichier .idx n'est ni réécrit ni complété
+    private HistoryIndex index(HistorySegments.Segment segment) {
+        synchronized (segment) {
+            if (segment.index == null) {
+                HistoryIndex idx = new HistoryIndex(segment.path, indexInterval);
+                try {
+                    idx.load();
+                    segment.index = idx;
+                } catch (IOException e) {
+                    System.err.println("Erreur index " + segment + " (recherche sans index): " + e.getMessage());
+                    return null;
+                }
+            }
+            return segment.index;
+        }
+    }
+
+    @Override
+    public boolean scan(HistorySegments.Segment segment, long toPosition, long start, long end, long skewMs,
+                        String agentId, HistoryVisitor visitor) {
+        if (!Files.exists(segment.path)) {
+            return true;
+        }
+        long fromPosition = 0;
+        if (start != Long.MIN_VALUE && start > segment.dayStart) {
+            HistoryIndex idx = index(segment);
+            if (idx != null) fromPosition = idx.seek(start - skewMs - segment.tier.bucketMs);
+        }
+        // Les lignes sont dans l'ordre d'arrivée : au-delà de la fin (plus la marge), on s'arrête
+        long stopAfter = end > Long.MAX_VALUE - skewMs ? Long.MAX_VALUE : end + skewMs;
+        HistoryLineParser parser = new HistoryLineParser();
+
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            InputStream in = Channels.newInputStream(channel.position(fromPosition));
+            if (toPosition != Long.MAX_VALUE) {
+                in = new BoundedInputStream(in, toPosition - fromPosition);
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                long recordTime = parser.parseTime(line);
+                if (recordTime == HistoryLineParser.INVALID) continue;
+                if (recordTime > stopAfter) break;
+                if (recordTime < start || recordTime > end) continue;
+                if (!HistoryLineParser.matchesAgent(line, agentId) || !parser.parse(line)) continue;
+
+                boolean more = parser.isAggregate()
+                        ? visitor.visitAggregate(recordTime, segment.tier.bucketMs, parser.getAgentId(),
+                                parser.getCount(), parser.getCriticalCount(), parser.getAggregate())
+                        : visitor.visit(recordTime, parser.getAgentId(), parser.getCpu(), parser.getMemory(),
+                                parser.getDisk(), parser.isCritical());
+                if (!more) return false;
+            }
+        } catch (IOException e) {
+            System.err.println("Erreur lecture historique: " + e.getMessage());
+        }
+        return true;
+    }
+
+    @Override
+    public List<String[]> readLast(HistorySegments.Segment segment, String agentId, int maxRecords) throws IOException {
+        return HistoryTailReader.readLast(segment.path, agentId, maxRecords);
+    }
+
+    @Override
+    public int visitLast(HistorySegments.Segment segment, String agentId, int maxRecords, HistoryVisitor visitor) throws IOException {
+        List<String> lines = HistoryTailReader.readLastLines(segment.path, agentId, maxRecords);
+        HistoryLineParser parser = new HistoryLineParser();
+        int found = 0;
+        for (String line : lines) {
+            if (!parser.parse(line)) continue;
+            found++;
+            boolean more = parser.isAggregate()
+                    ? visitor.visitAggregate(parser.getTime(), segment.tier.bucketMs, parser.getAgentId(),
+                            parser.getCount(), parser.getCriticalCount(), parser.getAggregate())
+                    : visitor.visit(parser.getTime(), parser.getAgentId(), parser.getCpu(), parser.getMemory(),
+                            parser.getDisk(), parser.isCritical());
+            if (!more) break;
+        }
+        return found;
+    }
+
+    @Override
+    public void writeAggregates(Path path, Map<String, RollupSeries> series) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder(160);
+            RollupSeries.visitMerged(series, new HistoryVisitor() {
+                @Override
+                public boolean visit(long time, String agentId, double cpu, double memory, double disk, boolean critical) {
+                    return true;
+                }
+
+                @Override
+                public boolean visitAggregate(long time, long bucketMs, String agentId, long count, long criticalCount, double[] values) {
+                    line.setLength(0);
+                    formatAggregate(line, time, agentId, count, criticalCount, values);
+                    try {
+                        out.append(line);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return true;
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Écriture groupée des lignes à travers un FileChannel gardé ouvert
+    private static final class CsvAppender implements Appender {
+        private final FileChannel channel;
+        private final HistoryIndex index;
+        private final StringBuilder text = new StringBuilder(64 * 1024);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private ByteBuffer bytes = ByteBuffer.allocateDirect(256 * 1024);
+        private long cachedSecond = Long.MIN_VALUE;
+        private String cachedDate;
+        private long[] lineTimes = new long[1024];
+        private long[] lineOffsets = new long[1024];
+        private long position;
+
+        CsvAppender(Path file, HistoryIndex index) throws IOException {
+            this.index = index;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            this.position = channel.size();
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public void append(List<AgentData> batch, int from, int to) throws IOException {
+            text.setLength(0);
+            int lines = 0;
+            long batchBytes = 0;
+            for (int i = from; i < to; i++) {
+                AgentData data = batch.get(i);
+                int lineStart = text.length();
+                formatLine(data, text);
+                if (lines == lineTimes.length) {
+                    lineTimes = Arrays.copyOf(lineTimes, lines * 2);
+                    lineOffsets = Arrays.copyOf(lineOffsets, lines * 2);
+                }
+                lineTimes[lines] = Math.floorDiv(data.getTimestamp().getTime(), 1000) * 1000;
+                lineOffsets[lines] = batchBytes;
+                batchBytes += utf8Length(text, lineStart, text.length());
+                lines++;
+            }
+            if (lines == 0) return;
+
+            encodeText();
+            long batchStart = position;
+            while (bytes.hasRemaining()) {
+                position += channel.write(bytes);
+            }
+            if (index != null) {
+                for (int i = 0; i < lines; i++) {
+                    index.onAppend(lineTimes[i], batchStart + lineOffsets[i]);
+                }
+            }
+        }
+
+        @Override
+        public void force() throws IOException {
+            channel.force(false);
+        }
+
+        @Override
+        public void close() {
+            if (index != null) index.close();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Erreur fermeture historique: " + e.getMessage());
+            }
+        }
+
+        private void encodeText() {
+            CharBuffer chars = CharBuffer.wrap(text);
+            bytes.clear();
+            encoder.reset();
+            while (true) {
+                CoderResult result = encoder.encode(chars, bytes, true);
+                if (result.isOverflow()) {
+                    // Lot plus gros que le tampon : on l'agrandit
+                    ByteBuffer larger = ByteBuffer.allocateDirect(bytes.capacity() * 2);
+                    bytes.flip();
+                    larger.put(bytes);
+                    bytes = larger;
+                } else {
+                    break;
+                }
+            }
+            encoder.flush(bytes);
+            bytes.flip();
+        }
+
+        // Même format que l'ancienne version : date,agent,cpu,mem,disk,statut
+        private void formatLine(AgentData data, StringBuilder out) {
+            long time = data.getTimestamp().getTime();
+            long second = Math.floorDiv(time, 1000);
+            if (second != cachedSecond) {
+                cachedSecond = second;
+                cachedDate = DATE_FORMAT.format(Instant.ofEpochSecond(second));
+            }
+            out.append(cachedDate).append(',').append(data.getAgentId()).append(',');
+            appendFixed2(out, data.getCpuUsage());
+            out.append(',');
+            appendFixed2(out, data.getMemoryUsage());
+            out.append(',');
+            appendFixed2(out, data.getDiskUsage());
+            out.append(',').append(data.isCritical() ? "CRITIQUE" : "OK").append('\n');
+        }
+    }
+
+    // Ligne d'export d'un échantillon brut
+    static void formatSample(StringBuilder out, long time, String agentId, double cpu, double memory, double disk, boolean critical) {
+        out.append(DATE_FORMAT.format(Instant.ofEpochMilli(time))).append(',').append(agentId).append(',');
+        appendFixed2(out, cpu);
+        out.append(',');
+        appendFixed2(out, memory);
+        out.append(',');
+        appendFixed2(out, disk);
+        out.append(',').append(critical ? "CRITIQUE" : "OK").append('\n');
+    }
+
+    /*
+     * Ligne d'un niveau agrégé : mêmes six premières colonnes qu'une ligne brute
+     * (moyennes, CRITIQUE si au moins une alerte), puis nombre,critiques et
+     * les 9 valeurs (sommes, minimums, maximums).
+     */
+    static void formatAggregate(StringBuilder out, long time, String agentId, long count, long criticalCount, double[] values) {
+        out.append(DATE_FORMAT.format(Instant.ofEpochMilli(time))).append(',').append(agentId).append(',');
+        for (int f = 0; f < 3; f++) {
+            appendFixed2(out, values[f] / count);
+            out.append(',');
+        }
+        out.append(criticalCount > 0 ? "CRITIQUE" : "OK").append(',').append(count).append(',').append(criticalCount);
+        for (double value : values) {
+            out.append(',');
+            appendFixed2(out, value);
+        }
+        out.append('\n');
+    }
+
+    // Enregistrement au format des lignes d'historique (réponses RMI)
+    static String[] toRecord(long time, String agentId, double cpu, double memory, double disk, boolean critical) {
+        StringBuilder sb = new StringBuilder(8);
+        return new String[] {
+            DATE_FORMAT.format(Instant.ofEpochMilli(time)),
+            agentId,
+            fixed2(sb, cpu),
+            fixed2(sb, memory),
+            fixed2(sb, disk),
+            critical ? "CRITIQUE" : "OK"
+        };
+    }
+
+    private static String fixed2(StringBuilder sb, double value) {
+        sb.setLength(0);
+        appendFixed2(sb, value);
+        return sb.toString();
+    }
+
+    private static int utf8Length(CharSequence s, int from, int to) {
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) length++;
+            else if (c < 0x800) length += 2;
+            else if (Character.isHighSurrogate(c)) { length += 4; i++; }
+            else length += 3;
+        }
+        return length;
+    }
+
+    // Équivalent de String.format(Locale.US, "%.2f", value) sans allocation
+    static void appendFixed2(StringBuilder out, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.append(String.format(Locale.US, "%.2f", value));
+            return;
+        }
+        long hundredths = Math.round(Math.abs(value) * 100);
+        if (value < 0 && hundredths != 0) out.append('-');
+        out.append(hundredths / 100).append('.');
+        long cents = hundredths % 100;
+        if (cents < 10) out.append('0');
+        out.append(cents);
+    }
+
+    // Flux limité à un nombre d'octets (lecture jusqu'à une position donnée)
+    static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = super.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+    }
+}
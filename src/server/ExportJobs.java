@@ -0,0 +1,270 @@
+package server;
+
+import common.ExportStatus;
+import common.HistoryColumns;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports d'historique écrits par le serveur dans un fichier compressé,
+ * puis téléchargés par le client par blocs (voir MonitorService.startExport).
+ *
+ * Chaque export a son thread, qui parcourt les segments de la période et
+ * écrit au fil de la lecture dans un flux gzip : la mémoire utilisée ne
+ * dépend pas de la taille de la période. Deux formats :
+ *   - CSV (.csv.gz) : mêmes lignes que l'export page par page du client ;
+ *   - colonnes (.cols.gz) : flux d'objets Java de blocs HistoryColumns
+ *     (au plus COLUMN_BLOCK lignes chacun), terminé par null.
+ * Un export terminé non téléchargé pendant export.ttlSec est supprimé ;
+ * au plus export.maxJobs exports sont en cours à la fois.
+ */
+public class ExportJobs {
+
+    private static final int COLUMN_BLOCK = 4096;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String PREFIX = "export-";
+
+    private final Path dir;
+    private final int maxJobs;
+    private final long ttlMs;
+    private final int maxChunk;
+    private final AtomicLong ids = new AtomicLong(System.currentTimeMillis());
+    private final Map<Long, Job> jobs = new ConcurrentHashMap<>();
+
+    private final class Job implements HistoryVisitor {
+        final long id;
+        final long start;
+        final long end;
+        final boolean columnar;
+        final Path file;
+        final Path temp;
+        volatile ExportStatus.State state = ExportStatus.State.RUNNING;
+        volatile long rows;
+        volatile long lastTime;
+        volatile String error;
+        volatile boolean cancelled;
+        volatile long lastAccess = System.currentTimeMillis();
+
+        // Écriture (thread de l'export)
+        private final StringBuilder line = new StringBuilder(64);
+        private Writer csv;
+        private ObjectOutputStream objects;
+        private HistoryColumns block;
+
+        Job(long id, long start, long end, boolean columnar) {
+            this.id = id;
+            this.start = start;
+            this.end = end;
+            this.columnar = columnar;
+            this.file = dir.resolve(PREFIX + id + (columnar ? ".cols.gz" : ".csv.gz"));
+            this.temp = file.resolveSibling(file.getFileName() + ".tmp");
+            this.lastTime = start;
+        }
+
+        void run(String agentId) {
+            try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE), BUFFER_SIZE)) {
+                if (columnar) {
+                    objects = new ObjectOutputStream(out);
+                    block = new HistoryColumns(COLUMN_BLOCK);
+                } else {
+                    csv = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                    csv.write("Date,Agent ID,CPU (%),Mémoire (%),Disque (%),Statut\n");
+                }
+                HistoryManager.scan(agentId, start, end, this);
+                if (cancelled) throw new IOException("export annulé");
+                if (columnar) {
+                    if (block.size() > 0) writeBlock();
+                    objects.writeObject(null);
+                    objects.flush();
+                } else {
+                    csv.flush();
+                }
+            } catch (IOException | RuntimeException e) {
+                error = e.getMessage();
+            }
+
+            try {
+                if (error == null) {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    // Supprimé pendant la fin de l'écriture : delete() n'a pas pu voir le fichier
+                    if (cancelled) Files.deleteIfExists(file);
+                } else {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException e) {
+                if (error == null) error = e.getMessage();
+            }
+            lastAccess = System.currentTimeMillis();
+            state = error == null ? ExportStatus.State.DONE : ExportStatus.State.FAILED;
+            if (error != null && !cancelled) {
+                System.err.println("Erreur export historique (" + id + "): " + error);
+            }
+        }
+
+        // Les niveaux agrégés sont rendus en moyennes (comportement par défaut du visiteur)
+        @Override
+        public boolean visit(long time, String agentId, double cpu, double memory, double disk, boolean critical) {
+            try {
+                if (columnar) {
+                    block.add(time, agentId, cpu, memory, disk, critical);
+                    if (block.size() == COLUMN_BLOCK) writeBlock();
+                } else {
+                    line.setLength(0);
+                    CsvSegmentFormat.formatSample(line, time, agentId, cpu, memory, disk, critical);
+                    csv.append(line);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+            rows++;
+            lastTime = time;
+            return !cancelled;
+        }
+
+        private void writeBlock() throws IOException {
+            objects.writeObject(block);
+            // Oublie les objets écrits : la table des références du flux ne grossit pas
+            objects.reset();
+            block = new HistoryColumns(COLUMN_BLOCK);
+        }
+
+        ExportStatus status() {
+            long bytes;
+            try {
+                bytes = Files.size(state == ExportStatus.State.DONE ? file : temp);
+            } catch (IOException e) {
+                bytes = 0;
+            }
+            int percent = -1;
+            if (state == ExportStatus.State.DONE) {
+                percent = 100;
+            } else if (start != Long.MIN_VALUE && end != Long.MAX_VALUE && end > start) {
+                percent = (int) Math.max(0, Math.min(99, (lastTime - start) * 100 / (end - start)));
+            }
+            return new ExportStatus(state, rows, bytes, percent, error);
+        }
+    }
+
+    public ExportJobs() {
+        this.dir = Paths.get(ServerConfig.getString("export.dir", "exports"));
+        this.maxJobs = Math.max(1, ServerConfig.getInt("export.maxJobs", 2));
+        this.ttlMs = Math.max(1, ServerConfig.getLong("export.ttlSec", 600)) * 1000;
+        this.maxChunk = Math.max(1, ServerConfig.getInt("export.maxChunkKb", 1024)) * 1024;
+        removeLeftovers();
+    }
+
+    public long start(String agentId, long start, long end, boolean columnar) throws RemoteException {
+        removeExpired();
+        int running = 0;
+        for (Job job : jobs.values()) {
+            if (job.state == ExportStatus.State.RUNNING) running++;
+        }
+        if (running >= maxJobs) {
+            throw new RemoteException("Trop d'exports en cours (" + maxJobs + "), réessayez plus tard");
+        }
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new RemoteException("Répertoire d'export inaccessible: " + e.getMessage());
+        }
+        Job job = new Job(ids.incrementAndGet(), start, end, columnar);
+        jobs.put(job.id, job);
+        Thread thread = new Thread(() -> job.run(agentId), "export-job-" + job.id);
+        thread.setDaemon(true);
+        thread.start();
+        return job.id;
+    }
+
+    public ExportStatus status(long id) throws RemoteException {
+        Job job = get(id);
+        job.lastAccess = System.currentTimeMillis();
+        return job.status();
+    }
+
+    // Jusqu'à "length" octets du fichier terminé à partir de "offset" ; tableau vide à la fin
+    public byte[] read(long id, long offset, int length) throws RemoteException {
+        Job job = get(id);
+        if (job.state != ExportStatus.State.DONE) {
+            throw new RemoteException("Export " + id + " non terminé (" + job.state + ")");
+        }
+        job.lastAccess = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(job.file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (offset < 0 || offset >= size) return new byte[0];
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size - offset, Math.max(1, Math.min(length, maxChunk))));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) break;
+            }
+            return buffer.position() == buffer.capacity() ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+        } catch (IOException e) {
+            throw new RemoteException("Erreur lecture export " + id + ": " + e.getMessage());
+        }
+    }
+
+    // Arrête l'export s'il est en cours et supprime son fichier
+    public void delete(long id) {
+        Job job = jobs.remove(id);
+        if (job != null) discard(job);
+    }
+
+    private Job get(long id) throws RemoteException {
+        Job job = jobs.get(id);
+        if (job == null) throw new RemoteException("Export inconnu ou expiré: " + id);
+        return job;
+    }
+
+    private void discard(Job job) {
+        job.cancelled = true;
+        // Un export en cours supprime lui-même son fichier temporaire
+        try {
+            Files.deleteIfExists(job.file);
+        } catch (IOException e) {
+            System.err.println("Erreur suppression export " + job.id + ": " + e.getMessage());
+        }
+    }
+
+    // Exports terminés non consultés depuis ttlMs (client arrêté sans les supprimer)
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Job> it = jobs.values().iterator(); it.hasNext(); ) {
+            Job job = it.next();
+            if (job.state != ExportStatus.State.RUNNING && now - job.lastAccess > ttlMs) {
+                it.remove();
+                discard(job);
+            }
+        }
+    }
+
+    // Fichiers d'une exécution précédente du serveur (identifiants perdus)
+    private void removeLeftovers() {
+        if (!Files.isDirectory(dir)) return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, PREFIX + "*")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            System.err.println("Erreur nettoyage des exports: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compactage de l'historique en arrière-plan.
+ *
+ * Chaque jour terminé (le segment brut n'est plus celui de l'écrivain) est
+ * agrégé par minute, puis par heure ; les segments plus anciens que leur
+ * rétention sont ensuite supprimés, à condition qu'un niveau plus grossier
+ * existe pour ce jour. Une rétention de 0 jour conserve le niveau indéfiniment.
+ * Si la compression est active, les segments restants des jours terminés
+ * sont enfin réécrits compressés (CompressedSegmentFormat), agrégats compris.
+ * Le premier passage attend la fin de la reconstruction des agrégats
+ * (release()) : elle lit les segments que le compactage supprime ou remplace.
+ */
+public class HistoryCompactor {
+
+    private final HistorySegments segments;
+    private final HistoryWriter writer;
+    private final int rawRetentionDays;
+    private final int minuteRetentionDays;
+    private final int hourRetentionDays;
+    private final long intervalMs;
+
+    private volatile boolean running = true;
+    private Thread thread;
+    // Ouvert quand plus personne ne lit la liste des segments prise au démarrage
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    public HistoryCompactor(HistorySegments segments, HistoryWriter writer, int rawRetentionDays,
+                            int minuteRetentionDays, int hourRetentionDays, long intervalMs) {
+        this.segments = segments;
+        this.writer = writer;
+        this.rawRetentionDays = rawRetentionDays;
+        this.minuteRetentionDays = minuteRetentionDays;
+        this.hourRetentionDays = hourRetentionDays;
+        this.intervalMs = Math.max(60_000L, intervalMs);
+    }
+
+    public void start() {
+        thread = new Thread(() -> {
+            try {
+                released.await();
+                while (running) {
+                    compact();
+                    Thread.sleep(intervalMs);
+                }
+            } catch (InterruptedException e) {
+                // Arrêt
+            }
+        }, "history-compactor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Autorise le premier passage (reconstruction des agrégats terminée)
+    public void release() {
+        released.countDown();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) thread.interrupt();
+    }
+
+    public synchronized void compact() {
+        LocalDate today = LocalDate.now(ZoneId.systemDefault());
+        HistorySegments.Segment active = writer != null ? writer.getSegment() : null;
+        LocalDate activeDay = active != null ? active.day : today;
+        int rolled = 0;
+        int deleted = 0;
+        int sealed = 0;
+        long[] sizes = new long[2];
+
+        try {
+            // Jours terminés : agrégats par minute depuis les données brutes
+            for (HistorySegments.Segment raw : segments.list(HistorySegments.Tier.RAW)) {
+                if (!raw.day.isBefore(activeDay) || !running) continue;
+                if (segments.get(HistorySegments.Tier.MINUTE, raw.day) == null) {
+                    rollUp(raw, HistorySegments.Tier.MINUTE);
+                    rolled++;
+                }
+            }
+            // Puis par heure, depuis les minutes (ou les données brutes à défaut)
+            for (HistorySegments.Tier source : new HistorySegments.Tier[] {HistorySegments.Tier.MINUTE, HistorySegments.Tier.RAW}) {
+                for (HistorySegments.Segment segment : segments.list(source)) {
+                    if (!segment.day.isBefore(activeDay) || !running) continue;
+                    if (segments.get(HistorySegments.Tier.HOUR, segment.day) == null) {
+                        rollUp(segment, HistorySegments.Tier.HOUR);
+                        rolled++;
+                    }
+                }
+            }
+
+            deleted += expire(HistorySegments.Tier.RAW, rawRetentionDays, today);
+            deleted += expire(HistorySegments.Tier.MINUTE, minuteRetentionDays, today);
+            deleted += expire(HistorySegments.Tier.HOUR, hourRetentionDays, today);
+
+            CompressedSegmentFormat compressed = segments.getSealedFormat();
+            if (compressed != null) {
+                for (HistorySegments.Tier tier : HistorySegments.Tier.values()) {
+                    for (HistorySegments.Segment segment : segments.list(tier)) {
+                        if (!segment.day.isBefore(activeDay) || !running) continue;
+                        if (segment.format == compressed) continue;
+                        if (seal(segment, compressed, sizes)) sealed++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Erreur compactage historique: " + e.getMessage());
+        }
+
+        if (rolled > 0 || deleted > 0 || sealed > 0) {
+            System.out.println("Compactage historique : " + rolled + " segment(s) agrégé(s), " + deleted + " supprimé(s), "
+                    + sealed + " compressé(s)" + (sealed > 0 ? " (" + sizes[0] / 1024 + " Ko -> " + sizes[1] / 1024 + " Ko)" : ""));
+        }
+    }
+
+    // Agrège un segment au niveau "target" ; le fichier n'apparaît qu'une fois complet
+    private void rollUp(HistorySegments.Segment source, HistorySegments.Tier target) throws IOException {
+        Map<String, RollupSeries> series = new TreeMap<>();
+        HistoryManager.scanSegment(source, new HistoryVisitor() {
+            @Override
+            public boolean visit(long time, String agentId, double cpu, double memory, double disk, boolean critical) {
+                seriesFor(agentId).add(time, cpu, memory, disk, critical);
+                return true;
+            }
+
+            @Override
+            public boolean visitAggregate(long time, long bucketMs, String agentId, long count, long criticalCount, double[] values) {
+                seriesFor(agentId).addBucket(time, count, criticalCount, values);
+                return true;
+            }
+
+            private RollupSeries seriesFor(String agentId) {
+                return series.computeIfAbsent(agentId, id -> new RollupSeries(target.bucketMs, 0));
+            }
+        });
+
+        // Directement dans le format des jours terminés : le jour agrégé est terminé
+        SegmentFormat format = segments.getSealedFormat() != null ? segments.getSealedFormat() : segments.getNewFormat();
+        format.writeAggregates(segments.pathFor(target, source.day, format), series);
+        segments.create(target, source.day, format);
+    }
+
+    // Réécrit un segment compressé ; sizes reçoit les tailles avant et après
+    private boolean seal(HistorySegments.Segment segment, CompressedSegmentFormat compressed, long[] sizes) throws IOException {
+        Path path = segments.pathFor(segment.tier, segment.day, compressed);
+        long written = compressed.write(path, segment.tier != HistorySegments.Tier.RAW, visitor -> HistoryManager.scanSegment(segment, visitor));
+        // Une erreur de lecture n'interrompt le parcours qu'avec un message : l'original n'est
+        // supprimé que si la copie compressée, relue, compte autant d'enregistrements que lui
+        long source = count(segment);
+        long read = count(segments.detached(segment.tier, segment.day, compressed));
+        if (written != source || read != source) {
+            Files.deleteIfExists(path);
+            System.err.println("Compression de " + segment + " abandonnée: " + written + " enregistrements écrits, "
+                    + read + " relus, " + source + " dans l'original");
+            return false;
+        }
+        sizes[0] += Files.size(segment.path);
+        sizes[1] += Files.size(path);
+        segments.replace(segment, compressed);
+        return true;
+    }
+
+    private static long count(HistorySegments.Segment segment) {
+        long[] count = new long[1];
+        HistoryManager.scanSegment(segment, (time, agentId, cpu, memory, disk, critical) -> {
+            count[0]++;
+            return true;
+        });
+        return count[0];
+    }
+
+    // Supprime les segments du niveau antérieurs à la rétention et déjà agrégés plus grossièrement
+    private int expire(HistorySegments.Tier tier, int retentionDays, LocalDate today) throws IOException {
+        if (retentionDays <= 0) return 0;
+        LocalDate limit = today.minusDays(retentionDays);
+        int deleted = 0;
+        for (HistorySegments.Segment segment : segments.list(tier)) {
+            if (!segment.day.isBefore(limit)) break;
+            if (!hasCoarser(tier, segment.day)) continue;
+            segments.delete(segment);
+            deleted++;
+        }
+        return deleted;
+    }
+
+    private boolean hasCoarser(HistorySegments.Tier tier, LocalDate day) {
+        if (tier == HistorySegments.Tier.HOUR) return true;
+        for (HistorySegments.Tier coarser : HistorySegments.Tier.values()) {
+            if (coarser.ordinal() > tier.ordinal() && segments.get(coarser, day) != null) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,176 @@
+package server;
+
+import common.HistoryColumns;
+import common.HistoryPage;
+
+import java.rmi.RemoteException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Requêtes d'historique par période lues page par page (curseurs).
+ *
+ * Chaque curseur a un thread de lecture qui parcourt les segments et dépose
+ * les enregistrements, par blocs de colonnes, dans une file bornée : il
+ * n'avance qu'au rythme des pages demandées, et ni le serveur ni le client
+ * ne gardent tout le résultat.
+ * Un curseur non utilisé pendant history.cursorTtlSec est fermé (son thread
+ * s'arrête de lui-même) ; au plus history.maxCursors curseurs sont ouverts.
+ */
+public class HistoryCursors {
+
+    // Fin du parcours, déposée après le dernier bloc
+    private static final HistoryColumns END = new HistoryColumns(1);
+    // Lignes par bloc déposé dans la file
+    private static final int CHUNK_ROWS = 1024;
+    // Attente maximale d'un appel nextPage avant de rendre une page partielle
+    private static final long PAGE_WAIT_MS = 5000;
+
+    private final int maxCursors;
+    private final int maxPageSize;
+    private final long ttlMs;
+    private final AtomicLong ids = new AtomicLong(System.currentTimeMillis());
+    private final Map<Long, Cursor> cursors = new ConcurrentHashMap<>();
+
+    private final class Cursor implements HistoryVisitor {
+        final long id;
+        final BlockingQueue<HistoryColumns> queue;
+        volatile long lastAccess = System.currentTimeMillis();
+        volatile boolean closed;
+        // Bloc en cours de remplissage (thread de lecture)
+        HistoryColumns filling = new HistoryColumns(CHUNK_ROWS);
+        // Bloc entamé par la page précédente et sa position (sous le verrou du curseur)
+        HistoryColumns partial;
+        int partialPosition;
+
+        Cursor(long id) {
+            this.id = id;
+            // Au plus environ maxPageSize lignes en attente
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, maxPageSize / CHUNK_ROWS));
+        }
+
+        boolean expired(long now) {
+            return closed || now - lastAccess > ttlMs;
+        }
+
+        // Lecture des segments (thread du curseur) ; les niveaux agrégés sont rendus en moyennes
+        @Override
+        public boolean visit(long time, String agentId, double cpu, double memory, double disk, boolean critical) {
+            filling.add(time, agentId, cpu, memory, disk, critical);
+            if (filling.size() < CHUNK_ROWS) return !closed;
+            HistoryColumns chunk = filling;
+            filling = new HistoryColumns(CHUNK_ROWS);
+            return offer(chunk);
+        }
+
+        // Dépose le dernier bloc incomplet puis la fin du parcours
+        void finish() {
+            if (filling.size() == 0 || offer(filling)) offer(END);
+        }
+
+        // Attend une place dans la file ; faux si le curseur a été fermé ou a expiré
+        boolean offer(HistoryColumns chunk) {
+            if (closed) return false;
+            try {
+                while (!queue.offer(chunk, 1, TimeUnit.SECONDS)) {
+                    if (expired(System.currentTimeMillis())) return false;
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    public HistoryCursors() {
+        this.maxCursors = Math.max(1, ServerConfig.getInt("history.maxCursors", 16));
+        this.maxPageSize = Math.max(1, ServerConfig.getInt("history.maxPageSize", 10000));
+        this.ttlMs = Math.max(1, ServerConfig.getLong("history.cursorTtlSec", 120)) * 1000;
+    }
+
+    public long open(String agentId, long start, long end) throws RemoteException {
+        removeExpired();
+        if (cursors.size() >= maxCursors) {
+            throw new RemoteException("Trop de requêtes d'historique ouvertes (" + maxCursors + "), réessayez plus tard");
+        }
+        Cursor cursor = new Cursor(ids.incrementAndGet());
+        cursors.put(cursor.id, cursor);
+        Thread thread = new Thread(() -> {
+            try {
+                HistoryManager.scan(agentId, start, end, cursor);
+            } catch (RuntimeException e) {
+                System.err.println("Erreur lecture historique (curseur " + cursor.id + "): " + e.getMessage());
+            } finally {
+                cursor.finish();
+            }
+        }, "history-cursor-" + cursor.id);
+        thread.setDaemon(true);
+        thread.start();
+        return cursor.id;
+    }
+
+    // Jusqu'à pageSize enregistrements ; page partielle si la lecture tarde, dernière page à la fin
+    public HistoryPage next(long id, int pageSize) throws RemoteException {
+        Cursor cursor = cursors.get(id);
+        if (cursor == null || cursor.expired(System.currentTimeMillis())) {
+            close(id);
+            throw new RemoteException("Requête d'historique inconnue ou expirée: " + id);
+        }
+        int size = Math.max(1, Math.min(pageSize, maxPageSize));
+        HistoryColumns records = new HistoryColumns(Math.min(size, CHUNK_ROWS));
+        boolean last = false;
+        synchronized (cursor) {
+            cursor.lastAccess = System.currentTimeMillis();
+            long deadline = cursor.lastAccess + PAGE_WAIT_MS;
+            try {
+                while (records.size() < size) {
+                    if (cursor.partial == null) {
+                        long wait = deadline - System.currentTimeMillis();
+                        HistoryColumns chunk = wait > 0 ? cursor.queue.poll(wait, TimeUnit.MILLISECONDS) : cursor.queue.poll();
+                        if (chunk == null) break;
+                        if (chunk == END) {
+                            last = true;
+                            break;
+                        }
+                        cursor.partial = chunk;
+                        cursor.partialPosition = 0;
+                    }
+                    // Un bloc peut être partagé entre deux pages
+                    int from = cursor.partialPosition;
+                    int to = Math.min(cursor.partial.size(), from + size - records.size());
+                    records.addAll(cursor.partial, from, to);
+                    cursor.partialPosition = to;
+                    if (to == cursor.partial.size()) cursor.partial = null;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            cursor.lastAccess = System.currentTimeMillis();
+        }
+        if (last) close(id);
+        return new HistoryPage(records, last);
+    }
+
+    public void close(long id) {
+        Cursor cursor = cursors.remove(id);
+        if (cursor != null) cursor.closed = true;
+    }
+
+    // Ferme les curseurs abandonnés (client arrêté sans close)
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Cursor> it = cursors.values().iterator(); it.hasNext(); ) {
+            Cursor cursor = it.next();
+            if (cursor.expired(now)) {
+                cursor.closed = true;
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Index temporel clairsemé du fichier d'historique.
+ *
+ * Toutes les "interval" lignes, on retient (date de la ligne, position en octets).
+ * Les lignes étant ajoutées dans l'ordre d'arrivée, une recherche par période
+ * peut se positionner directement près du début de la fenêtre.
+ * L'index est sauvegardé à côté du fichier (suffixe .idx, paires de longs) ;
+ * au démarrage, seules les lignes ajoutées depuis la dernière entrée sont relues.
+ */
+public class HistoryIndex {
+
+    private static final int ENTRY_SIZE = 16;
+    private static final int DATE_PREFIX = 19;
+
+    private final Path dataFile;
+    private final Path indexFile;
+    private final int interval;
+
+    private long[] times = new long[1024];
+    private long[] offsets = new long[1024];
+    private int size;
+
+    // Lignes vues depuis la dernière entrée
+    private int recordsSinceEntry;
+    private FileChannel indexChannel;
+    private final ByteBuffer entryBuffer = ByteBuffer.allocate(ENTRY_SIZE);
+
+    public HistoryIndex(Path dataFile, int interval) {
+        this.dataFile = dataFile;
+        this.indexFile = dataFile.resolveSibling(dataFile.getFileName() + ".idx");
+        this.interval = Math.max(1, interval);
+    }
+
+    // Charge l'index existant et indexe les lignes ajoutées depuis
+    public synchronized void open() throws IOException {
+        long dataSize = Files.exists(dataFile) ? Files.size(dataFile) : 0;
+        loadEntries(dataSize);
+
+        indexChannel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        indexChannel.truncate((long) size * ENTRY_SIZE);
+        indexChannel.position((long) size * ENTRY_SIZE);
+
+        long from = size > 0 ? offsets[size - 1] : 0;
+        int added = catchUp(from, dataSize);
+        if (added > 0) {
+            System.out.println("Index historique: " + added + " entrée(s) ajoutée(s) (" + size + " au total)");
+        }
+    }
+
+    // Chargement en lecture seule (fichier d'un jour terminé) : l'index n'est ni tronqué ni complété sur disque
+    public synchronized void load() throws IOException {
+        long dataSize = Files.exists(dataFile) ? Files.size(dataFile) : 0;
+        loadEntries(dataSize);
+        catchUp(size > 0 ? offsets[size - 1] : 0, dataSize);
+    }
+
+    public synchronized void close() {
+        try {
+            if (indexChannel != null) indexChannel.close();
+        } catch (IOException e) {
+            System.err.println("Erreur fermeture index: " + e.getMessage());
+        }
+    }
+
+    // Appelé par l'écrivain pour chaque ligne ajoutée au fichier
+    public synchronized void onAppend(long time, long offset) {
+        if (recordsSinceEntry == 0 || recordsSinceEntry >= interval) {
+            addEntry(time, offset, true);
+            recordsSinceEntry = 0;
+        }
+        recordsSinceEntry++;
+    }
+
+    // Position à partir de laquelle lire pour ne rien manquer après "time"
+    public synchronized long seek(long time) {
+        if (time == Long.MIN_VALUE || size == 0) return 0;
+        // Dernière entrée strictement antérieure à "time"
+        int i = Arrays.binarySearch(times, 0, size, time);
+        int slot = (i >= 0 ? i : -i - 1) - 1;
+        // Entrées de même date : remonter à la première
+        while (slot > 0 && times[slot - 1] == times[slot]) slot--;
+        return slot < 0 ? 0 : offsets[slot];
+    }
+
+    // Position à partir de laquelle il reste au moins "records" lignes (lecture de la fin)
+    public synchronized long seekFromEnd(int records) {
+        int slot = size - 1 - (records + interval - 1) / interval;
+        return slot < 0 ? 0 : offsets[slot];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void loadEntries(long dataSize) throws IOException {
+        size = 0;
+        if (!Files.exists(indexFile)) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            long previous = -1;
+            while (true) {
+                long time = in.readLong();
+                long offset = in.readLong();
+                // Entrée incohérente (fichier de données tronqué ou remplacé) : on s'arrête là
+                if (offset <= previous || offset >= dataSize) break;
+                addEntry(time, offset, false);
+                previous = offset;
+            }
+        } catch (EOFException e) {
+            // Fin de l'index (éventuellement entrée partielle)
+        }
+    }
+
+    // Relit le fichier de données de "from" à "to" et ajoute les entrées manquantes
+    private int catchUp(long from, long to) throws IOException {
+        recordsSinceEntry = 0;
+        if (from >= to) return 0;
+
+        int before = size;
+        HistoryLineParser parser = new HistoryLineParser();
+        StringBuilder datePrefix = new StringBuilder(DATE_PREFIX);
+        ByteBuffer chunk = ByteBuffer.allocate(256 * 1024);
+        boolean first = size > 0; // la première ligne lue est déjà indexée
+        long lineStart = from;
+        long position = from;
+
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            while (position < to) {
+                chunk.clear();
+                if (channel.read(chunk, position) <= 0) break;
+                chunk.flip();
+                byte[] bytes = chunk.array();
+                int limit = (int) Math.min(chunk.limit(), to - position);
+                for (int i = 0; i < limit; i++) {
+                    byte b = bytes[i];
+                    if (b != '\n') {
+                        // Seul le début de la ligne (la date, en ASCII) est utile
+                        if (datePrefix.length() < DATE_PREFIX) datePrefix.append((char) (b & 0xFF));
+                        continue;
+                    }
+                    long time = parser.parseTime(datePrefix);
+                    if (time != HistoryLineParser.INVALID) {
+                        if (first) {
+                            first = false;
+                            recordsSinceEntry = 1;
+                        } else {
+                            onAppend(time, lineStart);
+                        }
+                    }
+                    datePrefix.setLength(0);
+                    lineStart = position + i + 1;
+                }
+                position += limit;
+            }
+        }
+        return size - before;
+    }
+
+    private void addEntry(long time, long offset, boolean persist) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        // Les dates d'agents peuvent légèrement reculer : l'index reste trié
+        if (size > 0 && time < times[size - 1]) {
+            time = times[size - 1];
+        }
+        times[size] = time;
+        offsets[size] = offset;
+        size++;
+
+        if (persist && indexChannel != null) {
+            try {
+                entryBuffer.clear();
+                entryBuffer.putLong(time).putLong(offset).flip();
+                while (entryBuffer.hasRemaining()) {
+                    indexChannel.write(entryBuffer);
+                }
+            } catch (IOException e) {
+                System.err.println("Erreur écriture index: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package server;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Lecture rapide des lignes du fichier d'historique
+ * ("yyyy-MM-dd HH:mm:ss,agent,cpu,mem,disk,statut").
+ * Les lignes agrégées (niveaux minute/heure) ajoutent après le statut :
+ * nombre,critiques,sommes,minimums,maximums (cpu, mémoire, disque).
+ *
+ * La date est décodée chiffre par chiffre et le début d'heure est mis en cache :
+ * des lignes consécutives ne coûtent que quelques comparaisons.
+ * Une instance n'est pas thread-safe (une par lecture).
+ */
+public final class HistoryLineParser {
+
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final int DATE_LENGTH = 19;
+    private static final double[] POWERS_OF_TEN = {1, 10, 100, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+
+    private final ZoneId zone = ZoneId.systemDefault();
+    private long cachedHourKey = -1;
+    private long cachedHourStart;
+
+    // Champs de la dernière ligne lue par parse()
+    private long time;
+    private String agentId;
+    private double cpu, memory, disk;
+    private boolean critical;
+    private boolean aggregated;
+    private long count, criticalCount;
+    // Sommes, minimums puis maximums (même disposition que RollupSeries)
+    private final double[] aggregate = new double[RollupSeries.FIELDS];
+
+    // Décode une ligne complète ; retourne false si elle est mal formée
+    public boolean parse(String line) {
+        time = parseTime(line);
+        if (time == INVALID || line.length() <= DATE_LENGTH || line.charAt(DATE_LENGTH) != ',') return false;
+        int agentEnd = line.indexOf(',', DATE_LENGTH + 1);
+        int cpuEnd = agentEnd < 0 ? -1 : line.indexOf(',', agentEnd + 1);
+        int memoryEnd = cpuEnd < 0 ? -1 : line.indexOf(',', cpuEnd + 1);
+        int diskEnd = memoryEnd < 0 ? -1 : line.indexOf(',', memoryEnd + 1);
+        if (diskEnd < 0) return false;
+        cpu = parseDecimal(line, agentEnd + 1, cpuEnd);
+        memory = parseDecimal(line, cpuEnd + 1, memoryEnd);
+        disk = parseDecimal(line, memoryEnd + 1, diskEnd);
+        if (Double.isNaN(cpu) || Double.isNaN(memory) || Double.isNaN(disk)) return false;
+        critical = line.startsWith("CRITIQUE", diskEnd + 1);
+        int statusEnd = line.indexOf(',', diskEnd + 1);
+        aggregated = statusEnd >= 0;
+        if (statusEnd < 0) {
+            count = 1;
+            criticalCount = critical ? 1 : 0;
+        } else if (!parseAggregate(line, statusEnd + 1)) {
+            return false;
+        }
+        // Réutiliser la chaîne de l'agent précédent si c'est le même (cas fréquent)
+        int agentLength = agentEnd - DATE_LENGTH - 1;
+        if (agentId == null || agentId.length() != agentLength || !line.startsWith(agentId, DATE_LENGTH + 1)) {
+            agentId = line.substring(DATE_LENGTH + 1, agentEnd);
+        }
+        return true;
+    }
+
+    public long getTime() { return time; }
+    public String getAgentId() { return agentId; }
+    public double getCpu() { return cpu; }
+    public double getMemory() { return memory; }
+    public double getDisk() { return disk; }
+    public boolean isCritical() { return critical; }
+    // Champs des lignes agrégées (count = 1 pour une ligne brute)
+    public long getCount() { return count; }
+    public long getCriticalCount() { return criticalCount; }
+    public double[] getAggregate() { return aggregate; }
+    public boolean isAggregate() { return aggregated; }
+
+    // Colonnes d'agrégat : nombre,critiques puis les 9 valeurs
+    private boolean parseAggregate(String line, int from) {
+        int end = line.indexOf(',', from);
+        double value = end < 0 ? Double.NaN : parseDecimal(line, from, end);
+        if (Double.isNaN(value)) return false;
+        count = (long) value;
+        from = end + 1;
+        end = line.indexOf(',', from);
+        value = end < 0 ? Double.NaN : parseDecimal(line, from, end);
+        if (Double.isNaN(value)) return false;
+        criticalCount = (long) value;
+        for (int i = 0; i < aggregate.length; i++) {
+            from = end + 1;
+            end = line.indexOf(',', from);
+            if (end < 0) end = line.length();
+            aggregate[i] = parseDecimal(line, from, end);
+            if (Double.isNaN(aggregate[i])) return false;
+        }
+        return count > 0;
+    }
+
+    // Epoch millis de la date en tête de ligne, ou INVALID
+    public long parseTime(CharSequence line) {
+        if (line.length() < DATE_LENGTH
+                || line.charAt(4) != '-' || line.charAt(7) != '-' || line.charAt(10) != ' '
+                || line.charAt(13) != ':' || line.charAt(16) != ':') {
+            return INVALID;
+        }
+        int year = digits(line, 0, 4);
+        int month = digits(line, 5, 2);
+        int day = digits(line, 8, 2);
+        int hour = digits(line, 11, 2);
+        int minute = digits(line, 14, 2);
+        int second = digits(line, 17, 2);
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0 || minute > 59 || second > 59) {
+            return INVALID;
+        }
+
+        long hourKey = ((year * 100L + month) * 100 + day) * 100 + hour;
+        if (hourKey != cachedHourKey) {
+            try {
+                cachedHourStart = LocalDateTime.of(year, month, day, hour, 0).atZone(zone).toInstant().toEpochMilli();
+            } catch (DateTimeException e) {
+                return INVALID;
+            }
+            cachedHourKey = hourKey;
+        }
+        return cachedHourStart + (minute * 60 + second) * 1000L;
+    }
+
+    // Vrai si la ligne concerne cet agent (null ou vide = tous), sans découper la ligne
+    public static boolean matchesAgent(String line, String agentId) {
+        if (agentId == null || agentId.isEmpty()) return true;
+        int start = DATE_LENGTH + 1;
+        int end = start + agentId.length();
+        return line.length() > end && line.charAt(end) == ',' && line.startsWith(agentId, start);
+    }
+
+    // Nombre décimal simple ("-12.34") lu sans créer de sous-chaîne ; NaN si invalide
+    static double parseDecimal(String s, int from, int to) {
+        if (from >= to) return Double.NaN;
+        boolean negative = s.charAt(from) == '-';
+        int i = negative ? from + 1 : from;
+        long mantissa = 0;
+        int decimals = -1;
+        for (; i < to; i++) {
+            char c = s.charAt(i);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (c >= '0' && c <= '9' && mantissa < 100_000_000_000_000L) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (decimals >= 0) decimals++;
+            } else {
+                // Format inattendu (exposant, etc.) : analyse standard
+                try {
+                    return Double.parseDouble(s.substring(from, to));
+                } catch (NumberFormatException e) {
+                    return Double.NaN;
+                }
+            }
+        }
+        double value = mantissa;
+        if (decimals > 0) value /= POWERS_OF_TEN[Math.min(decimals, POWERS_OF_TEN.length - 1)];
+        return negative ? -value : value;
+    }
+
+    private static int digits(CharSequence s, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9) return -1;
+            value = value * 10 + d;
+        }
+        return value;
+    }
+}
@@ -1,172 +1,419 @@
 package server;
 
 import common.AgentData;
+import common.HistoryColumns;
 
-import java.io.*;
-import java.text.SimpleDateFormat;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
- * Gestionnaire d'historique - Stockage persistant des données dans un fichier
+ * Gestionnaire d'historique - Stockage persistant des données dans des
+ * segments journaliers (bruts, puis agrégés par minute et par heure),
+ * binaires par défaut ou CSV (history.storage)
  */
 public class HistoryManager {
-    
-    private static final String HISTORY_FILE = "historique_agents.csv";
-    private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-    
-    // Sauvegarde une entrée dans l'historique
-    public static synchronized void saveToHistory(AgentData data) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(HISTORY_FILE, true))) {
-            String line = String.format(Locale.US, "%s,%s,%.2f,%.2f,%.2f,%s",
-                dateFormat.format(data.getTimestamp()),
-                data.getAgentId(),
-                data.getCpuUsage(),
-                data.getMemoryUsage(),
-                data.getDiskUsage(),
-                data.isCritical() ? "CRITIQUE" : "OK"
-            );
-            writer.println(line);
-        } catch (IOException e) {
-            System.err.println("Erreur sauvegarde historique: " + e.getMessage());
+
+    // Ancien fichier unique, découpé en segments au premier démarrage
+    private static final String LEGACY_FILE = "historique_agents.csv";
+    private static final String HISTORY_DIR = ServerConfig.getString("history.dir", "historique");
+
+    // Nombre d'enregistrements récents utilisés par getStatistics
+    public static final int STATISTICS_WINDOW = 1000;
+
+    // Marge de tolérance pour les horloges d'agents légèrement décalées ; au-delà,
+    // les recherches par période peuvent manquer des enregistrements de l'agent
+    private static final long CLOCK_SKEW_MS = ServerConfig.getLong("history.indexSkewMs", 60000);
+
+    // Lectures par période réparties sur plusieurs threads, un segment par tâche (1 = séquentiel)
+    private static final int SCAN_PARALLELISM = Math.max(1, ServerConfig.getInt("history.scanParallelism",
+            Runtime.getRuntime().availableProcessors()));
+
+    // Segments, écrivain asynchrone et compacteur partagés (créés à l'initialisation)
+    private static HistorySegments segments;
+    private static HistoryWriter writer;
+    // Échec d'ouverture de l'écrivain : l'historique est désactivé
+    private static IOException openFailure;
+    private static HistoryCompactor compactor;
+    private static ForkJoinPool scanPool;
+
+    // Position d'écriture à un instant donné (segment brut courant et taille écrite)
+    public static final class Position {
+        final LocalDate day;
+        final long offset;
+
+        Position(LocalDate day, long offset) {
+            this.day = day;
+            this.offset = offset;
+        }
+    }
+
+    // Ouvre les segments d'historique (migration de l'ancien fichier si besoin) ; échoue si l'écriture est impossible
+    public static synchronized void init() throws IOException {
+        getWriter();
+        if (openFailure != null) throw openFailure;
+    }
+
+    private static synchronized HistoryWriter getWriter() {
+        if (segments == null) {
+            CsvSegmentFormat csv = new CsvSegmentFormat(ServerConfig.getInt("history.indexInterval", 1024));
+            BinarySegmentFormat binary = new BinarySegmentFormat();
+            CompressedSegmentFormat compressed = new CompressedSegmentFormat();
+            SegmentFormat storage = "csv".equalsIgnoreCase(ServerConfig.getString("history.storage", "binary")) ? csv : binary;
+            HistorySegments s = new HistorySegments(Paths.get(HISTORY_DIR), new SegmentFormat[] {csv, binary, compressed}, storage,
+                ServerConfig.getBoolean("history.compression", true) ? compressed : null);
+            try {
+                s.open();
+                s.migrate(Paths.get(LEGACY_FILE));
+            } catch (IOException e) {
+                System.err.println("Erreur ouverture segments historique: " + e.getMessage());
+            }
+            segments = s;
+            try {
+                writer = new HistoryWriter(s,
+                    ServerConfig.getInt("history.queueCapacity", 65536),
+                    ServerConfig.getInt("history.batchSize", 4096),
+                    ServerConfig.getLong("history.flushMs", 200),
+                    durability(),
+                    ServerConfig.getLong("history.fsyncIntervalMs", 1000));
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Erreur ouverture historique: " + e.getMessage());
+                openFailure = e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+                // Sans écrivain, pas de compactage : il supposerait tous les jours terminés
+                return null;
+            }
+            compactor = new HistoryCompactor(s, writer,
+                ServerConfig.getInt("history.rawRetentionDays", 7),
+                ServerConfig.getInt("history.minuteRetentionDays", 90),
+                ServerConfig.getInt("history.hourRetentionDays", 0),
+                ServerConfig.getLong("history.compactIntervalMin", 60) * 60_000L);
+            compactor.start();
+        }
+        return writer;
+    }
+
+    // Fin de la reconstruction des agrégats : le compactage peut supprimer ou remplacer des segments
+    public static synchronized void backfillFinished() {
+        if (compactor != null) {
+            compactor.release();
+        }
+    }
+
+    private static HistoryWriter.Durability durability() {
+        String value = ServerConfig.getString("history.durability", "PERIODIC");
+        try {
+            return HistoryWriter.Durability.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("monitor.history.durability invalide (" + value + "), PERIODIC utilisé");
+            return HistoryWriter.Durability.PERIODIC;
+        }
+    }
+
+    private static synchronized HistorySegments getSegments() {
+        getWriter();
+        return segments;
+    }
+
+    private static synchronized ForkJoinPool getScanPool() {
+        if (scanPool == null) {
+            scanPool = new ForkJoinPool(SCAN_PARALLELISM);
+        }
+        return scanPool;
+    }
+
+    // Sauvegarde une entrée dans l'historique (écriture groupée en arrière-plan)
+    public static void saveToHistory(AgentData data) {
+        HistoryWriter w = getWriter();
+        if (w != null) {
+            w.append(data);
+        }
+    }
+
+    // Rend visibles dans le fichier les échantillons encore en file d'attente
+    private static void flushPending() {
+        HistoryWriter w;
+        synchronized (HistoryManager.class) {
+            w = writer;
+        }
+        if (w != null) {
+            w.flush(1000);
+        }
+    }
+
+    // Vide la file et ferme les fichiers (arrêt du serveur)
+    public static synchronized void shutdown() {
+        if (compactor != null) {
+            compactor.stop();
+            compactor = null;
+        }
+        if (writer != null) {
+            writer.close();
+            writer = null;
         }
+        if (scanPool != null) {
+            scanPool.shutdown();
+            scanPool = null;
+        }
+        segments = null;
     }
-    
+
     // Récupère l'historique pour un agent donné (ou tous si agentId est null)
+    // Lecture de la fin des segments en remontant : on s'arrête aux maxRecords derniers
     public static List<String[]> getHistory(String agentId, int maxRecords) {
-        List<String[]> history = new ArrayList<>();
-        File file = new File(HISTORY_FILE);
-        
-        if (!file.exists()) {
-            return history;
-        }
-        
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            List<String[]> allRecords = new ArrayList<>();
-            
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length >= 6) {
-                    // Filtrer par agent si spécifié
-                    if (agentId == null || agentId.isEmpty() || parts[1].equals(agentId)) {
-                        allRecords.add(parts);
-                    }
-                }
+        flushPending();
+        List<HistorySegments.Segment> selected = getSegments().select(Long.MIN_VALUE, Long.MAX_VALUE, CLOCK_SKEW_MS);
+        LinkedList<List<String[]>> parts = new LinkedList<>();
+        int remaining = maxRecords;
+        try {
+            for (int i = selected.size() - 1; i >= 0 && remaining > 0; i--) {
+                HistorySegments.Segment segment = selected.get(i);
+                List<String[]> part = segment.format.readLast(segment, agentId, remaining);
+                parts.addFirst(part);
+                remaining -= part.size();
             }
-            
-            // Retourner les derniers enregistrements (copie pour éviter NotSerializableException)
-            int start = Math.max(0, allRecords.size() - maxRecords);
-            history = new ArrayList<>(allRecords.subList(start, allRecords.size()));
-            
         } catch (IOException e) {
             System.err.println("Erreur lecture historique: " + e.getMessage());
         }
-        
+        List<String[]> history = new ArrayList<>(maxRecords - remaining);
+        for (List<String[]> part : parts) {
+            history.addAll(part);
+        }
         return history;
     }
-    
-    // Récupérer l'historique par date
+
+    // Récupérer l'historique par date (segments du niveau le plus fin, positionnement direct)
     public static List<String[]> getHistoryByDate(String agentId, Date startDate, Date endDate) {
         List<String[]> history = new ArrayList<>();
-        File file = new File(HISTORY_FILE);
-        
-        if (!file.exists()) {
-            return history;
-        }
-        
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length >= 6) {
-                    try {
-                        Date recordDate = dateFormat.parse(parts[0]);
-                        boolean dateInRange = (startDate == null || !recordDate.before(startDate)) && 
-                                              (endDate == null || !recordDate.after(endDate));
-                        
-                        if (dateInRange) {
-                            if (agentId == null || agentId.isEmpty() || parts[1].equals(agentId)) {
-                                history.add(parts);
-                            }
-                        }
-                    } catch (Exception e) {
-                        // Ignorer les erreurs de parsing de date
-                    }
-                }
+        long start = startDate == null ? Long.MIN_VALUE : startDate.getTime();
+        long end = endDate == null ? Long.MAX_VALUE : endDate.getTime();
+
+        // Les buckets agrégés sont rendus comme un enregistrement moyen (même format)
+        scanParallel(start, end, segment -> {
+            List<String[]> part = new ArrayList<>();
+            segment.format.scan(segment, Long.MAX_VALUE, start, end, CLOCK_SKEW_MS, agentId, (time, id, cpu, memory, disk, critical) -> {
+                part.add(CsvSegmentFormat.toRecord(time, id, cpu, memory, disk, critical));
+                return true;
+            });
+            return part;
+        }, history::addAll);
+        return history;
+    }
+
+    // Les maxRecords derniers enregistrements en colonnes, lus directement dans les segments
+    public static HistoryColumns getHistoryColumns(String agentId, int maxRecords) {
+        flushPending();
+        List<HistorySegments.Segment> selected = getSegments().select(Long.MIN_VALUE, Long.MAX_VALUE, CLOCK_SKEW_MS);
+        LinkedList<HistoryColumns> parts = new LinkedList<>();
+        int remaining = maxRecords;
+        try {
+            for (int i = selected.size() - 1; i >= 0 && remaining > 0; i--) {
+                HistorySegments.Segment segment = selected.get(i);
+                HistoryColumns part = new HistoryColumns(Math.min(remaining, 1024));
+                segment.format.visitLast(segment, agentId, remaining, (time, id, cpu, memory, disk, critical) -> {
+                    part.add(time, id, cpu, memory, disk, critical);
+                    return true;
+                });
+                parts.addFirst(part);
+                remaining -= part.size();
             }
         } catch (IOException e) {
             System.err.println("Erreur lecture historique: " + e.getMessage());
         }
-        
+        HistoryColumns history = new HistoryColumns(maxRecords - remaining);
+        for (HistoryColumns part : parts) {
+            history.addAll(part, 0, part.size());
+        }
         return history;
     }
 
-    // Calcule les statistiques pour un agent (Derniers 1000 enregistrements)
-    public static Map<String, Double> getStatistics(String agentId) {
-        List<String[]> history = getHistory(agentId, 1000);
-        return calculateStatsFromHistory(history);
+    // Historique par date en colonnes, sans passer par du texte
+    public static HistoryColumns getHistoryColumnsByDate(String agentId, Date startDate, Date endDate) {
+        HistoryColumns history = new HistoryColumns(1024);
+        long start = startDate == null ? Long.MIN_VALUE : startDate.getTime();
+        long end = endDate == null ? Long.MAX_VALUE : endDate.getTime();
+
+        scanParallel(start, end, segment -> {
+            HistoryColumns part = new HistoryColumns(1024);
+            segment.format.scan(segment, Long.MAX_VALUE, start, end, CLOCK_SKEW_MS, agentId, (time, id, cpu, memory, disk, critical) -> {
+                part.add(time, id, cpu, memory, disk, critical);
+                return true;
+            });
+            return part;
+        }, part -> history.addAll(part, 0, part.size()));
+        return history;
     }
-    
-    // Calcule les statistiques pour un agent sur une période donnée
-    public static Map<String, Double> getStatisticsByDate(String agentId, Date startDate, Date endDate) {
-        List<String[]> history = getHistoryByDate(agentId, startDate, endDate);
-        return calculateStatsFromHistory(history);
-    }
-
-    private static Map<String, Double> calculateStatsFromHistory(List<String[]> history) {
-        Map<String, Double> stats = new HashMap<>();
-        
-        if (history.isEmpty()) {
-            stats.put("avgCpu", 0.0);
-            stats.put("avgMemory", 0.0);
-            stats.put("maxCpu", 0.0);
-            stats.put("maxMemory", 0.0);
-            stats.put("minCpu", 0.0);
-            stats.put("minMemory", 0.0);
-            stats.put("totalRecords", 0.0);
-            stats.put("criticalCount", 0.0);
-            return stats;
-        }
-        
-        double sumCpu = 0, sumMemory = 0;
-        double maxCpu = 0, maxMemory = 0;
-        double minCpu = 100, minMemory = 100;
-        int criticalCount = 0;
-        int validRecords = 0;
-        
-        for (String[] record : history) {
+
+    // Exporte les enregistrements de [start, end] au format CSV de l'historique
+    public static long exportCsv(String agentId, long start, long end, Writer out) throws IOException {
+        long[] written = new long[1];
+        IOException[] failure = new IOException[1];
+        // Chaque segment est mis en forme à part ; l'écriture suit l'ordre des segments
+        scanParallel(start, end, segment -> {
+            CsvChunk chunk = new CsvChunk();
+            segment.format.scan(segment, Long.MAX_VALUE, start, end, CLOCK_SKEW_MS, agentId, new HistoryVisitor() {
+                @Override
+                public boolean visit(long time, String id, double cpu, double memory, double disk, boolean critical) {
+                    CsvSegmentFormat.formatSample(chunk.text, time, id, cpu, memory, disk, critical);
+                    chunk.lines++;
+                    return true;
+                }
+
+                @Override
+                public boolean visitAggregate(long time, long bucketMs, String id, long count, long criticalCount, double[] values) {
+                    CsvSegmentFormat.formatAggregate(chunk.text, time, id, count, criticalCount, values);
+                    chunk.lines++;
+                    return true;
+                }
+
+                @Override
+                public boolean visitSummary(long time, String id, boolean critical, double[] values) {
+                    // Ligne brute habituelle : moyennes de l'intervalle d'envoi
+                    return visit(time, id, values[0], values[1], values[2], critical);
+                }
+            });
+            return chunk;
+        }, chunk -> {
+            if (failure[0] != null) return;
             try {
-                // Remplacer virgule par point pour supporter les anciens formats/autres locales
-                double cpu = Double.parseDouble(record[2].replace(',', '.'));
-                double memory = Double.parseDouble(record[3].replace(',', '.'));
-                
-                sumCpu += cpu;
-                sumMemory += memory;
-                maxCpu = Math.max(maxCpu, cpu);
-                maxMemory = Math.max(maxMemory, memory);
-                minCpu = Math.min(minCpu, cpu);
-                minMemory = Math.min(minMemory, memory);
-                
-                if ("CRITIQUE".equals(record[5])) {
-                    criticalCount++;
+                out.append(chunk.text);
+                written[0] += chunk.lines;
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) throw failure[0];
+        return written[0];
+    }
+
+    // Parcourt les enregistrements de [start, end] (dates incluses), sans passer par du texte
+    public static void scan(String agentId, long start, long end, HistoryVisitor visitor) {
+        flushPending();
+        for (HistorySegments.Segment segment : getSegments().select(start, end, CLOCK_SKEW_MS)) {
+            if (!segment.format.scan(segment, Long.MAX_VALUE, start, end, CLOCK_SKEW_MS, agentId, visitor)) return;
+        }
+    }
+
+    // Texte CSV d'un segment, en attente d'écriture
+    private static final class CsvChunk {
+        final StringBuilder text = new StringBuilder();
+        long lines;
+    }
+
+    /*
+     * Applique "task" à chaque segment de [start, end] sur le pool de lecture et
+     * passe les résultats partiels à "merge" dans l'ordre des segments (donc des
+     * dates). Au plus SCAN_PARALLELISM segments sont lus en avance sur la fusion.
+     */
+    private static <T> void scanParallel(long start, long end, Function<HistorySegments.Segment, T> task, Consumer<T> merge) {
+        flushPending();
+        List<HistorySegments.Segment> selected = getSegments().select(start, end, CLOCK_SKEW_MS);
+        if (SCAN_PARALLELISM == 1 || selected.size() < 2) {
+            for (HistorySegments.Segment segment : selected) {
+                merge.accept(task.apply(segment));
+            }
+            return;
+        }
+
+        long begin = System.currentTimeMillis();
+        ForkJoinPool pool = getScanPool();
+        ArrayDeque<ForkJoinTask<T>> pending = new ArrayDeque<>();
+        int next = 0;
+        try {
+            while (next < selected.size() || !pending.isEmpty()) {
+                while (next < selected.size() && pending.size() < SCAN_PARALLELISM) {
+                    HistorySegments.Segment segment = selected.get(next++);
+                    pending.add(pool.submit(() -> task.apply(segment)));
                 }
-                validRecords++;
-            } catch (NumberFormatException e) {
-                // Ignorer les lignes mal formatées
+                merge.accept(pending.poll().join());
             }
+        } finally {
+            for (ForkJoinTask<T> remaining : pending) {
+                remaining.cancel(false);
+            }
+        }
+
+        long elapsed = System.currentTimeMillis() - begin;
+        if (elapsed >= 1000) {
+            System.out.println("Lecture historique : " + selected.size() + " segments en " + elapsed
+                    + " ms (" + SCAN_PARALLELISM + " threads)");
+        }
+    }
+
+    // Parcourt tout l'historique jusqu'à la position donnée (reconstruction au démarrage)
+    public static void scanUpTo(Position position, HistoryVisitor visitor) {
+        for (HistorySegments.Segment segment : getSegments().select(Long.MIN_VALUE, Long.MAX_VALUE, CLOCK_SKEW_MS)) {
+            if (position.day != null && segment.day.isAfter(position.day)) break;
+            long toPosition = segment.day.equals(position.day) ? position.offset : Long.MAX_VALUE;
+            if (!segment.format.scan(segment, toPosition, Long.MIN_VALUE, Long.MAX_VALUE, CLOCK_SKEW_MS, null, visitor)) return;
         }
-        
-        if (validRecords == 0) validRecords = 1; // Éviter division par zéro
-
-        stats.put("avgCpu", sumCpu / validRecords);
-        stats.put("avgMemory", sumMemory / validRecords);
-        stats.put("maxCpu", maxCpu);
-        stats.put("maxMemory", maxMemory);
-        stats.put("minCpu", minCpu);
-        stats.put("minMemory", minMemory);
-        stats.put("totalRecords", (double) validRecords);
-        stats.put("criticalCount", (double) criticalCount);
-        
-        return stats;
+    }
+
+    // Parcourt un segment entier (compactage)
+    static void scanSegment(HistorySegments.Segment segment, HistoryVisitor visitor) {
+        segment.format.scan(segment, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, CLOCK_SKEW_MS, null, visitor);
+    }
+
+    // Position d'écriture une fois les échantillons en attente écrits
+    public static Position currentPosition() {
+        flushPending();
+        HistoryWriter w = getWriter();
+        if (w == null || w.getSegment() == null) return new Position(null, Long.MAX_VALUE);
+        return new Position(w.getSegment().day, w.getWrittenPosition());
+    }
+
+    // Calcule les statistiques pour un agent (Derniers STATISTICS_WINDOW enregistrements)
+    public static Map<String, Double> getStatistics(String agentId) {
+        flushPending();
+        StatsAccumulator stats = new StatsAccumulator();
+        List<HistorySegments.Segment> selected = getSegments().select(Long.MIN_VALUE, Long.MAX_VALUE, CLOCK_SKEW_MS);
+        int remaining = STATISTICS_WINDOW;
+        try {
+            // Du segment le plus récent au plus ancien, jusqu'à STATISTICS_WINDOW enregistrements
+            for (int i = selected.size() - 1; i >= 0 && remaining > 0; i--) {
+                HistorySegments.Segment segment = selected.get(i);
+                int[] found = new int[1];
+                segment.format.visitLast(segment, agentId, remaining, (time, id, cpu, memory, disk, critical) -> {
+                    stats.add(cpu, memory, disk, critical);
+                    found[0]++;
+                    return true;
+                });
+                remaining -= found[0];
+            }
+        } catch (IOException e) {
+            System.err.println("Erreur lecture historique: " + e.getMessage());
+        }
+        return stats.toMap();
+    }
+
+    // Calcule les statistiques pour un agent sur une période donnée (agrégats exacts sur les niveaux agrégés)
+    public static Map<String, Double> getStatisticsByDate(String agentId, Date startDate, Date endDate) {
+        StatsAccumulator stats = new StatsAccumulator();
+        long start = startDate == null ? Long.MIN_VALUE : startDate.getTime();
+        long end = endDate == null ? Long.MAX_VALUE : endDate.getTime();
+        // Un agrégat partiel par segment, combinés ensuite
+        scanParallel(start, end, segment -> {
+            StatsAccumulator part = new StatsAccumulator();
+            segment.format.scan(segment, Long.MAX_VALUE, start, end, CLOCK_SKEW_MS, agentId, new HistoryVisitor() {
+                @Override
+                public boolean visit(long time, String id, double cpu, double memory, double disk, boolean critical) {
+                    part.add(cpu, memory, disk, critical);
+                    return true;
+                }
+
+                @Override
+                public boolean visitAggregate(long time, long bucketMs, String id, long count, long criticalCount, double[] values) {
+                    part.mergeBucket(count, criticalCount, values, 0, null);
+                    return true;
+                }
+            });
+            return part;
+        }, stats::merge);
+        return stats.toMap();
     }
 }
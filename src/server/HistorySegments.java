@@ -0,0 +1,285 @@
+package server;
+
+import common.AgentData;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Fichiers d'historique découpés par jour et par niveau de détail :
+ *
+ *   historique/raw/2025-10-09.bin     échantillons bruts
+ *   historique/minute/2025-10-09.bin  agrégats par minute
+ *   historique/hour/2025-10-09.bin    agrégats par heure
+ *
+ * L'extension donne le format du segment (SegmentFormat) : les nouveaux
+ * segments utilisent le format configuré, les anciens restent lisibles ;
+ * les segments des jours terminés peuvent être réécrits compressés (.tsz).
+ * Le segment brut du jour J reçoit les lignes écrites ce jour-là ; une ligne
+ * légèrement en retard (horloge d'agent décalée) reste dans le segment courant.
+ * Pour chaque jour, les lectures utilisent le niveau le plus fin encore présent.
+ */
+public class HistorySegments {
+
+    // Niveaux de détail, du plus fin au plus grossier
+    public enum Tier {
+        RAW("raw", 1000),
+        MINUTE("minute", RollupStore.MINUTE),
+        HOUR("hour", RollupStore.HOUR);
+
+        final String directory;
+        final long bucketMs;
+
+        Tier(String directory, long bucketMs) {
+            this.directory = directory;
+            this.bucketMs = bucketMs;
+        }
+    }
+
+    public static final class Segment {
+        final Tier tier;
+        final LocalDate day;
+        final Path path;
+        final SegmentFormat format;
+        final long dayStart;
+        final long dayEnd;
+        // Index temporel (segments CSV), créé par le format à la première lecture
+        HistoryIndex index;
+        // Dictionnaire d'agents (segments binaires), chargé par le format à la première lecture
+        BinarySegmentFormat.AgentDictionary dictionary;
+
+        Segment(Tier tier, LocalDate day, Path path, SegmentFormat format, ZoneId zone) {
+            this.tier = tier;
+            this.day = day;
+            this.path = path;
+            this.format = format;
+            this.dayStart = day.atStartOfDay(zone).toInstant().toEpochMilli();
+            this.dayEnd = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+
+        @Override
+        public String toString() {
+            return tier.directory + "/" + day;
+        }
+    }
+
+    private final Path root;
+    private final SegmentFormat[] formats;
+    private final SegmentFormat newFormat;
+    private final CompressedSegmentFormat sealedFormat;
+    private final ZoneId zone = ZoneId.systemDefault();
+    // Segments de chaque jour, indexés par niveau
+    private final TreeMap<LocalDate, Segment[]> days = new TreeMap<>();
+
+    // formats : formats reconnus ; newFormat : format des segments créés ;
+    // sealedFormat : format des segments des jours terminés (null = pas de réécriture)
+    public HistorySegments(Path root, SegmentFormat[] formats, SegmentFormat newFormat, CompressedSegmentFormat sealedFormat) {
+        this.root = root;
+        this.formats = formats;
+        this.newFormat = newFormat;
+        this.sealedFormat = sealedFormat;
+    }
+
+    // Recense les segments présents sur disque
+    public synchronized void open() throws IOException {
+        for (Tier tier : Tier.values()) {
+            Path dir = root.resolve(tier.directory);
+            Files.createDirectories(dir);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    for (SegmentFormat format : formats) {
+                        if (!name.endsWith(format.extension())) continue;
+                        try {
+                            LocalDate day = LocalDate.parse(name.substring(0, name.length() - format.extension().length()));
+                            Segment segment = new Segment(tier, day, file, format, zone);
+                            Segment existing = get(tier, day);
+                            // Réécriture interrompue avant la suppression de l'original : même contenu, on garde la copie compressée
+                            if (existing != null && existing.format instanceof CompressedSegmentFormat) {
+                                deleteFiles(segment);
+                            } else {
+                                if (existing != null && segment.format instanceof CompressedSegmentFormat) deleteFiles(existing);
+                                register(segment);
+                            }
+                        } catch (DateTimeParseException e) {
+                            // Fichier étranger au stockage : ignoré
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Recopie l'ancien fichier unique dans des segments bruts journaliers (format
+     * des nouveaux segments), puis le supprime. Même règle que l'écrivain : une
+     * ligne en retard reste dans le jour courant.
+     */
+    public void migrate(Path legacyFile) throws IOException {
+        if (!Files.exists(legacyFile)) return;
+        System.out.println("Migration de " + legacyFile + " vers " + root.resolve(Tier.RAW.directory) + "...");
+        HistoryLineParser parser = new HistoryLineParser();
+        List<AgentData> batch = new ArrayList<>();
+        LocalDate current = null;
+        SegmentFormat.Appender out = null;
+        long lines = 0;
+        try (BufferedReader in = Files.newBufferedReader(legacyFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!parser.parse(line)) continue;
+                LocalDate day = dayOf(parser.getTime());
+                if (current == null || day.isAfter(current)) {
+                    if (out != null) {
+                        out.append(batch, 0, batch.size());
+                        batch.clear();
+                        out.close();
+                    }
+                    current = day;
+                    Segment segment = create(Tier.RAW, day);
+                    out = segment.format.openAppender(segment);
+                }
+                batch.add(new AgentData(parser.getAgentId(), parser.getCpu(), parser.getMemory(), parser.getDisk(),
+                        parser.getTime(), parser.isCritical()));
+                if (batch.size() == 4096) {
+                    out.append(batch, 0, batch.size());
+                    batch.clear();
+                }
+                lines++;
+            }
+            if (out != null) out.append(batch, 0, batch.size());
+        } finally {
+            if (out != null) out.close();
+        }
+        Files.delete(legacyFile);
+        Files.deleteIfExists(legacyFile.resolveSibling(legacyFile.getFileName() + ".idx"));
+        System.out.println("Migration terminée : " + lines + " lignes");
+    }
+
+    public LocalDate dayOf(long time) {
+        return Instant.ofEpochMilli(time).atZone(zone).toLocalDate();
+    }
+
+    public synchronized Segment get(Tier tier, LocalDate day) {
+        Segment[] segments = days.get(day);
+        return segments == null ? null : segments[tier.ordinal()];
+    }
+
+    // Déclare un segment (le fichier est créé par son premier écrivain)
+    public Segment create(Tier tier, LocalDate day) {
+        return create(tier, day, newFormat);
+    }
+
+    public synchronized Segment create(Tier tier, LocalDate day, SegmentFormat format) {
+        Segment existing = get(tier, day);
+        if (existing != null) return existing;
+        Segment segment = new Segment(tier, day, pathFor(tier, day, format), format, zone);
+        register(segment);
+        return segment;
+    }
+
+    // Fichier d'un nouveau segment (format configuré)
+    public Path pathFor(Tier tier, LocalDate day) {
+        return pathFor(tier, day, newFormat);
+    }
+
+    public Path pathFor(Tier tier, LocalDate day, SegmentFormat format) {
+        return root.resolve(tier.directory).resolve(day + format.extension());
+    }
+
+    // Segment non déclaré sur un fichier déjà écrit à pathFor(tier, day, format), pour le relire
+    public Segment detached(Tier tier, LocalDate day, SegmentFormat format) {
+        return new Segment(tier, day, pathFor(tier, day, format), format, zone);
+    }
+
+    public SegmentFormat getNewFormat() {
+        return newFormat;
+    }
+
+    // Format des segments des jours terminés, ou null s'ils gardent leur format
+    public CompressedSegmentFormat getSealedFormat() {
+        return sealedFormat;
+    }
+
+    /*
+     * Remplace un segment par sa copie dans un autre format (fichier déjà écrit
+     * à pathFor(tier, day, format)), puis supprime les fichiers de l'original.
+     */
+    public void replace(Segment segment, SegmentFormat format) throws IOException {
+        synchronized (this) {
+            Segment[] segments = days.get(segment.day);
+            if (segments == null || segments[segment.tier.ordinal()] != segment) return;
+            segments[segment.tier.ordinal()] = new Segment(segment.tier, segment.day,
+                    pathFor(segment.tier, segment.day, format), format, zone);
+        }
+        deleteFiles(segment);
+    }
+
+    // Retire un segment puis supprime ses fichiers
+    public void delete(Segment segment) throws IOException {
+        synchronized (this) {
+            Segment[] segments = days.get(segment.day);
+            if (segments == null || segments[segment.tier.ordinal()] != segment) return;
+            segments[segment.tier.ordinal()] = null;
+            if (segments[0] == null && segments[1] == null && segments[2] == null) days.remove(segment.day);
+        }
+        deleteFiles(segment);
+    }
+
+    private static void deleteFiles(Segment segment) throws IOException {
+        Files.deleteIfExists(segment.path);
+        // Fichiers annexes : index des segments CSV, dictionnaire des segments binaires
+        Files.deleteIfExists(segment.path.resolveSibling(segment.path.getFileName() + ".idx"));
+        Files.deleteIfExists(BinarySegmentFormat.dictionaryPath(segment.path));
+    }
+
+    // Dernier jour ayant un segment brut, ou null
+    public synchronized LocalDate lastRawDay() {
+        for (Map.Entry<LocalDate, Segment[]> entry : days.descendingMap().entrySet()) {
+            if (entry.getValue()[Tier.RAW.ordinal()] != null) return entry.getKey();
+        }
+        return null;
+    }
+
+    public synchronized List<Segment> list(Tier tier) {
+        List<Segment> result = new ArrayList<>();
+        for (Segment[] segments : days.values()) {
+            if (segments[tier.ordinal()] != null) result.add(segments[tier.ordinal()]);
+        }
+        return result;
+    }
+
+    /*
+     * Pour chaque jour pouvant contenir des lignes datées de [start, end],
+     * le segment du niveau le plus fin disponible (par jour croissant).
+     * Un segment peut contenir des lignes antérieures à son jour, de skewMs au plus
+     * (plus la taille d'un bucket pour les niveaux agrégés).
+     */
+    public synchronized List<Segment> select(long start, long end, long skewMs) {
+        List<Segment> result = new ArrayList<>();
+        for (Segment[] segments : days.values()) {
+            for (Segment segment : segments) {
+                if (segment == null) continue;
+                // Une ligne agrégée est datée du début de son bucket
+                if (segment.dayEnd > start && segment.dayStart - skewMs - segment.tier.bucketMs <= end) result.add(segment);
+                break;
+            }
+        }
+        return result;
+    }
+
+    private void register(Segment segment) {
+        days.computeIfAbsent(segment.day, d -> new Segment[Tier.values().length])[segment.tier.ordinal()] = segment;
+    }
+}
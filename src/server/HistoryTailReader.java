@@ -0,0 +1,124 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lecture de la fin du fichier d'historique, bloc par bloc, en remontant.
+ *
+ * Pour "les N derniers enregistrements", on part de la fin du fichier et on
+ * s'arrête dès que N lignes correspondent : le coût dépend de N (et de la
+ * fréquence de l'agent), pas de la taille du fichier. La mémoire utilisée est
+ * bornée par N lignes plus un bloc de lecture.
+ */
+public final class HistoryTailReader {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+    // Position de l'agentId dans une ligne ("yyyy-MM-dd HH:mm:ss," = 20 caractères ASCII)
+    private static final int AGENT_OFFSET = 20;
+
+    private HistoryTailReader() {
+    }
+
+    // Les maxRecords dernières lignes de l'agent (tous si null ou vide), dans l'ordre chronologique
+    public static List<String[]> readLast(Path file, String agentId, int maxRecords) throws IOException {
+        List<String> lines = readLastLines(file, agentId, maxRecords);
+        List<String[]> records = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            String[] parts = line.split(",");
+            // Les lignes agrégées ont des colonnes en plus : on garde le format historique
+            records.add(parts.length == 6 ? parts : Arrays.copyOf(parts, 6));
+        }
+        return records;
+    }
+
+    // Mêmes lignes, non découpées (à décoder par HistoryLineParser)
+    public static List<String> readLastLines(Path file, String agentId, int maxRecords) throws IOException {
+        ArrayDeque<String> records = new ArrayDeque<>(Math.max(16, Math.min(maxRecords, 4096)));
+        if (maxRecords <= 0 || !Files.exists(file)) {
+            return new ArrayList<>(records);
+        }
+        byte[] agentBytes = (agentId == null || agentId.isEmpty()) ? null : agentId.getBytes(StandardCharsets.UTF_8);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = channel.size();
+            ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+            byte[] bytes = block.array();
+            // Début de ligne laissé par le bloc suivant (déjà lu), à recoller devant sa fin
+            byte[] carry = new byte[0];
+
+            while (position > 0 && records.size() < maxRecords) {
+                int length = (int) Math.min(BLOCK_SIZE, position);
+                position -= length;
+                block.clear().limit(length);
+                while (block.hasRemaining()) {
+                    if (channel.read(block, position + block.position()) < 0) break;
+                }
+
+                int end = length;
+                for (int i = length - 1; i >= 0 && records.size() < maxRecords; i--) {
+                    if (bytes[i] != '\n') continue;
+                    if (end == length && carry.length > 0) {
+                        acceptLine(concat(bytes, i + 1, end, carry), 0, end - i - 1 + carry.length, agentBytes, records);
+                        carry = new byte[0];
+                    } else {
+                        acceptLine(bytes, i + 1, end - i - 1, agentBytes, records);
+                    }
+                    end = i;
+                }
+                if (records.size() >= maxRecords) break;
+                // Le début du bloc appartient à une ligne commencée plus haut dans le fichier
+                carry = (end == length) ? concat(bytes, 0, end, carry) : copy(bytes, 0, end);
+            }
+            if (position == 0 && carry.length > 0 && records.size() < maxRecords) {
+                acceptLine(carry, 0, carry.length, agentBytes, records);
+            }
+        }
+        return new ArrayList<>(records);
+    }
+
+    private static void acceptLine(byte[] bytes, int offset, int length, byte[] agentBytes, ArrayDeque<String> records) {
+        // Ligne vide (fin de fichier) ou pas le bon agent : on n'alloue rien
+        if (length <= 0 || !matchesAgent(bytes, offset, length, agentBytes)) return;
+        // Au moins six colonnes
+        int separators = 0;
+        for (int i = offset; i < offset + length && separators < 5; i++) {
+            if (bytes[i] == ',') separators++;
+        }
+        if (separators == 5) {
+            records.addFirst(new String(bytes, offset, length, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static boolean matchesAgent(byte[] bytes, int offset, int length, byte[] agentBytes) {
+        if (agentBytes == null) return true;
+        int end = AGENT_OFFSET + agentBytes.length;
+        if (length <= end || bytes[offset + end] != ',') return false;
+        for (int i = 0; i < agentBytes.length; i++) {
+            if (bytes[offset + AGENT_OFFSET + i] != agentBytes[i]) return false;
+        }
+        return true;
+    }
+
+    private static byte[] concat(byte[] head, int from, int to, byte[] tail) {
+        byte[] result = new byte[to - from + tail.length];
+        System.arraycopy(head, from, result, 0, to - from);
+        System.arraycopy(tail, 0, result, to - from, tail.length);
+        return result;
+    }
+
+    private static byte[] copy(byte[] bytes, int from, int to) {
+        byte[] result = new byte[to - from];
+        System.arraycopy(bytes, from, result, 0, to - from);
+        return result;
+    }
+}
@@ -0,0 +1,23 @@
+package server;
+
+/**
+ * Reçoit les enregistrements d'historique un par un, sous forme de valeurs
+ * primitives (aucun tableau ni objet par ligne).
+ */
+public interface HistoryVisitor {
+
+    // Retourne false pour interrompre le parcours
+    boolean visit(long time, String agentId, double cpu, double memory, double disk, boolean critical);
+
+    // Bucket agrégé de bucketMs (niveaux minute/heure) : sommes, minimums puis maximums.
+    // Par défaut, il est vu comme un échantillon moyen.
+    default boolean visitAggregate(long time, long bucketMs, String agentId, long count, long criticalCount, double[] values) {
+        return visit(time, agentId, values[0] / count, values[1] / count, values[2] / count, criticalCount > 0);
+    }
+
+    // Échantillon résumé par l'agent : moyennes, minimums puis maximums de son intervalle d'envoi.
+    // Par défaut, il est vu comme un bucket d'un seul échantillon (bucketMs = 0).
+    default boolean visitSummary(long time, String agentId, boolean critical, double[] values) {
+        return visitAggregate(time, 0, agentId, 1, critical ? 1 : 0, values);
+    }
+}
@@ -0,0 +1,273 @@
+package server;
+
+import common.AgentData;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Écrivain d'historique asynchrone avec écriture groupée (group commit).
+ *
+ * Les producteurs déposent les échantillons dans une file bornée ; un thread
+ * unique les écrit par lots dans le segment brut du jour, gardé ouvert
+ * (l'encodage dépend du format du segment, voir SegmentFormat).
+ * Un lot est écrit dès qu'il atteint batchSize ou que le plus ancien
+ * échantillon attend depuis flushDelayMs.
+ * Le segment change au premier échantillon daté d'un jour suivant.
+ */
+public class HistoryWriter {
+
+    // Élément factice déposé dans la file par flush() et close() (un par appel)
+    private static final class FlushMarker extends AgentData {
+        private static final long serialVersionUID = 1L;
+
+        // Lu et écrit sous le verrou de l'écrivain
+        boolean done;
+
+        FlushMarker() {
+            super("", 0, 0, 0, 0, false);
+        }
+    }
+
+    // Politique de durabilité : quand forcer les données sur disque (fsync)
+    public enum Durability {
+        NONE,       // jamais, le système d'exploitation décide
+        PERIODIC,   // au plus une fois par fsyncIntervalMs
+        PER_BATCH   // après chaque lot écrit
+    }
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final HistorySegments segments;
+    private final BlockingQueue<AgentData> queue;
+    private final int batchSize;
+    private final long flushDelayMs;
+    private final Durability durability;
+    private final long fsyncIntervalMs;
+
+    // Segment courant (modifiés par le thread d'écriture uniquement)
+    private volatile HistorySegments.Segment segment;
+    private SegmentFormat.Appender appender;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // État propre au thread d'écriture
+    private final List<AgentData> batch = new ArrayList<>();
+    private long lastFsync = System.currentTimeMillis();
+
+    // Nombre d'octets écrits dans le segment courant (vu par le thread d'écriture)
+    private volatile long writtenPosition;
+    // Marqueurs de flush rencontrés dans le lot en cours (thread d'écriture)
+    private final List<FlushMarker> pendingMarkers = new ArrayList<>();
+    // Vrai une fois le thread d'écriture terminé (plus aucun marqueur ne sera traité)
+    private boolean stopped;
+
+    public HistoryWriter(HistorySegments segments, int queueCapacity, int batchSize, long flushDelayMs,
+                         Durability durability, long fsyncIntervalMs) throws IOException {
+        this.segments = segments;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.flushDelayMs = Math.max(1, flushDelayMs);
+        this.durability = durability;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+
+        // Reprise sur le dernier segment brut s'il n'est pas antérieur à aujourd'hui
+        LocalDate today = LocalDate.now(ZONE);
+        LocalDate last = segments.lastRawDay();
+        openSegment(last != null && !last.isBefore(today) ? last : today);
+
+        this.thread = new Thread(this::run, "history-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // Dépose un échantillon ; ne bloque que si la file est pleine
+    public void append(AgentData data) {
+        if (queue.offer(data)) return;
+        try {
+            queue.put(data);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Attend que tout ce qui a été déposé jusqu'ici soit écrit (pour les lectures)
+    public void flush(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        FlushMarker marker = new FlushMarker();
+        try {
+            // Le marqueur réveille le thread d'écriture sans l'interrompre
+            // (une interruption pendant une écriture fermerait le FileChannel) ;
+            // on attend ce marqueur-là : un dépôt échoué ne décale pas les flush suivants
+            if (!queue.offer(marker, timeoutMs, TimeUnit.MILLISECONDS)) return;
+            synchronized (this) {
+                while (!marker.done && !stopped) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) return;
+                    wait(remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getWrittenPosition() {
+        return writtenPosition;
+    }
+
+    // Segment en cours d'écriture (les jours antérieurs ne reçoivent plus de lignes)
+    public HistorySegments.Segment getSegment() {
+        return segment;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    // Écrit ce qui reste en file puis ferme le fichier
+    public void close() {
+        running = false;
+        try {
+            queue.offer(new FlushMarker(), 1, TimeUnit.SECONDS);
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                collectBatch();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (!batch.isEmpty()) {
+                writeBatch();
+            }
+            if (!pendingMarkers.isEmpty()) {
+                synchronized (this) {
+                    for (FlushMarker marker : pendingMarkers) {
+                        marker.done = true;
+                    }
+                    notifyAll();
+                }
+                pendingMarkers.clear();
+            }
+        }
+        queue.drainTo(batch);
+        batch.removeIf(data -> data instanceof FlushMarker);
+        if (!batch.isEmpty()) {
+            writeBatch();
+        }
+        closeSegment();
+        synchronized (this) {
+            stopped = true;
+            notifyAll();
+        }
+    }
+
+    // Accumule jusqu'à batchSize échantillons ou jusqu'à l'expiration du délai ;
+    // un marqueur de flush termine le lot immédiatement
+    private void collectBatch() throws InterruptedException {
+        AgentData first = queue.poll(flushDelayMs, TimeUnit.MILLISECONDS);
+        if (first == null) return;
+        if (accept(first)) return;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushDelayMs);
+        while (batch.size() < batchSize) {
+            AgentData next = queue.poll();
+            if (next == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) break;
+                next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) break;
+            }
+            if (accept(next)) return;
+        }
+    }
+
+    // Ajoute l'élément au lot ; retourne vrai si c'est un marqueur de flush
+    private boolean accept(AgentData data) {
+        if (data instanceof FlushMarker) {
+            pendingMarkers.add((FlushMarker) data);
+            return true;
+        }
+        batch.add(data);
+        return false;
+    }
+
+    private void writeBatch() {
+        // Coupure au premier échantillon d'un jour suivant
+        // (pas au-delà du jour du serveur : une horloge d'agent en avance ne fait pas tourner les segments)
+        int from = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            long time = batch.get(i).getTimestamp().getTime();
+            if (time >= segment.dayEnd) {
+                LocalDate day = segments.dayOf(time);
+                if (!day.isAfter(LocalDate.now(ZONE))) {
+                    write(from, i);
+                    rotate(day);
+                    from = i;
+                }
+            }
+        }
+        write(from, batch.size());
+        batch.clear();
+
+        if (appender == null) return;
+        try {
+            long now = System.currentTimeMillis();
+            if (durability == Durability.PER_BATCH
+                    || (durability == Durability.PERIODIC && now - lastFsync >= fsyncIntervalMs)) {
+                appender.force();
+                lastFsync = now;
+            }
+        } catch (IOException e) {
+            System.err.println("Erreur sauvegarde historique: " + e.getMessage());
+        }
+    }
+
+    private void write(int from, int to) {
+        if (from >= to || appender == null) return;
+        try {
+            appender.append(batch, from, to);
+        } catch (IOException e) {
+            System.err.println("Erreur sauvegarde historique: " + e.getMessage());
+        }
+        writtenPosition = appender.position();
+    }
+
+    private void rotate(LocalDate day) {
+        closeSegment();
+        try {
+            openSegment(day);
+        } catch (IOException e) {
+            System.err.println("Erreur ouverture segment " + day + ": " + e.getMessage());
+        }
+    }
+
+    private void openSegment(LocalDate day) throws IOException {
+        HistorySegments.Segment next = segments.create(HistorySegments.Tier.RAW, day);
+        segment = next;
+        appender = next.format.openAppender(next);
+        writtenPosition = appender.position();
+    }
+
+    private void closeSegment() {
+        if (appender == null) return;
+        try {
+            if (durability != Durability.NONE) appender.force();
+        } catch (IOException e) {
+            System.err.println("Erreur fermeture historique: " + e.getMessage());
+        }
+        appender.close();
+        appender = null;
+    }
+}
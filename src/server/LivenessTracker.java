@@ -0,0 +1,236 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Suivi de la présence des agents par une roue temporelle hachée.
+ *
+ * Un échantillon ne fait qu'écrire la date de dernier contact de l'agent
+ * (O(1), sans verrou). Chaque agent est rangé dans la case de la roue où
+ * tombe son échéance ; à chaque pas, le thread de la roue ne visite que la
+ * case courante : un agent dont la date de contact a avancé y est replacé
+ * plus loin, les autres passent hors ligne. Aucun parcours de tous les agents.
+ *
+ * Les passages hors ligne et les retours sont signalés à un Listener, sous
+ * le verrou de l'agent (hors ligne depuis le thread de la roue, retour depuis
+ * le thread de l'échantillon). Avec un délai d'oubli, un agent resté hors
+ * ligne aussi longtemps reste dans la roue jusqu'à son oubli (removed) ; un
+ * échantillon ultérieur le fait réapparaître comme un nouvel agent.
+ */
+public class LivenessTracker {
+
+    public interface Listener {
+        void offline(String agentId, long lastSeen);
+
+        void online(String agentId, long offlineSince);
+
+        // Hors ligne depuis le délai d'oubli : l'agent n'est plus suivi
+        void removed(String agentId);
+    }
+
+    // Présence d'un agent ; les changements d'état se font sous son verrou
+    private static final class Entry {
+        final String agentId;
+        volatile long lastSeen;
+        volatile boolean offline;
+        long offlineSince;
+        boolean removed;
+        // Case de la roue où l'agent est rangé, -1 s'il n'y est pas (thread de la roue)
+        int slot = -1;
+
+        Entry(String agentId, long lastSeen) {
+            this.agentId = agentId;
+            this.lastSeen = lastSeen;
+        }
+    }
+
+    private final long timeoutMs;
+    private final long tickMs;
+    private final long evictMs;
+    private final List<Entry>[] wheel;
+    private final Listener listener;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Agents à (re)placer dans la roue : nouveaux ou revenus en ligne
+    private final ConcurrentLinkedQueue<Entry> pending = new ConcurrentLinkedQueue<>();
+    private long currentTick;
+    private Thread thread;
+
+    // evictMs : délai hors ligne avant d'oublier l'agent (0 = jamais)
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public LivenessTracker(long timeoutMs, long tickMs, int slots, long evictMs, Listener listener) {
+        this.timeoutMs = Math.max(1, timeoutMs);
+        this.tickMs = Math.max(1, tickMs);
+        this.evictMs = Math.max(0, evictMs);
+        this.listener = listener;
+        this.wheel = new List[Math.max(1, slots)];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new ArrayList<>();
+        }
+    }
+
+    public void start() {
+        currentTick = System.currentTimeMillis() / tickMs;
+        thread = new Thread(this::run, "liveness-wheel");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        if (thread != null) thread.interrupt();
+    }
+
+    // Contact d'un agent, daté par l'horloge du serveur (appelé par les workers de réception)
+    public void seen(String agentId, long time) {
+        Entry entry = entries.get(agentId);
+        if (entry == null) {
+            Entry created = new Entry(agentId, time);
+            entry = entries.putIfAbsent(agentId, created);
+            if (entry == null) {
+                pending.add(created);
+                return;
+            }
+        }
+        // Plusieurs workers : on garde la date la plus récente
+        if (time > entry.lastSeen) entry.lastSeen = time;
+        // Écriture de lastSeen puis lecture de offline : voir expire()
+        if (entry.offline) {
+            synchronized (entry) {
+                if (!entry.offline) return;
+                if (entry.removed) {
+                    // Oublié entre la lecture de la table et ce contact : suivi à nouveau
+                    entries.remove(agentId, entry);
+                    seen(agentId, time);
+                    return;
+                }
+                entry.offline = false;
+                // Sous le verrou : le retour est toujours signalé après le passage hors ligne
+                listener.online(agentId, entry.offlineSince);
+            }
+            pending.add(entry);
+        }
+    }
+
+    public boolean isOffline(String agentId) {
+        Entry entry = entries.get(agentId);
+        return entry != null && entry.offline;
+    }
+
+    public List<String> offlineAgents() {
+        List<String> offline = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.offline) offline.add(entry.agentId);
+        }
+        return offline;
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(tickMs);
+            } catch (InterruptedException e) {
+                break;
+            }
+            long now = System.currentTimeMillis();
+            Entry entry;
+            while ((entry = pending.poll()) != null) {
+                // Revenu en ligne pendant l'attente de son oubli : il quitte la case de son échéance d'oubli
+                if (entry.slot >= 0) wheel[entry.slot].remove(entry);
+                schedule(entry);
+            }
+            // Rattrape les pas manqués (pause du processus) sans refaire plus d'un tour
+            long target = now / tickMs;
+            long from = Math.max(currentTick + 1, target - wheel.length + 1);
+            for (long tick = from; tick <= target; tick++) {
+                advance(tick, now);
+            }
+            currentTick = target;
+        }
+    }
+
+    private void schedule(Entry entry) {
+        long tick = Math.max(currentTick + 1, (entry.lastSeen + timeoutMs) / tickMs + 1);
+        entry.slot = (int) (tick % wheel.length);
+        wheel[entry.slot].add(entry);
+    }
+
+    /*
+     * Visite la case du pas "tick" : les agents vus depuis sont replacés, les autres
+     * expirent ; les agents hors ligne (avec oubli) y attendent leur échéance d'oubli.
+     */
+    private void advance(long tick, long now) {
+        int index = (int) (tick % wheel.length);
+        List<Entry> slot = wheel[index];
+        int kept = 0;
+        for (int i = 0; i < slot.size(); i++) {
+            Entry entry = slot.get(i);
+            long due;
+            if (entry.offline) {
+                // Hors ligne : oublié à l'échéance (sinon revenu en ligne, replacé depuis "pending")
+                due = entry.offlineSince + evictMs;
+                if (due <= now) {
+                    evict(entry);
+                    entry.slot = -1;
+                    continue;
+                }
+            } else {
+                due = entry.lastSeen + timeoutMs;
+                if (due <= now) {
+                    if (!expire(entry, now)) {
+                        entry.slot = -1;
+                        pending.add(entry);
+                        continue;
+                    }
+                    if (evictMs == 0) {
+                        entry.slot = -1;
+                        continue;
+                    }
+                    due = entry.offlineSince + evictMs;
+                }
+            }
+            // Échéance au-delà d'un tour : l'agent revient dans cette case et sera revu
+            int next = (int) (Math.max(tick + 1, due / tickMs + 1) % wheel.length);
+            entry.slot = next;
+            if (next == index) {
+                slot.set(kept++, entry);
+            } else {
+                wheel[next].add(entry);
+            }
+        }
+        for (int i = slot.size() - 1; i >= kept; i--) {
+            slot.remove(i);
+        }
+    }
+
+    // Oublie un agent toujours hors ligne (un échantillon a pu le ramener entre-temps)
+    private void evict(Entry entry) {
+        synchronized (entry) {
+            if (!entry.offline) return;
+            entry.removed = true;
+            entries.remove(entry.agentId, entry);
+            listener.removed(entry.agentId);
+        }
+    }
+
+    /*
+     * Passe l'agent hors ligne ; faux si un échantillon est arrivé entre-temps.
+     * offline est écrit avant de relire lastSeen : un échantillon concurrent
+     * voit offline (et signale le retour) ou sa date est vue ici.
+     */
+    private boolean expire(Entry entry, long now) {
+        synchronized (entry) {
+            entry.offline = true;
+            long lastSeen = entry.lastSeen;
+            if (lastSeen + timeoutMs > now) {
+                entry.offline = false;
+                return false;
+            }
+            entry.offlineSince = now;
+            listener.offline(entry.agentId, lastSeen);
+            return true;
+        }
+    }
+}
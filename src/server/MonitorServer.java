@@ -1,36 +1,92 @@
 package server;
 
 import common.AgentData;
+import common.AlertEvent;
+import common.ChangeSet;
+import common.ExportStatus;
+import common.HistoryColumns;
+import common.HistoryPage;
+import common.MonitorListener;
 import common.MonitorService;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.InputStreamReader;
-import java.io.ObjectInputStream;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.io.IOException;
 import java.rmi.Naming;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.server.UnicastRemoteObject;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class MonitorServer extends UnicastRemoteObject implements MonitorService {
 
     // Stockage des données des agents (Thread-safe)
     private Map<String, AgentData> agentsMap = new ConcurrentHashMap<>();
-    private List<String> alertsLog = Collections.synchronizedList(new ArrayList<>());
+    // Versions des changements, pour les mises à jour incrémentales des clients
+    private final ChangeFeed changeFeed = new ChangeFeed(ServerConfig.getInt("changes.alertCapacity", 100));
+    // Clients abonnés aux changements poussés
+    private final SubscriptionManager subscriptions = new SubscriptionManager(changeFeed, agentsMap::get,
+            () -> new ArrayList<>(agentsMap.values()));
+    // Dernières alertes en mémoire (taille fixe) et journal complet sur disque
+    private final AlertRing alerts = new AlertRing(ServerConfig.getInt("alerts.memoryCapacity", 1024));
+    private final AlertJournal alertJournal = new AlertJournal(
+            Paths.get(ServerConfig.getString("alerts.dir", "alertes")),
+            ServerConfig.getInt("alerts.indexInterval", 256),
+            ServerConfig.getInt("alerts.retentionDays", 90));
+    // Règles d'alerte évaluées sur chaque échantillon reçu
+    private final AlertRuleEngine alertRules = new AlertRuleEngine(
+            AlertRuleEngine.load(Paths.get(ServerConfig.getString("alerts.rulesFile", "regles-alertes.properties"))),
+            this::publishAlert);
+    // Présence des agents : passage hors ligne et retour signalés comme alertes, oubli des agents disparus
+    private final LivenessTracker liveness = new LivenessTracker(
+            ServerConfig.getLong("liveness.offlineSec", 15) * 1000,
+            ServerConfig.getLong("liveness.tickMs", 1000),
+            ServerConfig.getInt("liveness.wheelSlots", 64),
+            ServerConfig.getLong("liveness.evictSec", 86400) * 1000,
+            new LivenessTracker.Listener() {
+                @Override
+                public void offline(String agentId, long lastSeen) {
+                    agentOffline(agentId, lastSeen);
+                }
+
+                @Override
+                public void online(String agentId, long offlineSince) {
+                    agentOnline(agentId, offlineSince);
+                }
+
+                @Override
+                public void removed(String agentId) {
+                    agentRemoved(agentId);
+                }
+            });
+    // Requêtes d'historique par curseur (lecture page par page)
+    private final HistoryCursors historyCursors = new HistoryCursors();
+    private final ExportJobs exportJobs = new ExportJobs();
+    private UdpIngestPipeline udpPipeline;
+    private TcpAlertListener tcpListener;
+    // Derniers échantillons de chaque agent, pour répondre sans lire le disque
+    private final RecentHistory recentHistory = new RecentHistory(
+            ServerConfig.getInt("recent.capacity", 1024),
+            ServerConfig.getLong("recent.maxMemoryMb", 64) * 1024 * 1024);
+    // Agrégats heure/jour (avec quantiles) pour les statistiques par période
+    private final RollupStore rollups = new RollupStore(
+            ServerConfig.getLong("rollup.hourRetentionDays", 14) * RollupStore.DAY,
+            ServerConfig.getLong("rollup.agentSketchHours", 6) * RollupStore.HOUR);
 
     private static final int UDP_PORT = 9876;
     private static final int TCP_PORT = 9877;
     private static final int RMI_PORT = 1099;
 
+    // Taille maximale d'une page d'historique des alertes
+    private static final int MAX_ALERT_PAGE = 1000;
+    // "Agent [id]: CPU Surcharge: 85.00% Mémoire Surcharge: 90.00% "
+    private static final Pattern ALERT_LINE = Pattern.compile("^Agent \\[(.*?)\\]: (.*)$");
+    private static final Pattern ALERT_METRIC = Pattern.compile("(CPU|Mémoire|Disque) Surcharge: (-?[0-9]+(?:[.,][0-9]+)?)%");
+
     public MonitorServer() throws RemoteException {
         super();
     }
@@ -43,16 +99,44 @@ public class MonitorServer extends UnicastRemoteObject implements MonitorService
     @Override
     public List<String> getAlerts() throws RemoteException {
         // Retourne les 10 dernières alertes
-        synchronized (alertsLog) {
-            int size = alertsLog.size();
-            if (size <= 10) return new ArrayList<>(alertsLog);
-            return new ArrayList<>(alertsLog.subList(size - 10, size));
+        List<String> messages = new ArrayList<>(10);
+        for (AlertEvent event : alerts.latest(10)) {
+            messages.add(event.toString());
         }
+        return messages;
+    }
+
+    @Override
+    public ChangeSet getChangesSince(long version) throws RemoteException {
+        return changeFeed.since(version, agentsMap::get, () -> new ArrayList<>(agentsMap.values()));
+    }
+
+    @Override
+    public List<String> getOfflineAgents() throws RemoteException {
+        return liveness.offlineAgents();
+    }
+
+    @Override
+    public boolean subscribe(MonitorListener listener) throws RemoteException {
+        return subscriptions.subscribe(listener);
+    }
+
+    @Override
+    public void unsubscribe(MonitorListener listener) throws RemoteException {
+        subscriptions.unsubscribe(listener);
+    }
+
+    @Override
+    public List<AlertEvent> getAlertHistory(String agentId, java.util.Date startDate, java.util.Date endDate, int offset, int limit) throws RemoteException {
+        long start = startDate == null ? Long.MIN_VALUE : startDate.getTime();
+        long end = endDate == null ? Long.MAX_VALUE : endDate.getTime();
+        return alertJournal.query(agentId, start, end, Math.max(0, offset), Math.min(limit, MAX_ALERT_PAGE));
     }
 
     @Override
     public List<String[]> getHistory(String agentId, int maxRecords) throws RemoteException {
-        return HistoryManager.getHistory(agentId, maxRecords);
+        List<String[]> recent = recentHistory.getHistory(agentId, maxRecords);
+        return recent != null ? recent : HistoryManager.getHistory(agentId, maxRecords);
     }
 
     @Override
@@ -60,72 +144,190 @@ public class MonitorServer extends UnicastRemoteObject implements MonitorService
         return HistoryManager.getHistoryByDate(agentId, startDate, endDate);
     }
 
+    @Override
+    public HistoryColumns getHistoryColumns(String agentId, int maxRecords) throws RemoteException {
+        HistoryColumns recent = recentHistory.getHistoryColumns(agentId, maxRecords);
+        return recent != null ? recent : HistoryManager.getHistoryColumns(agentId, maxRecords);
+    }
+
+    @Override
+    public HistoryColumns getHistoryColumnsByDate(String agentId, java.util.Date startDate, java.util.Date endDate) throws RemoteException {
+        return HistoryManager.getHistoryColumnsByDate(agentId, startDate, endDate);
+    }
+
+    @Override
+    public long openHistoryQuery(String agentId, java.util.Date startDate, java.util.Date endDate) throws RemoteException {
+        return historyCursors.open(agentId == null || agentId.isEmpty() ? null : agentId,
+                startDate == null ? Long.MIN_VALUE : startDate.getTime(),
+                endDate == null ? Long.MAX_VALUE : endDate.getTime());
+    }
+
+    @Override
+    public HistoryPage nextPage(long cursor, int pageSize) throws RemoteException {
+        return historyCursors.next(cursor, pageSize);
+    }
+
+    @Override
+    public void closeHistoryQuery(long cursor) throws RemoteException {
+        historyCursors.close(cursor);
+    }
+
+    @Override
+    public long startExport(String agentId, java.util.Date startDate, java.util.Date endDate, boolean columnar) throws RemoteException {
+        return exportJobs.start(agentId == null || agentId.isEmpty() ? null : agentId,
+                startDate == null ? Long.MIN_VALUE : startDate.getTime(),
+                endDate == null ? Long.MAX_VALUE : endDate.getTime(), columnar);
+    }
+
+    @Override
+    public ExportStatus getExportStatus(long job) throws RemoteException {
+        return exportJobs.status(job);
+    }
+
+    @Override
+    public byte[] readExport(long job, long offset, int length) throws RemoteException {
+        return exportJobs.read(job, offset, length);
+    }
+
+    @Override
+    public void deleteExport(long job) throws RemoteException {
+        exportJobs.delete(job);
+    }
+
     @Override
     public Map<String, Double> getStatistics(String agentId) throws RemoteException {
-        return HistoryManager.getStatistics(agentId);
+        Map<String, Double> recent = recentHistory.getStatistics(agentId, HistoryManager.STATISTICS_WINDOW);
+        return recent != null ? recent : HistoryManager.getStatistics(agentId);
     }
 
     @Override
     public Map<String, Double> getStatisticsByDate(String agentId, java.util.Date startDate, java.util.Date endDate) throws RemoteException {
-        return HistoryManager.getStatisticsByDate(agentId, startDate, endDate);
-    }
-
-    // Thread pour écouter les messages UDP (Mises à jour périodiques)
-    private void startUdpListener() {
-        new Thread(() -> {
-            try (DatagramSocket socket = new DatagramSocket(UDP_PORT)) {
-                System.out.println("Serveur UDP démarré sur le port " + UDP_PORT);
-                byte[] buffer = new byte[4096];
-
-                while (true) {
-                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                    socket.receive(packet);
-
-                    // Désérialisation de l'objet AgentData
-                    try (ByteArrayInputStream bis = new ByteArrayInputStream(packet.getData());
-                         ObjectInputStream ois = new ObjectInputStream(bis)) {
-                        
-                        AgentData data = (AgentData) ois.readObject();
-                        agentsMap.put(data.getAgentId(), data);
-                        // Sauvegarder dans l'historique
-                        HistoryManager.saveToHistory(data);
-                        System.out.println("UDP Reçu: " + data); // Debug
-                    } catch (Exception e) {
-                        System.err.println("Erreur lecture paquet UDP: " + e.getMessage());
-                    }
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }).start();
+        Map<String, Double> stats = rollups.getStatisticsByDate(agentId, startDate, endDate);
+        return stats != null ? stats : HistoryManager.getStatisticsByDate(agentId, startDate, endDate);
     }
 
-    // Thread pour écouter les messages TCP (Alertes critiques)
-    private void startTcpListener() {
-        new Thread(() -> {
-            try (ServerSocket serverSocket = new ServerSocket(TCP_PORT)) {
-                System.out.println("Serveur TCP (Alertes) démarré sur le port " + TCP_PORT);
+    // Démarre le pipeline de réception UDP (Mises à jour périodiques)
+    private void startUdpListener() throws Exception {
+        udpPipeline = new UdpIngestPipeline(UDP_PORT, this::ingest, HistoryManager::saveToHistory);
+        udpPipeline.start();
+    }
 
-                while (true) {
-                    Socket clientSocket = serverSocket.accept();
-                    new Thread(() -> handleTcpClient(clientSocket)).start();
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }).start();
+    /*
+     * Mise à jour de l'état en mémoire pour un échantillon reçu (appelé par les workers de décodage).
+     * Retourne l'échantillon à enregistrer dans l'historique, ou null pour l'ignorer.
+     */
+    AgentData ingest(AgentData data) {
+        if (data.isHeartbeat()) {
+            // Valeurs inchangées : le dernier échantillon connu, daté du battement
+            AgentData last = agentsMap.get(data.getAgentId());
+            if (last == null) return null; // agent inconnu (redémarrage du serveur) : attendre un échantillon complet
+            data = new AgentData(last.getAgentId(), last.getCpuUsage(), last.getMemoryUsage(), last.getDiskUsage(),
+                    data.getTimestamp().getTime(), false);
+        }
+        // Statut critique décidé par les règles du serveur (enregistré tel quel dans l'historique)
+        data.setCritical(alertRules.evaluate(data));
+        agentsMap.put(data.getAgentId(), data);
+        // Après la mise à jour de la carte : un retour en ligne y retrouve l'échantillon
+        liveness.seen(data.getAgentId(), System.currentTimeMillis());
+        changeFeed.agentUpdated(data.getAgentId());
+        subscriptions.signal();
+        recentHistory.add(data);
+        rollups.add(data);
+        return data;
     }
 
-    private void handleTcpClient(Socket socket) {
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
-            String alertMessage = in.readLine();
-            if (alertMessage != null) {
-                String log = "[ALERTE CRITIQUE] " + alertMessage + " à " + new java.util.Date();
-                System.out.println(log);
-                alertsLog.add(log);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+    // Agent sans contact (thread de la roue de présence)
+    private void agentOffline(String agentId, long lastSeen) {
+        long now = System.currentTimeMillis();
+        agentsMap.computeIfPresent(agentId, (id, current) -> withOffline(current, true));
+        changeFeed.agentUpdated(agentId);
+        subscriptions.signal();
+        long silentSec = (now - lastSeen) / 1000;
+        publishAlert(new AlertEvent(agentId, AlertEvent.Metric.LIVENESS, silentSec, AlertEvent.Severity.CRITICAL, now,
+                "Agent hors ligne (aucune donnée depuis " + silentSec + " s)"));
+    }
+
+    // Agent de nouveau joignable (worker de réception, échantillon déjà dans la carte)
+    private void agentOnline(String agentId, long offlineSince) {
+        long now = System.currentTimeMillis();
+        agentsMap.computeIfPresent(agentId, (id, current) -> withOffline(current, false));
+        long offlineSec = (now - offlineSince) / 1000;
+        publishAlert(new AlertEvent(agentId, AlertEvent.Metric.LIVENESS, offlineSec, AlertEvent.Severity.WARNING, now,
+                "Agent de nouveau en ligne (hors ligne pendant " + offlineSec + " s)"));
+    }
+
+    // Agent hors ligne depuis liveness.evictSec (thread de la roue) : retiré de la vue des clients
+    private void agentRemoved(String agentId) {
+        // Un échantillon arrivé entre-temps (agent de nouveau en ligne) garde l'agent
+        boolean[] removed = new boolean[1];
+        agentsMap.computeIfPresent(agentId, (id, current) -> {
+            removed[0] = current.isOffline();
+            return removed[0] ? null : current;
+        });
+        if (!removed[0]) return;
+        changeFeed.agentRemoved(agentId);
+        subscriptions.signal();
+        System.out.println("Agent " + agentId + " retiré (hors ligne depuis trop longtemps)");
+    }
+
+    // Copie de l'échantillon avec l'état de présence (les échantillons publiés ne sont pas modifiés)
+    private static AgentData withOffline(AgentData data, boolean offline) {
+        if (data.isOffline() == offline) return data;
+        AgentData copy = new AgentData(data.getAgentId(), data.getCpuUsage(), data.getMemoryUsage(), data.getDiskUsage(),
+                data.getTimestamp().getTime(), data.isCritical());
+        copy.setOffline(offline);
+        return copy;
+    }
+
+    // Réception des alertes TCP (Alertes critiques) sur une boucle NIO unique
+    private void startTcpListener() throws Exception {
+        tcpListener = new TcpAlertListener(TCP_PORT, this::recordAlert);
+        tcpListener.start();
+    }
+
+    // Enregistre une alerte reçue d'un ancien agent (appelé par la boucle TCP)
+    void recordAlert(String alertMessage) {
+        for (AlertEvent event : parseAlert(alertMessage, System.currentTimeMillis())) {
+            publishAlert(event);
+        }
+    }
+
+    // Alerte déclenchée par une règle ou reçue en TCP : mémoire, clients, journal
+    private void publishAlert(AlertEvent event) {
+        System.out.println(event);
+        alerts.add(event);
+        changeFeed.alertAdded(event);
+        subscriptions.signal();
+        alertJournal.append(event);
+    }
+
+    // Une alerte par métrique en dépassement ; un texte non reconnu est gardé tel quel
+    static List<AlertEvent> parseAlert(String line, long time) {
+        List<AlertEvent> events = new ArrayList<>(1);
+        String agentId = "";
+        String message = line.trim();
+        Matcher header = ALERT_LINE.matcher(message);
+        if (header.matches()) {
+            agentId = header.group(1);
+            message = header.group(2).trim();
+        }
+        Matcher metric = ALERT_METRIC.matcher(message);
+        while (metric.find()) {
+            AlertEvent.Metric kind = "CPU".equals(metric.group(1)) ? AlertEvent.Metric.CPU
+                    : "Mémoire".equals(metric.group(1)) ? AlertEvent.Metric.MEMORY : AlertEvent.Metric.DISK;
+            double value = Double.parseDouble(metric.group(2).replace(',', '.'));
+            events.add(new AlertEvent(agentId, kind, value, AlertEvent.Severity.CRITICAL, time, metric.group()));
+        }
+        if (events.isEmpty()) {
+            events.add(new AlertEvent(agentId, AlertEvent.Metric.OTHER, Double.NaN, AlertEvent.Severity.CRITICAL, time, message));
+        }
+        return events;
+    }
+
+    // Recharge en mémoire les dernières alertes du journal (redémarrage)
+    private void restoreAlerts() {
+        for (AlertEvent event : alertJournal.readLast(ServerConfig.getInt("alerts.memoryCapacity", 1024))) {
+            alerts.add(event);
         }
     }
 
@@ -149,16 +351,36 @@ public class MonitorServer extends UnicastRemoteObject implements MonitorService
                 System.out.println("Registre RMI déjà existant ou erreur: " + e.getMessage());
             }
 
+            // Ouvrir l'historique (segments journaliers, compactage en arrière-plan) ; sans lui, pas de serveur
+            try {
+                HistoryManager.init();
+            } catch (IOException e) {
+                System.err.println("Historique inaccessible, arrêt du serveur: " + e.getMessage());
+                System.exit(1);
+            }
+
             MonitorServer server = new MonitorServer();
             
             // Lier l'objet distant
             Naming.rebind("rmi://localhost:" + RMI_PORT + "/MonitorService", server);
             System.out.println("Service RMI 'MonitorService' enregistré.");
 
+            // Reconstruire les agrégats depuis l'historique (la suite arrivera par le pipeline UDP) ;
+            // le compactage ne démarre qu'une fois cette lecture terminée
+            server.rollups.startBackfill(HistoryManager.currentPosition(), HistoryManager::backfillFinished);
+
+            // Dernières alertes d'avant le redémarrage
+            server.restoreAlerts();
+
             // Démarrer les écoutes réseau
+            server.liveness.start();
             server.startUdpListener();
             server.startTcpListener();
 
+            // Vider la file d'écriture de l'historique à l'arrêt
+            Runtime.getRuntime().addShutdownHook(new Thread(HistoryManager::shutdown, "history-shutdown"));
+            Runtime.getRuntime().addShutdownHook(new Thread(server.alertJournal::close, "alerts-shutdown"));
+
             System.out.println("Serveur prêt et en attente...");
 
         } catch (Exception e) {
@@ -0,0 +1,87 @@
+package server;
+
+import java.util.Arrays;
+
+/**
+ * Esquisse de quantiles pour CPU, mémoire et disque : histogramme à buckets
+ * logarithmiques de taille fixe (erreur relative d'environ 2 %).
+ *
+ * Le bucket i > 0 couvre ]MIN_VALUE * GAMMA^(i-1), MIN_VALUE * GAMMA^i] ;
+ * le bucket 0 reçoit les valeurs inférieures à MIN_VALUE et le dernier celles
+ * qui dépassent la plage. Deux esquisses se fusionnent en additionnant leurs
+ * compteurs. Non thread-safe : l'appelant synchronise.
+ */
+public class QuantileSketch {
+
+    static final double RELATIVE_ACCURACY = 0.02;
+    static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    static final double MIN_VALUE = 0.1;
+    // Couvre jusqu'à un peu plus de 100 %
+    static final int BINS = 2 + (int) Math.ceil(Math.log(100.0 / MIN_VALUE) / Math.log(GAMMA));
+
+    static final int CPU = 0;
+    static final int MEMORY = 1;
+    static final int DISK = 2;
+
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    // Compteurs des trois métriques à la suite (cpu, mémoire, disque) ; en long :
+    // un mois de buckets de la flotte dépasse largement Integer.MAX_VALUE
+    private final long[] counts = new long[3 * BINS];
+
+    public void add(double cpu, double memory, double disk) {
+        add(cpu, memory, disk, 1);
+    }
+
+    // Ajoute "weight" occurrences des trois valeurs
+    public void add(double cpu, double memory, double disk, long weight) {
+        if (weight <= 0) return;
+        counts[binOf(cpu)] += weight;
+        counts[BINS + binOf(memory)] += weight;
+        counts[2 * BINS + binOf(disk)] += weight;
+    }
+
+    public void merge(QuantileSketch other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+    }
+
+    /*
+     * Estimation du quantile q (0..1) de la métrique donnée (CPU, MEMORY, DISK) :
+     * milieu du bucket contenant le rang visé, ou NaN si l'esquisse est vide.
+     */
+    public double quantile(int metric, double q) {
+        int offset = metric * BINS;
+        long total = 0;
+        for (int i = 0; i < BINS; i++) {
+            total += counts[offset + i];
+        }
+        if (total == 0) return Double.NaN;
+
+        long rank = (long) Math.ceil(q * total);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < BINS; i++) {
+            seen += counts[offset + i];
+            if (seen >= rank) return valueOf(i);
+        }
+        return valueOf(BINS - 1);
+    }
+
+    private static int binOf(double value) {
+        if (!(value > MIN_VALUE)) return 0; // aussi NaN
+        int bin = (int) Math.ceil(Math.log(value / MIN_VALUE) / LOG_GAMMA);
+        return Math.min(bin, BINS - 1);
+    }
+
+    // Valeur représentative d'un bucket (erreur relative au plus RELATIVE_ACCURACY)
+    private static double valueOf(int bin) {
+        if (bin == 0) return 0.0;
+        return MIN_VALUE * Math.pow(GAMMA, bin) * 2 / (1 + GAMMA);
+    }
+}
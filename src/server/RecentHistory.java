@@ -0,0 +1,162 @@
+package server;
+
+import common.AgentData;
+import common.HistoryColumns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Historique récent de chaque agent, gardé en mémoire dans un AgentRingBuffer.
+ *
+ * Les demandes d'historique et de statistiques portant sur les derniers
+ * échantillons sont servies sans lire le disque ; les méthodes retournent
+ * null quand la mémoire ne couvre pas toute la demande (repli sur le fichier).
+ */
+public class RecentHistory {
+
+    private final int capacity;
+    private final int maxAgents;
+    // Tout échantillon postérieur au démarrage est en mémoire (tant qu'aucun agent n'est refusé)
+    private final long startTime = System.currentTimeMillis();
+    private final Map<String, AgentRingBuffer> buffers = new ConcurrentHashMap<>();
+    private volatile boolean agentsRefused;
+
+    public RecentHistory(int capacity, long maxBytes) {
+        this.capacity = Math.max(1, capacity);
+        this.maxAgents = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / AgentRingBuffer.bytesFor(this.capacity)));
+    }
+
+    public void add(AgentData data) {
+        AgentRingBuffer ring = buffers.get(data.getAgentId());
+        if (ring == null) {
+            if (buffers.size() >= maxAgents) {
+                if (!agentsRefused) {
+                    agentsRefused = true;
+                    System.err.println("Historique mémoire plein (" + maxAgents + " agents) : les nouveaux agents seront lus sur disque");
+                }
+                return;
+            }
+            ring = buffers.computeIfAbsent(data.getAgentId(), id -> new AgentRingBuffer(id, capacity));
+        }
+        ring.add(data);
+    }
+
+    // Les maxRecords derniers enregistrements, ou null si la mémoire ne suffit pas
+    public List<String[]> getHistory(String agentId, int maxRecords) {
+        if (agentId != null && !agentId.isEmpty()) {
+            AgentRingBuffer ring = buffers.get(agentId);
+            if (ring == null || ring.size() < maxRecords) return null;
+            List<String[]> records = new ArrayList<>(maxRecords);
+            ring.appendRecords(maxRecords, records);
+            return records;
+        }
+
+        List<AgentRingBuffer.Snapshot> selected = new ArrayList<>();
+        int[] counts = selectLatest(maxRecords, selected);
+        if (counts == null) return null;
+        List<String[]> records = new ArrayList<>(maxRecords);
+        for (int s = 0; s < selected.size(); s++) {
+            AgentRingBuffer.Snapshot snap = selected.get(s);
+            for (int i = snap.times.length - counts[s]; i < snap.times.length; i++) {
+                records.add(snap.toRecord(i));
+            }
+        }
+        // Ordre chronologique global, comme dans le fichier
+        records.sort((a, b) -> a[0].compareTo(b[0]));
+        return records;
+    }
+
+    // Les maxRecords derniers enregistrements en colonnes, ou null si la mémoire ne suffit pas
+    public HistoryColumns getHistoryColumns(String agentId, int maxRecords) {
+        if (agentId != null && !agentId.isEmpty()) {
+            AgentRingBuffer ring = buffers.get(agentId);
+            if (ring == null || ring.size() < maxRecords) return null;
+            HistoryColumns columns = new HistoryColumns(maxRecords);
+            ring.appendColumns(maxRecords, columns);
+            return columns;
+        }
+
+        List<AgentRingBuffer.Snapshot> selected = new ArrayList<>();
+        int[] counts = selectLatest(maxRecords, selected);
+        if (counts == null) return null;
+        HistoryColumns columns = new HistoryColumns(maxRecords);
+        for (int s = 0; s < selected.size(); s++) {
+            AgentRingBuffer.Snapshot snap = selected.get(s);
+            snap.appendColumns(snap.times.length - counts[s], columns);
+        }
+        columns.sortByTime();
+        return columns;
+    }
+
+    // Statistiques des "window" derniers enregistrements, ou null si la mémoire ne suffit pas
+    public Map<String, Double> getStatistics(String agentId, int window) {
+        StatsAccumulator stats = new StatsAccumulator();
+        if (agentId != null && !agentId.isEmpty()) {
+            AgentRingBuffer ring = buffers.get(agentId);
+            if (ring == null || ring.size() < window) return null;
+            ring.accumulate(window, stats);
+            return stats.toMap();
+        }
+
+        List<AgentRingBuffer.Snapshot> selected = new ArrayList<>();
+        int[] counts = selectLatest(window, selected);
+        if (counts == null) return null;
+        for (int s = 0; s < selected.size(); s++) {
+            AgentRingBuffer.Snapshot snap = selected.get(s);
+            snap.accumulate(snap.times.length - counts[s], stats);
+        }
+        return stats.toMap();
+    }
+
+    /*
+     * Sélectionne les n échantillons les plus récents tous agents confondus
+     * (fusion des anneaux par date décroissante). Retourne, pour chaque copie
+     * ajoutée à "selected", combien de ses derniers échantillons sont retenus ;
+     * null si le résultat pourrait dépendre d'échantillons absents de la mémoire.
+     */
+    private int[] selectLatest(int n, List<AgentRingBuffer.Snapshot> selected) {
+        if (agentsRefused) return null;
+
+        long bound = startTime;
+        List<AgentRingBuffer.Snapshot> snapshots = new ArrayList<>(buffers.size());
+        for (AgentRingBuffer ring : buffers.values()) {
+            AgentRingBuffer.Snapshot snap = ring.snapshot(n);
+            bound = Math.max(bound, snap.coverageStart);
+            if (snap.times.length > 0) snapshots.add(snap);
+        }
+
+        int[] counts = new int[snapshots.size()];
+        PriorityQueue<Integer> heap = new PriorityQueue<>(Math.max(1, snapshots.size()), (a, b) ->
+            Long.compare(newest(snapshots.get(b), counts[b]), newest(snapshots.get(a), counts[a])));
+        for (int s = 0; s < snapshots.size(); s++) heap.add(s);
+
+        long oldestSelected = Long.MAX_VALUE;
+        int taken = 0;
+        while (taken < n && !heap.isEmpty()) {
+            int s = heap.poll();
+            oldestSelected = newest(snapshots.get(s), counts[s]);
+            counts[s]++;
+            taken++;
+            if (counts[s] < snapshots.get(s).times.length) heap.add(s);
+        }
+
+        // Un échantillon plus ancien que "bound" pourrait manquer en mémoire
+        if (taken < n || oldestSelected < bound) return null;
+
+        int[] result = new int[snapshots.size()];
+        for (int s = 0; s < snapshots.size(); s++) {
+            selected.add(snapshots.get(s));
+            result[s] = counts[s];
+        }
+        return result;
+    }
+
+    // Date du prochain échantillon à prendre dans une copie (le plus récent non retenu)
+    private static long newest(AgentRingBuffer.Snapshot snap, int taken) {
+        return snap.times[snap.times.length - 1 - taken];
+    }
+}
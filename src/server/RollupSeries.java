@@ -0,0 +1,288 @@
+package server;
+
+import common.AgentData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Agrégats d'une série (un agent ou toute la flotte) à une résolution donnée.
+ *
+ * Un bucket par intervalle de bucketMs, rangés par date de début dans des
+ * tableaux primitifs : nombre, alertes critiques, et 9 valeurs par bucket
+ * (sommes, minimums, maximums de cpu/mémoire/disque), et si demandé une
+ * QuantileSketch par bucket (environ 4 Ko chacune).
+ * Les buckets plus anciens que la rétention sont supprimés au fil de l'eau ;
+ * les esquisses peuvent l'être plus tôt (sketchRetentionMs), le bucket gardant
+ * alors ses moyennes pour l'estimation des quantiles.
+ * Non thread-safe : l'appelant synchronise.
+ */
+public class RollupSeries {
+
+    static final int FIELDS = 9;
+
+    private final long bucketMs;
+    private final long retentionMs;
+    private final long sketchRetentionMs; // 0 : esquisse gardée avec son bucket
+
+    private long[] starts = new long[16];
+    private long[] counts = new long[16];
+    private long[] criticals = new long[16];
+    private double[] values = new double[16 * FIELDS];
+    private QuantileSketch[] sketches; // null sans esquisses
+    // Les buckets commençant avant cette date n'ont plus d'esquisse
+    private long sketchesBefore = Long.MIN_VALUE;
+    private int head;   // premier bucket valide
+    private int size;   // nombre de buckets valides
+
+    // Les buckets commençant avant cette date ont été supprimés
+    private long prunedBefore = Long.MIN_VALUE;
+
+    public RollupSeries(long bucketMs, long retentionMs) {
+        this.bucketMs = bucketMs;
+        this.retentionMs = retentionMs;
+        this.sketchRetentionMs = 0;
+    }
+
+    // Avec une esquisse par bucket, supprimée sketchRetentionMs après le début du dernier bucket (0 = jamais)
+    public RollupSeries(long bucketMs, long retentionMs, long sketchRetentionMs) {
+        this.bucketMs = bucketMs;
+        this.retentionMs = retentionMs;
+        this.sketchRetentionMs = sketchRetentionMs;
+        this.sketches = new QuantileSketch[16];
+    }
+
+    public long getBucketMs() {
+        return bucketMs;
+    }
+
+    public long getPrunedBefore() {
+        return prunedBefore;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long firstStart() {
+        return starts[head];
+    }
+
+    public long lastStart() {
+        return starts[head + size - 1];
+    }
+
+    public void add(long time, double cpu, double memory, double disk, boolean critical) {
+        int i = bucketFor(time);
+        if (i < 0) return;
+
+        counts[i]++;
+        if (critical) criticals[i]++;
+        int o = i * FIELDS;
+        values[o] += cpu;
+        values[o + 1] += memory;
+        values[o + 2] += disk;
+        values[o + 3] = Math.min(values[o + 3], cpu);
+        values[o + 4] = Math.min(values[o + 4], memory);
+        values[o + 5] = Math.min(values[o + 5], disk);
+        values[o + 6] = Math.max(values[o + 6], cpu);
+        values[o + 7] = Math.max(values[o + 7], memory);
+        values[o + 8] = Math.max(values[o + 8], disk);
+        if (sketches != null && sketches[i] != null) sketches[i].add(cpu, memory, disk);
+    }
+
+    // Ajoute un bucket déjà agrégé (sommes, minimums, maximums) d'une résolution plus fine ou égale
+    public void addBucket(long time, long count, long criticalCount, double[] bucket) {
+        int i = bucketFor(time);
+        if (i < 0) return;
+
+        counts[i] += count;
+        criticals[i] += criticalCount;
+        int o = i * FIELDS;
+        for (int f = 0; f < 3; f++) {
+            values[o + f] += bucket[f];
+            values[o + 3 + f] = Math.min(values[o + 3 + f], bucket[3 + f]);
+            values[o + 6 + f] = Math.max(values[o + 6 + f], bucket[6 + f]);
+        }
+        // Sans les échantillons, les moyennes du bucket représentent ses quantiles
+        if (sketches != null && sketches[i] != null && count > 0) {
+            sketches[i].add(bucket[0] / count, bucket[1] / count, bucket[2] / count, count);
+        }
+    }
+
+    // Valeurs d'un échantillon au format d'un bucket d'un échantillon (moyennes, minimums, maximums)
+    public static void sampleValues(AgentData data, double[] out) {
+        out[0] = data.getCpuUsage();
+        out[1] = data.getMemoryUsage();
+        out[2] = data.getDiskUsage();
+        for (int f = 0; f < 3; f++) {
+            out[3 + f] = data.getSummary(AgentData.SUMMARY_MIN, f);
+            out[6 + f] = data.getSummary(AgentData.SUMMARY_MAX, f);
+        }
+    }
+
+    // Nombre de buckets et accès par rang (0 = le plus ancien), pour l'écriture des niveaux agrégés
+    public int size() {
+        return size;
+    }
+
+    public long bucketStart(int k) {
+        return starts[head + k];
+    }
+
+    public long bucketCount(int k) {
+        return counts[head + k];
+    }
+
+    public long bucketCritical(int k) {
+        return criticals[head + k];
+    }
+
+    // Copie les 9 valeurs du bucket dans "out"
+    public void bucketValues(int k, double[] out) {
+        System.arraycopy(values, (head + k) * FIELDS, out, 0, FIELDS);
+    }
+
+    // Indice du bucket contenant "time" (créé si besoin), ou -1 s'il a été supprimé
+    private int bucketFor(long time) {
+        long start = Math.floorDiv(time, bucketMs) * bucketMs;
+        if (start < prunedBefore) return -1;
+
+        int i;
+        if (size > 0 && starts[head + size - 1] == start) {
+            i = head + size - 1; // cas courant : bucket en cours
+        } else if (size == 0 || start > starts[head + size - 1]) {
+            i = append(start);
+            // La suppression n'avance que "head" : l'indice reste valide
+            if (retentionMs > 0) pruneBefore(start - retentionMs);
+            if (sketches != null && sketchRetentionMs > 0) dropSketchesBefore(start - sketchRetentionMs);
+        } else {
+            i = Arrays.binarySearch(starts, head, head + size, start);
+            if (i < 0) i = insert(-i - 1, start);
+        }
+        return i;
+    }
+
+    // Ajoute aux statistiques les buckets dont le début est dans [fromStart, toStart[
+    public void accumulate(long fromStart, long toStart, StatsAccumulator stats) {
+        int i = Arrays.binarySearch(starts, head, head + size, fromStart);
+        if (i < 0) i = -i - 1;
+        for (int end = head + size; i < end && starts[i] < toStart; i++) {
+            stats.mergeBucket(counts[i], criticals[i], values, i * FIELDS, sketches != null ? sketches[i] : null);
+        }
+    }
+
+    public void pruneBefore(long time) {
+        long limit = Math.floorDiv(time, bucketMs) * bucketMs;
+        if (limit <= prunedBefore) return;
+        while (size > 0 && starts[head] < limit) {
+            if (sketches != null) sketches[head] = null;
+            head++;
+            size--;
+        }
+        if (size == 0) head = 0;
+        prunedBefore = limit;
+    }
+
+    private void dropSketchesBefore(long time) {
+        long limit = Math.floorDiv(time, bucketMs) * bucketMs;
+        if (limit <= sketchesBefore) return;
+        sketchesBefore = limit;
+        int end = Arrays.binarySearch(starts, head, head + size, limit);
+        if (end < 0) end = -end - 1;
+        // Les buckets plus anciens n'ont déjà plus d'esquisse
+        for (int i = end - 1; i >= head && sketches[i] != null; i--) {
+            sketches[i] = null;
+        }
+    }
+
+    // Parcourt les buckets de plusieurs séries (une par agent) par date croissante
+    static boolean visitMerged(Map<String, RollupSeries> series, HistoryVisitor visitor) {
+        List<String> agents = new ArrayList<>(series.keySet());
+        List<RollupSeries> list = new ArrayList<>(series.values());
+        int[] next = new int[list.size()];
+        PriorityQueue<Integer> heap = new PriorityQueue<>(Math.max(1, list.size()), (a, b) -> {
+            int c = Long.compare(list.get(a).bucketStart(next[a]), list.get(b).bucketStart(next[b]));
+            return c != 0 ? c : Integer.compare(a, b);
+        });
+        for (int s = 0; s < list.size(); s++) {
+            if (list.get(s).size() > 0) heap.add(s);
+        }
+
+        double[] values = new double[FIELDS];
+        while (!heap.isEmpty()) {
+            int s = heap.poll();
+            RollupSeries rollup = list.get(s);
+            int k = next[s];
+            rollup.bucketValues(k, values);
+            if (!visitor.visitAggregate(rollup.bucketStart(k), rollup.bucketMs, agents.get(s),
+                    rollup.bucketCount(k), rollup.bucketCritical(k), values)) {
+                return false;
+            }
+            next[s]++;
+            if (next[s] < rollup.size()) heap.add(s);
+        }
+        return true;
+    }
+
+    private int append(long start) {
+        ensureCapacity();
+        int i = head + size;
+        initBucket(i, start);
+        size++;
+        return i;
+    }
+
+    private int insert(int position, long start) {
+        int offset = position - head;
+        ensureCapacity();
+        position = head + offset;
+        int tail = head + size - position;
+        System.arraycopy(starts, position, starts, position + 1, tail);
+        System.arraycopy(counts, position, counts, position + 1, tail);
+        System.arraycopy(criticals, position, criticals, position + 1, tail);
+        System.arraycopy(values, position * FIELDS, values, (position + 1) * FIELDS, tail * FIELDS);
+        if (sketches != null) System.arraycopy(sketches, position, sketches, position + 1, tail);
+        initBucket(position, start);
+        size++;
+        return position;
+    }
+
+    // Garantit une case libre après le dernier bucket (compaction ou agrandissement)
+    private void ensureCapacity() {
+        if (head + size < starts.length) return;
+        if (head > 0 && size < starts.length / 2) {
+            System.arraycopy(starts, head, starts, 0, size);
+            System.arraycopy(counts, head, counts, 0, size);
+            System.arraycopy(criticals, head, criticals, 0, size);
+            System.arraycopy(values, head * FIELDS, values, 0, size * FIELDS);
+            if (sketches != null) {
+                System.arraycopy(sketches, head, sketches, 0, size);
+                Arrays.fill(sketches, size, sketches.length, null);
+            }
+            head = 0;
+            return;
+        }
+        int capacity = starts.length * 2;
+        starts = Arrays.copyOf(starts, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        criticals = Arrays.copyOf(criticals, capacity);
+        values = Arrays.copyOf(values, capacity * FIELDS);
+        if (sketches != null) sketches = Arrays.copyOf(sketches, capacity);
+    }
+
+    private void initBucket(int i, long start) {
+        starts[i] = start;
+        counts[i] = 0;
+        criticals[i] = 0;
+        int o = i * FIELDS;
+        values[o] = values[o + 1] = values[o + 2] = 0;
+        values[o + 3] = values[o + 4] = values[o + 5] = Double.POSITIVE_INFINITY;
+        values[o + 6] = values[o + 7] = values[o + 8] = Double.NEGATIVE_INFINITY;
+        // Toujours une nouvelle esquisse : après un décalage, la case peut encore référencer sa voisine
+        if (sketches != null) sketches[i] = start >= sketchesBefore ? new QuantileSketch() : null;
+    }
+}
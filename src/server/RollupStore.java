@@ -0,0 +1,199 @@
+package server;
+
+import common.AgentData;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Agrégats par heure et par jour de chaque agent et de toute la flotte, avec
+ * des esquisses de quantiles, mis à jour à chaque échantillon reçu.
+ *
+ * Mémoire des esquisses (environ 4 Ko chacune) : la flotte en a une par heure
+ * gardée et une par jour (environ 1,5 Mo par an) ; un agent n'en a que pour ses
+ * agentSketchMs dernières heures (rollup.agentSketchHours, 6 par défaut :
+ * environ 25 Ko par agent, 250 Mo pour 10 000 agents). Au-delà, les quantiles
+ * d'un agent sont estimés à partir des moyennes horaires.
+ *
+ * Une statistique sur une période se calcule en combinant les plus gros
+ * buckets entièrement inclus ; seuls les bords (moins d'une heure de chaque
+ * côté) sont relus dans l'historique, pour des quantiles exacts à l'esquisse près.
+ * Au démarrage, les agrégats sont reconstruits depuis le fichier en tâche de
+ * fond ; d'ici là les méthodes retournent null (repli sur le fichier).
+ */
+public class RollupStore {
+
+    static final long MINUTE = 60_000L;
+    static final long HOUR = 60 * MINUTE;
+    static final long DAY = 24 * HOUR;
+
+    private final long hourRetentionMs;
+    private final long agentSketchMs;
+    private final Map<String, Rollups> agents = new ConcurrentHashMap<>();
+    private final Rollups fleet;
+    // Valeurs d'un échantillon résumé, par worker de réception
+    private static final ThreadLocal<double[]> SAMPLE_SCRATCH = ThreadLocal.withInitial(() -> new double[RollupSeries.FIELDS]);
+    private volatile boolean ready;
+
+    public RollupStore(long hourRetentionMs, long agentSketchMs) {
+        this.hourRetentionMs = hourRetentionMs;
+        this.agentSketchMs = agentSketchMs;
+        this.fleet = new Rollups(true);
+    }
+
+    // Les deux résolutions d'une série ; le moniteur de l'objet protège les deux
+    private final class Rollups {
+        final RollupSeries[] levels;
+
+        Rollups(boolean fleet) {
+            if (fleet) {
+                levels = new RollupSeries[] {new RollupSeries(HOUR, hourRetentionMs, 0), new RollupSeries(DAY, 0, 0)};
+            } else {
+                // Niveau jour sans esquisses : il n'est jamais supprimé
+                levels = new RollupSeries[] {
+                    agentSketchMs > 0 ? new RollupSeries(HOUR, hourRetentionMs, agentSketchMs) : new RollupSeries(HOUR, hourRetentionMs),
+                    new RollupSeries(DAY, 0)
+                };
+            }
+        }
+
+        synchronized void add(long time, double cpu, double memory, double disk, boolean critical) {
+            for (RollupSeries series : levels) {
+                series.add(time, cpu, memory, disk, critical);
+            }
+        }
+
+        // Bucket relu d'un niveau agrégé : seules les résolutions au moins aussi grossières le reçoivent
+        synchronized void addBucket(long time, long bucketMs, long count, long criticalCount, double[] values) {
+            for (RollupSeries series : levels) {
+                if (series.getBucketMs() >= bucketMs) series.addBucket(time, count, criticalCount, values);
+            }
+        }
+    }
+
+    public void add(AgentData data) {
+        if (data.hasSummary()) {
+            // Minimums et maximums de l'intervalle d'envoi : les pics entre deux envois restent visibles
+            double[] values = SAMPLE_SCRATCH.get();
+            RollupSeries.sampleValues(data, values);
+            Rollups rollups = agents.get(data.getAgentId());
+            if (rollups == null) {
+                rollups = agents.computeIfAbsent(data.getAgentId(), id -> new Rollups(false));
+            }
+            long criticalCount = data.isCritical() ? 1 : 0;
+            rollups.addBucket(data.getTimestamp().getTime(), 0, 1, criticalCount, values);
+            fleet.addBucket(data.getTimestamp().getTime(), 0, 1, criticalCount, values);
+            return;
+        }
+        add(data.getTimestamp().getTime(), data.getAgentId(), data.getCpuUsage(), data.getMemoryUsage(), data.getDiskUsage(), data.isCritical());
+    }
+
+    private void add(long time, String agentId, double cpu, double memory, double disk, boolean critical) {
+        Rollups rollups = agents.get(agentId);
+        if (rollups == null) {
+            rollups = agents.computeIfAbsent(agentId, id -> new Rollups(false));
+        }
+        rollups.add(time, cpu, memory, disk, critical);
+        fleet.add(time, cpu, memory, disk, critical);
+    }
+
+    /*
+     * Reconstruit les agrégats à partir de l'historique jusqu'à "position", en tâche de fond.
+     * La position doit être relevée avant le démarrage de la réception : les
+     * échantillons suivants arrivent par add(). "onFinished" est appelé à la
+     * fin de la lecture, même en cas d'erreur.
+     */
+    public void startBackfill(HistoryManager.Position position, Runnable onFinished) {
+        Thread thread = new Thread(() -> {
+            long begin = System.currentTimeMillis();
+            long[] records = new long[1];
+            try {
+                HistoryManager.scanUpTo(position, new HistoryVisitor() {
+                    @Override
+                    public boolean visit(long time, String agentId, double cpu, double memory, double disk, boolean critical) {
+                        add(time, agentId, cpu, memory, disk, critical);
+                        records[0]++;
+                        return true;
+                    }
+
+                    @Override
+                    public boolean visitAggregate(long time, long bucketMs, String agentId, long count, long criticalCount, double[] values) {
+                        Rollups rollups = agents.computeIfAbsent(agentId, id -> new Rollups(false));
+                        rollups.addBucket(time, bucketMs, count, criticalCount, values);
+                        fleet.addBucket(time, bucketMs, count, criticalCount, values);
+                        records[0] += count;
+                        return true;
+                    }
+                });
+            } finally {
+                // Les segments lus peuvent maintenant être compactés
+                onFinished.run();
+            }
+            ready = true;
+            System.out.println("Agrégats reconstruits : " + records[0] + " enregistrements en "
+                    + (System.currentTimeMillis() - begin) + " ms");
+        }, "rollup-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Statistiques sur [startDate, endDate] (null = sans borne), ou null si les agrégats ne sont pas prêts
+    public Map<String, Double> getStatisticsByDate(String agentId, Date startDate, Date endDate) {
+        if (!ready) return null;
+        StatsAccumulator stats = new StatsAccumulator();
+        Rollups rollups = (agentId == null || agentId.isEmpty()) ? fleet : agents.get(agentId);
+        if (rollups == null) return stats.toMap();
+
+        // Dates incluses : on travaille sur [from, to[
+        long from = startDate == null ? Long.MIN_VALUE : startDate.getTime();
+        long to = (endDate == null || endDate.getTime() == Long.MAX_VALUE) ? Long.MAX_VALUE : endDate.getTime() + 1;
+        synchronized (rollups) {
+            RollupSeries days = rollups.levels[rollups.levels.length - 1];
+            if (days.isEmpty()) return stats.toMap();
+            from = Math.max(from, days.firstStart());
+            to = Math.min(to, days.lastStart() + DAY);
+        }
+        collect(rollups, agentId, rollups.levels.length - 1, from, to, stats);
+        return stats.toMap();
+    }
+
+    // Découpe [from, to[ : buckets entiers du niveau donné au milieu, niveaux plus fins sur les bords
+    private void collect(Rollups rollups, String agentId, int level, long from, long to, StatsAccumulator stats) {
+        if (from >= to) return;
+        if (level < 0) {
+            // Bords de moins d'une heure : lecture des segments (positionnée par l'index)
+            HistoryManager.scan(agentId, from, to - 1, new HistoryVisitor() {
+                @Override
+                public boolean visit(long time, String id, double cpu, double memory, double disk, boolean critical) {
+                    stats.add(cpu, memory, disk, critical);
+                    return true;
+                }
+
+                @Override
+                public boolean visitAggregate(long time, long bucketMs, String id, long count, long criticalCount, double[] values) {
+                    stats.mergeBucket(count, criticalCount, values, 0, null);
+                    return true;
+                }
+            });
+            return;
+        }
+
+        RollupSeries series = rollups.levels[level];
+        long size = series.getBucketMs();
+        long first = Math.floorDiv(from + size - 1, size) * size;
+        long last = Math.floorDiv(to, size) * size;
+        boolean usable;
+        synchronized (rollups) {
+            // Niveau inutilisable si aucun bucket entier, ou si une partie a déjà été supprimée
+            usable = first < last && first >= series.getPrunedBefore();
+            if (usable) series.accumulate(first, last, stats);
+        }
+        if (!usable) {
+            collect(rollups, agentId, level - 1, from, to, stats);
+            return;
+        }
+        collect(rollups, agentId, level - 1, from, first, stats);
+        collect(rollups, agentId, level - 1, last, to, stats);
+    }
+}
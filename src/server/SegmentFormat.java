@@ -0,0 +1,67 @@
+package server;
+
+import common.AgentData;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Format de stockage d'un segment d'historique sur disque.
+ *
+ * Deux implémentations : CsvSegmentFormat (texte, format historique et
+ * d'export) et BinarySegmentFormat (enregistrements binaires de taille fixe
+ * lus par projection mémoire). Le format d'un segment est donné par
+ * l'extension de son fichier ; les deux peuvent coexister dans le stockage.
+ */
+public interface SegmentFormat {
+
+    // Extension des fichiers de segment (".csv", ".bin")
+    String extension();
+
+    // Ouvre le segment en ajout pour l'écrivain
+    Appender openAppender(HistorySegments.Segment segment) throws IOException;
+
+    /*
+     * Parcourt les enregistrements datés de [start, end] situés avant toPosition,
+     * pour un agent (null ou vide = tous). Un enregistrement peut être en retard
+     * de skewMs au plus sur le précédent. Retourne false si le visiteur a interrompu.
+     */
+    boolean scan(HistorySegments.Segment segment, long toPosition, long start, long end, long skewMs,
+                 String agentId, HistoryVisitor visitor);
+
+    /*
+     * Parcourt les maxRecords derniers enregistrements de l'agent (null ou vide = tous),
+     * dans l'ordre chronologique ; retourne le nombre d'enregistrements retenus.
+     */
+    int visitLast(HistorySegments.Segment segment, String agentId, int maxRecords, HistoryVisitor visitor) throws IOException;
+
+    // Mêmes enregistrements en lignes d'historique (agrégats rendus en moyennes)
+    default List<String[]> readLast(HistorySegments.Segment segment, String agentId, int maxRecords) throws IOException {
+        List<String[]> records = new ArrayList<>();
+        visitLast(segment, agentId, maxRecords, (time, id, cpu, memory, disk, critical) -> {
+            records.add(CsvSegmentFormat.toRecord(time, id, cpu, memory, disk, critical));
+            return true;
+        });
+        return records;
+    }
+
+    // Écrit un segment agrégé complet (le fichier n'apparaît qu'une fois écrit)
+    void writeAggregates(Path path, Map<String, RollupSeries> series) throws IOException;
+
+    // Écriture dans le segment courant (utilisé par le seul thread de l'écrivain)
+    interface Appender {
+
+        // Nombre d'octets écrits dans le segment
+        long position();
+
+        // Écrit les échantillons batch[from, to[
+        void append(List<AgentData> batch, int from, int to) throws IOException;
+
+        void force() throws IOException;
+
+        void close();
+    }
+}
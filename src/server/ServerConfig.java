@@ -0,0 +1,46 @@
+package server;
+
+/**
+ * Paramètres de configuration du serveur.
+ * Chaque valeur se règle par une propriété système préfixée par "monitor."
+ * (ex: java -Dmonitor.udp.workers=4 -cp bin server.MonitorServer)
+ */
+public final class ServerConfig {
+
+    private static final String PREFIX = "monitor.";
+
+    private ServerConfig() {
+    }
+
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(PREFIX + key);
+        return (value == null || value.trim().isEmpty()) ? defaultValue : value.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Valeur invalide pour " + PREFIX + key + ": " + value + " (défaut: " + defaultValue + ")");
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) return defaultValue;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Valeur invalide pour " + PREFIX + key + ": " + value + " (défaut: " + defaultValue + ")");
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
@@ -0,0 +1,109 @@
+package server;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Agrégat de statistiques (nombre, somme, min, max, alertes critiques,
+ * esquisse des quantiles) pour CPU, mémoire et disque. Deux agrégats se
+ * combinent avec merge().
+ * Non thread-safe : chaque utilisateur synchronise lui-même.
+ */
+public class StatsAccumulator {
+
+    long count;
+    long criticalCount;
+    double sumCpu, sumMemory, sumDisk;
+    double minCpu = Double.POSITIVE_INFINITY, minMemory = Double.POSITIVE_INFINITY, minDisk = Double.POSITIVE_INFINITY;
+    double maxCpu = Double.NEGATIVE_INFINITY, maxMemory = Double.NEGATIVE_INFINITY, maxDisk = Double.NEGATIVE_INFINITY;
+    final QuantileSketch sketch = new QuantileSketch();
+
+    public void add(double cpu, double memory, double disk, boolean critical) {
+        count++;
+        if (critical) criticalCount++;
+        sumCpu += cpu;
+        sumMemory += memory;
+        sumDisk += disk;
+        if (cpu < minCpu) minCpu = cpu;
+        if (cpu > maxCpu) maxCpu = cpu;
+        if (memory < minMemory) minMemory = memory;
+        if (memory > maxMemory) maxMemory = memory;
+        if (disk < minDisk) minDisk = disk;
+        if (disk > maxDisk) maxDisk = disk;
+        sketch.add(cpu, memory, disk);
+    }
+
+    public void merge(StatsAccumulator other) {
+        if (other.count == 0) return;
+        count += other.count;
+        criticalCount += other.criticalCount;
+        sumCpu += other.sumCpu;
+        sumMemory += other.sumMemory;
+        sumDisk += other.sumDisk;
+        minCpu = Math.min(minCpu, other.minCpu);
+        maxCpu = Math.max(maxCpu, other.maxCpu);
+        minMemory = Math.min(minMemory, other.minMemory);
+        maxMemory = Math.max(maxMemory, other.maxMemory);
+        minDisk = Math.min(minDisk, other.minDisk);
+        maxDisk = Math.max(maxDisk, other.maxDisk);
+        sketch.merge(other.sketch);
+    }
+
+    /*
+     * Fusionne un bucket stocké à plat : sommes, minimums puis maximums (cpu, mémoire, disque).
+     * Sans esquisse pour ce bucket (niveaux agrégés sur disque), ses moyennes
+     * remplacent ses échantillons dans l'estimation des quantiles.
+     */
+    void mergeBucket(long bucketCount, long bucketCritical, double[] values, int offset, QuantileSketch bucketSketch) {
+        if (bucketCount == 0) return;
+        count += bucketCount;
+        criticalCount += bucketCritical;
+        sumCpu += values[offset];
+        sumMemory += values[offset + 1];
+        sumDisk += values[offset + 2];
+        minCpu = Math.min(minCpu, values[offset + 3]);
+        minMemory = Math.min(minMemory, values[offset + 4]);
+        minDisk = Math.min(minDisk, values[offset + 5]);
+        maxCpu = Math.max(maxCpu, values[offset + 6]);
+        maxMemory = Math.max(maxMemory, values[offset + 7]);
+        maxDisk = Math.max(maxDisk, values[offset + 8]);
+        if (bucketSketch != null) {
+            sketch.merge(bucketSketch);
+        } else {
+            sketch.add(values[offset] / bucketCount, values[offset + 1] / bucketCount, values[offset + 2] / bucketCount, bucketCount);
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    // Même clés que le calcul historique (plus le disque)
+    public Map<String, Double> toMap() {
+        Map<String, Double> stats = new HashMap<>();
+        boolean empty = count == 0;
+        stats.put("avgCpu", empty ? 0.0 : sumCpu / count);
+        stats.put("avgMemory", empty ? 0.0 : sumMemory / count);
+        stats.put("avgDisk", empty ? 0.0 : sumDisk / count);
+        stats.put("maxCpu", empty ? 0.0 : maxCpu);
+        stats.put("maxMemory", empty ? 0.0 : maxMemory);
+        stats.put("maxDisk", empty ? 0.0 : maxDisk);
+        stats.put("minCpu", empty ? 0.0 : minCpu);
+        stats.put("minMemory", empty ? 0.0 : minMemory);
+        stats.put("minDisk", empty ? 0.0 : minDisk);
+        putPercentiles(stats, "Cpu", QuantileSketch.CPU, minCpu, maxCpu);
+        putPercentiles(stats, "Memory", QuantileSketch.MEMORY, minMemory, maxMemory);
+        putPercentiles(stats, "Disk", QuantileSketch.DISK, minDisk, maxDisk);
+        stats.put("totalRecords", (double) count);
+        stats.put("criticalCount", (double) criticalCount);
+        return stats;
+    }
+
+    // p50/p95/p99 estimés, ramenés dans [min, max] qui sont exacts
+    private void putPercentiles(Map<String, Double> stats, String suffix, int metric, double min, double max) {
+        for (int p : new int[] {50, 95, 99}) {
+            double value = sketch.quantile(metric, p / 100.0);
+            stats.put("p" + p + suffix, Double.isNaN(value) ? 0.0 : Math.max(min, Math.min(max, value)));
+        }
+    }
+}
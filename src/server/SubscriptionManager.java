@@ -0,0 +1,135 @@
+package server;
+
+import common.AgentData;
+import common.ChangeSet;
+import common.MonitorListener;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Envoi des changements aux clients abonnés (rappels RMI).
+ *
+ * Chaque abonné a son propre thread d'envoi et sa version dans le ChangeFeed :
+ * un abonné lent ne bloque ni la réception ni les autres abonnés, les
+ * changements survenus pendant un envoi sont simplement regroupés dans le
+ * lot suivant (seul le dernier état de chaque agent est transmis). Le débit
+ * est limité à push.maxRatePerSec lots par seconde ; sans changement, un lot
+ * vide part toutes les push.heartbeatSec secondes pour détecter les clients
+ * disparus.
+ */
+public class SubscriptionManager {
+
+    private final ChangeFeed feed;
+    private final Function<String, AgentData> agents;
+    private final Supplier<List<AgentData>> allAgents;
+    private final long minIntervalNanos;
+    private final long heartbeatNanos;
+    private final int maxSubscribers;
+    private final int maxFailures;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    private final class Subscriber implements Runnable {
+        final MonitorListener listener;
+        final Thread thread;
+        volatile boolean active = true;
+        // Vrai quand le thread attend un changement (le réveiller)
+        volatile boolean waiting;
+        long version;
+
+        Subscriber(MonitorListener listener) {
+            this.listener = listener;
+            this.thread = new Thread(this, "push-" + nextId.incrementAndGet());
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            int failures = 0;
+            long lastSent = System.nanoTime() - heartbeatNanos;
+            while (active) {
+                ChangeSet changes = feed.since(version, agents, allAgents);
+                long now = System.nanoTime();
+                if (!changes.isEmpty() || now - lastSent >= heartbeatNanos) {
+                    try {
+                        listener.onChanges(changes);
+                        version = changes.getVersion();
+                        failures = 0;
+                    } catch (Exception e) {
+                        // Le lot sera recalculé depuis la même version au prochain tour
+                        if (++failures >= maxFailures) {
+                            System.out.println("Abonné " + thread.getName() + " retiré : " + e.getMessage());
+                            remove(this);
+                            return;
+                        }
+                    }
+                    lastSent = System.nanoTime();
+                    // Débit maximal : les changements pendant cette pause sont regroupés
+                    long remaining;
+                    while (active && (remaining = lastSent + minIntervalNanos - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(remaining);
+                    }
+                } else {
+                    version = changes.getVersion();
+                }
+
+                // Attente d'un changement (ou du prochain battement de cœur)
+                waiting = true;
+                if (active && feed.currentVersion() == version) {
+                    LockSupport.parkNanos(Math.max(0, heartbeatNanos - (System.nanoTime() - lastSent)));
+                }
+                waiting = false;
+            }
+        }
+    }
+
+    public SubscriptionManager(ChangeFeed feed, Function<String, AgentData> agents, Supplier<List<AgentData>> allAgents) {
+        this.feed = feed;
+        this.agents = agents;
+        this.allAgents = allAgents;
+        this.minIntervalNanos = 1_000_000_000L / Math.max(1, ServerConfig.getInt("push.maxRatePerSec", 10));
+        this.heartbeatNanos = Math.max(1, ServerConfig.getLong("push.heartbeatSec", 10)) * 1_000_000_000L;
+        this.maxSubscribers = Math.max(1, ServerConfig.getInt("push.maxSubscribers", 64));
+        this.maxFailures = Math.max(1, ServerConfig.getInt("push.maxFailures", 3));
+    }
+
+    public synchronized boolean subscribe(MonitorListener listener) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.listener.equals(listener)) return true;
+        }
+        if (subscribers.size() >= maxSubscribers) return false;
+        Subscriber subscriber = new Subscriber(listener);
+        subscribers.add(subscriber);
+        subscriber.thread.start();
+        System.out.println("Nouvel abonné " + subscriber.thread.getName() + " (" + subscribers.size() + " au total)");
+        return true;
+    }
+
+    public synchronized void unsubscribe(MonitorListener listener) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.listener.equals(listener)) remove(subscriber);
+        }
+    }
+
+    private synchronized void remove(Subscriber subscriber) {
+        subscriber.active = false;
+        subscribers.remove(subscriber);
+        LockSupport.unpark(subscriber.thread);
+    }
+
+    // Appelé à chaque changement (réception, alerte) : ne bloque jamais
+    public void signal() {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.waiting) {
+                subscriber.waiting = false;
+                LockSupport.unpark(subscriber.thread);
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Réception des alertes TCP sur une seule boucle Selector (NIO non bloquant).
+ *
+ * Une connexion porte une ou plusieurs alertes, une par ligne. Les agents
+ * actuels n'ouvrent plus de connexion (les règles d'alerte sont évaluées par
+ * le serveur à la réception UDP) : l'écoute ne sert plus qu'aux anciens agents
+ * et aux émetteurs externes, qu'ils gardent leur connexion ouverte ou en
+ * ouvrent une par alerte.
+ * Ressources bornées : nombre de connexions, taille d'une ligne et tampon
+ * fixes par connexion, fermeture des connexions inactives.
+ */
+public class TcpAlertListener {
+
+    private final int port;
+    private final int maxConnections;
+    private final int maxLineBytes;
+    private final long idleTimeoutMs;
+    private final Consumer<String> onAlert;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running;
+    private int activeConnections; // modifié par le seul thread de la boucle
+
+    // Compteurs (affichés périodiquement)
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+    private final LongAdder alerts = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder oversized = new LongAdder();
+
+    // État d'une connexion : ligne en cours et dernière activité
+    private static final class Connection {
+        final ByteBuffer line;
+        boolean discarding; // ligne trop longue : ignorée jusqu'au prochain saut de ligne
+        long lastActivity;
+
+        Connection(int maxLineBytes, long now) {
+            this.line = ByteBuffer.allocate(maxLineBytes);
+            this.lastActivity = now;
+        }
+    }
+
+    public TcpAlertListener(int port, Consumer<String> onAlert) {
+        this.port = port;
+        this.onAlert = onAlert;
+        this.maxConnections = Math.max(1, ServerConfig.getInt("tcp.maxConnections", 1024));
+        this.maxLineBytes = Math.max(64, ServerConfig.getInt("tcp.maxLineBytes", 1024));
+        this.idleTimeoutMs = ServerConfig.getLong("tcp.idleTimeoutSec", 300) * 1000L;
+    }
+
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 256);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+
+        startThread("tcp-alerts", this::selectLoop);
+        System.out.println("Serveur TCP (Alertes) démarré sur le port " + port
+                + " (" + maxConnections + " connexions max)");
+
+        int statsInterval = ServerConfig.getInt("tcp.statsIntervalSec", 60);
+        if (statsInterval > 0) {
+            startThread("tcp-stats", () -> statsLoop(statsInterval));
+        }
+    }
+
+    public void stop() {
+        running = false;
+        if (selector != null) selector.wakeup();
+    }
+
+    private void startThread(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void selectLoop() {
+        ByteBuffer readBuffer = ByteBuffer.allocateDirect(16 * 1024);
+        long lastIdleCheck = System.currentTimeMillis();
+        try {
+            while (running) {
+                selector.select(1000);
+                long now = System.currentTimeMillis();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept(now);
+                    } else if (key.isReadable()) {
+                        try {
+                            read(key, readBuffer, now);
+                        } catch (IOException e) {
+                            close(key);
+                        }
+                    }
+                }
+                if (idleTimeoutMs > 0 && now - lastIdleCheck >= 1000) {
+                    closeIdle(now);
+                    lastIdleCheck = now;
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Erreur boucle TCP: " + e.getMessage());
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                close(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Fermeture best-effort
+            }
+        }
+    }
+
+    private void accept(long now) {
+        while (true) {
+            SocketChannel channel = null;
+            try {
+                channel = serverChannel.accept();
+                if (channel == null) return;
+                if (activeConnections >= maxConnections) {
+                    refused.increment();
+                    channel.close();
+                    continue;
+                }
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, new Connection(maxLineBytes, now));
+                activeConnections++;
+                accepted.increment();
+            } catch (IOException e) {
+                // Trop de descripteurs ouverts, connexion déjà fermée... : on réessaiera au prochain tour
+                System.err.println("Erreur acceptation TCP: " + e.getMessage());
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {
+                        // Fermeture best-effort
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    private void read(SelectionKey key, ByteBuffer readBuffer, long now) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        connection.lastActivity = now;
+
+        readBuffer.clear();
+        int n = channel.read(readBuffer);
+        if (n < 0) {
+            // Fin de flux : une dernière ligne sans saut de ligne est aussi une alerte
+            if (!connection.discarding) deliver(connection);
+            close(key);
+            return;
+        }
+        bytesRead.add(n);
+        readBuffer.flip();
+        while (readBuffer.hasRemaining()) {
+            byte b = readBuffer.get();
+            if (b == '\n') {
+                if (!connection.discarding) deliver(connection);
+                connection.discarding = false;
+                connection.line.clear();
+            } else if (!connection.discarding) {
+                if (connection.line.hasRemaining()) {
+                    connection.line.put(b);
+                } else {
+                    oversized.increment();
+                    connection.discarding = true;
+                    connection.line.clear();
+                }
+            }
+        }
+    }
+
+    private void deliver(Connection connection) {
+        ByteBuffer line = connection.line;
+        int length = line.position();
+        if (length > 0 && line.get(length - 1) == '\r') length--;
+        if (length > 0) {
+            String message = new String(line.array(), 0, length, StandardCharsets.UTF_8);
+            alerts.increment();
+            try {
+                onAlert.accept(message);
+            } catch (RuntimeException e) {
+                System.err.println("Erreur traitement alerte: " + e.getMessage());
+            }
+        }
+        line.clear();
+    }
+
+    private void closeIdle(long now) {
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof Connection && now - ((Connection) attachment).lastActivity > idleTimeoutMs) {
+                close(key);
+            }
+        }
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Fermeture best-effort
+        }
+        if (key.attachment() instanceof Connection) {
+            key.attach(null);
+            activeConnections--;
+            closed.increment();
+        }
+    }
+
+    private void statsLoop(int intervalSec) {
+        long lastAlerts = 0;
+        long lastAccepted = 0;
+        while (running) {
+            try {
+                Thread.sleep(intervalSec * 1000L);
+            } catch (InterruptedException e) {
+                break;
+            }
+            long totalAlerts = alerts.sum();
+            long totalAccepted = accepted.sum();
+            if (totalAlerts != lastAlerts || totalAccepted != lastAccepted) {
+                System.out.println(String.format("TCP: %d connexions (%d ouvertes, %d refusées), %d alertes (%.0f/s), %d octets, %d lignes trop longues",
+                        totalAccepted, totalAccepted - closed.sum(), refused.sum(), totalAlerts,
+                        (totalAlerts - lastAlerts) / (double) intervalSec, bytesRead.sum(), oversized.sum()));
+                lastAlerts = totalAlerts;
+                lastAccepted = totalAccepted;
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package server;
+
+import common.AgentData;
+import common.AgentDataCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ObjectInputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Pipeline de réception UDP en étages :
+ *   1. réception  : un ou plusieurs DatagramChannel, trames lues dans des buffers directs recyclés
+ *   2. décodage   : pool de workers qui décodent les trames et mettent à jour l'état en mémoire
+ *                   (un battement de cœur y devient l'échantillon inchangé de l'agent)
+ *   3. persistance: étage séparé qui écrit l'historique, sans ralentir la réception
+ *                   (les workers déposent l'échantillon, l'écriture groupée se fait
+ *                   dans le thread de HistoryWriter)
+ *
+ * Les étages 1 et 2 communiquent par une RingQueue bornée sans verrou. Un
+ * worker sans trame attend d'abord activement, puis s'endort jusqu'à ce
+ * qu'un récepteur le réveille : sans trafic, les workers ne consomment rien.
+ */
+public class UdpIngestPipeline {
+
+    // Attente d'un worker sans trame : active, puis sommeils courts, puis endormi
+    private static final int SPIN_ROUNDS = 100;
+    private static final int SHORT_PARK_ROUNDS = 200;
+    // Réveil de sécurité d'un worker endormi (arrêt du pipeline)
+    private static final long SLEEP_NANOS = 1_000_000_000L;
+
+    private final int port;
+    private final int receiverCount;
+    private final int workerCount;
+    private final int receiveBufferSize;
+
+    private final RingQueue<ByteBuffer> frames;
+    private final RingQueue<ByteBuffer> bufferPool;
+
+    // Retourne l'échantillon à enregistrer, ou null s'il n'y a rien à enregistrer
+    private final Function<AgentData, AgentData> liveUpdate;
+    private final Consumer<AgentData> persist;
+
+    private final List<DatagramChannel> channels = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    // Workers endormis, réveillés un par un par les récepteurs
+    private final ConcurrentLinkedQueue<Thread> sleepingWorkers = new ConcurrentLinkedQueue<>();
+    private volatile boolean running;
+
+    // Compteurs (affichés périodiquement au lieu d'un println par paquet)
+    private final LongAdder received = new LongAdder();
+    private final LongAdder decoded = new LongAdder();
+    private final LongAdder droppedFrames = new LongAdder();
+    private final LongAdder decodeErrors = new LongAdder();
+    private final LongAdder heartbeats = new LongAdder();
+
+    public UdpIngestPipeline(int port, Function<AgentData, AgentData> liveUpdate, Consumer<AgentData> persist) {
+        this.port = port;
+        this.liveUpdate = liveUpdate;
+        this.persist = persist;
+        this.receiverCount = Math.max(1, ServerConfig.getInt("udp.receivers", 1));
+        this.workerCount = Math.max(1, ServerConfig.getInt("udp.workers", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)));
+        this.receiveBufferSize = ServerConfig.getInt("udp.socketBuffer", 4 * 1024 * 1024);
+
+        int ringCapacity = ServerConfig.getInt("udp.ringCapacity", 8192);
+        this.frames = new RingQueue<>(ringCapacity);
+
+        // Assez de buffers pour remplir l'anneau plus ceux en cours de réception / décodage
+        int poolSize = frames.capacity() + receiverCount + workerCount;
+        this.bufferPool = new RingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            bufferPool.offer(ByteBuffer.allocateDirect(AgentDataCodec.MAX_FRAME_SIZE));
+        }
+    }
+
+    public void start() throws Exception {
+        running = true;
+
+        // Plusieurs récepteurs : un canal chacun avec SO_REUSEPORT si le système le permet, sinon canal partagé
+        boolean reusePort = false;
+        if (receiverCount > 1) {
+            try (DatagramChannel probe = DatagramChannel.open()) {
+                reusePort = probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+            }
+        }
+        DatagramChannel shared = null;
+        for (int i = 0; i < receiverCount; i++) {
+            DatagramChannel channel;
+            if (reusePort || shared == null) {
+                channel = openChannel(reusePort);
+                channels.add(channel);
+                shared = channel;
+            } else {
+                channel = shared;
+            }
+            startThread("udp-receiver-" + i, receiveLoop(channel));
+        }
+        System.out.println("Serveur UDP démarré sur le port " + port
+                + " (" + receiverCount + " récepteur(s), " + workerCount + " worker(s))");
+
+        for (int i = 0; i < workerCount; i++) {
+            startThread("udp-decoder-" + i, this::decodeLoop);
+        }
+
+        int statsInterval = ServerConfig.getInt("udp.statsIntervalSec", 60);
+        if (statsInterval > 0) {
+            startThread("udp-stats", () -> statsLoop(statsInterval));
+        }
+    }
+
+    public void stop() {
+        running = false;
+        for (DatagramChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (Exception e) {
+                // Fermeture best-effort
+            }
+        }
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    private DatagramChannel openChannel(boolean reusePort) throws Exception {
+        DatagramChannel channel = DatagramChannel.open();
+        if (reusePort) {
+            channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+        channel.bind(new InetSocketAddress(port));
+        channel.configureBlocking(true);
+        return channel;
+    }
+
+    private void startThread(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        threads.add(thread);
+        thread.start();
+    }
+
+    // Étage 1 : réception brute, sans décodage
+    private Runnable receiveLoop(DatagramChannel channel) {
+        return () -> {
+            while (running) {
+                ByteBuffer buf = bufferPool.poll();
+                if (buf == null) {
+                    // Tous les buffers sont en vol : on laisse les workers rattraper
+                    LockSupport.parkNanos(50_000);
+                    continue;
+                }
+                try {
+                    buf.clear();
+                    if (channel.receive(buf) == null) {
+                        bufferPool.offer(buf);
+                        continue;
+                    }
+                    buf.flip();
+                    received.increment();
+                    if (!frames.offer(buf)) {
+                        droppedFrames.increment();
+                        bufferPool.offer(buf);
+                    } else if (!sleepingWorkers.isEmpty()) {
+                        Thread worker = sleepingWorkers.poll();
+                        if (worker != null) LockSupport.unpark(worker);
+                    }
+                } catch (Exception e) {
+                    bufferPool.offer(buf);
+                    if (running) {
+                        System.err.println("Erreur réception UDP: " + e.getMessage());
+                    }
+                }
+            }
+        };
+    }
+
+    // Étage 2 : décodage et mise à jour de l'état en mémoire
+    private void decodeLoop() {
+        int idle = 0;
+        while (running) {
+            ByteBuffer buf = frames.poll();
+            if (buf == null) {
+                // Attente active courte, sommeils progressifs, puis endormi jusqu'à la prochaine trame
+                idle++;
+                if (idle <= SPIN_ROUNDS) {
+                    Thread.onSpinWait();
+                } else if (idle <= SHORT_PARK_ROUNDS) {
+                    LockSupport.parkNanos(idle * 1_000L);
+                } else {
+                    buf = sleepUntilFrame();
+                }
+                if (buf == null) continue;
+            }
+            idle = 0;
+            try {
+                AgentData data = decodeFrame(buf);
+                if (data.isHeartbeat()) heartbeats.increment();
+                AgentData sample = liveUpdate.apply(data);
+                if (sample != null) persist.accept(sample);
+                decoded.increment();
+            } catch (Exception e) {
+                decodeErrors.increment();
+            } finally {
+                bufferPool.offer(buf);
+            }
+        }
+    }
+
+    private ByteBuffer sleepUntilFrame() {
+        Thread self = Thread.currentThread();
+        sleepingWorkers.offer(self);
+        // Trame déposée avant l'inscription : son récepteur n'a réveillé personne
+        ByteBuffer buf = frames.poll();
+        if (buf == null && running) {
+            LockSupport.parkNanos(this, SLEEP_NANOS);
+        }
+        sleepingWorkers.remove(self);
+        return buf;
+    }
+
+    private void statsLoop(int intervalSec) {
+        long lastReceived = 0;
+        while (running) {
+            try {
+                Thread.sleep(intervalSec * 1000L);
+            } catch (InterruptedException e) {
+                break;
+            }
+            long total = received.sum();
+            if (total != lastReceived) {
+                System.out.println(String.format("UDP: %d reçus (%.0f/s), %d décodés dont %d battements, %d perdus, %d erreurs",
+                        total, (total - lastReceived) / (double) intervalSec, decoded.sum(), heartbeats.sum(),
+                        droppedFrames.sum(), decodeErrors.sum()));
+                lastReceived = total;
+            }
+        }
+    }
+
+    // Décode une trame : format binaire, ou ancien format sérialisé (période de migration des agents)
+    static AgentData decodeFrame(ByteBuffer frame) throws Exception {
+        if (AgentDataCodec.isBinaryFrame(frame)) {
+            return AgentDataCodec.decode(frame);
+        }
+        if (AgentDataCodec.isLegacyFrame(frame)) {
+            byte[] bytes = new byte[frame.remaining()];
+            frame.get(bytes);
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return (AgentData) ois.readObject();
+            }
+        }
+        throw new IllegalArgumentException("Format de paquet inconnu");
+    }
+}